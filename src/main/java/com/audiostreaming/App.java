@@ -12,7 +12,11 @@ public class App {
     /**
      * Application entry point.
      * 
-     * @param args Command line arguments. First argument specifies mode: "server", "client", or "local"
+     * @param args Command line arguments. First argument specifies mode: "server", "client", or "local";
+     *             in server mode the optional arguments "nio" (multi-threaded UDP transport), "mix"
+     *             (server-side mix-minus instead of forwarding every stream), "speakers=N" (forward
+     *             only the N loudest talkers per room) and "trace=LEVEL" (trace the data plane down to a
+     *             {@link java.util.logging.Level}, e.g. trace=fine) may follow
      * @throws Exception if server/client initialization fails
      */
     public static void main(String[] args) throws Exception {
@@ -21,8 +25,19 @@ public class App {
         switch (mode) {
             case "server":
                 {
-                    DatagramSocket serverSocket = new DatagramSocket(5555);
-                    Server server = new Server(serverSocket);
+                    // "server nio" selects the NIO transport with one UDP receive thread per core,
+                    // "server mix" mixes each room on the server
+                    java.util.List<String> flags = new java.util.ArrayList<>();
+                    for (int i = 1; i < args.length; i++) flags.add(args[i].trim().toLowerCase());
+                    boolean nio = flags.contains("nio");
+                    Server server = nio
+                        ? new Server(5555, Runtime.getRuntime().availableProcessors())
+                        : new Server(new DatagramSocket(5555));
+                    if (flags.contains("mix")) server.setMixingEnabled(true);
+                    for (String flag : flags) {
+                        if (flag.startsWith("speakers=")) server.setMaxForwardedSpeakers(Integer.parseInt(flag.substring(9)));
+                        if (flag.startsWith("trace=")) server.setTraceLevel(java.util.logging.Level.parse(flag.substring(6).toUpperCase(java.util.Locale.ROOT)));
+                    }
                     server.startTCPServer();
                     
                     Thread udpThread = new Thread(() -> {
@@ -77,7 +92,7 @@ public class App {
                 }
             }
             default:
-                System.out.println("Usage: java -jar <app.jar> [server|client|local] (default: client)");
+                System.out.println("Usage: java -jar <app.jar> [server [nio] [mix] [speakers=N] [trace=LEVEL]|client|local] (default: client)");
                 break;
         }
     }
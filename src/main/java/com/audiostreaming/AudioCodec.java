@@ -0,0 +1,49 @@
+package com.audiostreaming;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Encoder/decoder for one audio payload format.
+ * <p>
+ * Codecs work on frames of 16-bit samples and never allocate: callers pass in the sample array
+ * and the buffer to read or write. Implementations are stateless (every encoded frame can be
+ * decoded on its own), so one instance is shared by all streams and threads. Instances are
+ * obtained from {@link AudioCodecs}; the id travels with each packet in the
+ * {@link PacketExtensions#TYPE_CODEC} extension.
+ * </p>
+ */
+interface AudioCodec {
+
+    /** @return the id carried on the wire */
+    int id();
+
+    /** @return the name used when negotiating over the control channel */
+    String name();
+
+    /**
+     * @param samples number of samples in a frame
+     * @return the encoded size in bytes of such a frame
+     */
+    int encodedSize(int samples);
+
+    /**
+     * Encodes a frame at the buffer's position, advancing it.
+     *
+     * @param pcm source samples
+     * @param samples number of samples to encode
+     * @param dst destination with at least {@link #encodedSize(int)} bytes remaining
+     * @return number of bytes written
+     */
+    int encode(short[] pcm, int samples, ByteBuffer dst);
+
+    /**
+     * Decodes a frame using absolute reads.
+     *
+     * @param src buffer holding the encoded frame
+     * @param offset absolute index of the first encoded byte
+     * @param length number of encoded bytes
+     * @param pcm destination samples; decoding stops when it is full
+     * @return number of samples decoded
+     */
+    int decode(ByteBuffer src, int offset, int length, short[] pcm);
+}
@@ -0,0 +1,289 @@
+package com.audiostreaming;
+
+import java.nio.ByteBuffer;
+import java.util.Locale;
+
+/**
+ * The audio codecs known to clients and server, and codec negotiation.
+ * <p>
+ * A client lists the codecs it is willing to send in its REGISTER line
+ * ({@code CODECS=ADPCM,PCMU,PCMA,PCM}, most preferred first); the server answers with the first
+ * one it supports ({@code OK <id> CODEC=ADPCM}). Every client can decode every codec, so peers
+ * using different codecs can share a room.
+ * </p>
+ * <ul>
+ *   <li>{@link #PCM}: 16-bit little-endian linear PCM, 128 kbit/s at 8 kHz</li>
+ *   <li>{@link #PCMU} / {@link #PCMA}: G.711 μ-law / A-law, 8 bits per sample (2:1)</li>
+ *   <li>{@link #ADPCM}: IMA-ADPCM, 4 bits per sample plus a 4-byte block header (about 4:1)</li>
+ * </ul>
+ */
+final class AudioCodecs {
+    static final AudioCodec PCM = new Pcm();
+    static final AudioCodec PCMU = new G711(1, "PCMU", true);
+    static final AudioCodec PCMA = new G711(2, "PCMA", false);
+    static final AudioCodec ADPCM = new ImaAdpcm();
+
+    private static final AudioCodec[] BY_ID = {PCM, PCMU, PCMA, ADPCM};
+
+    /** Codec list a client offers by default, most preferred first. */
+    static final String DEFAULT_OFFER = "ADPCM,PCMU,PCMA,PCM";
+
+    private AudioCodecs() {
+    }
+
+    /**
+     * @param id codec id from a packet
+     * @return the codec, or null if the id is unknown
+     */
+    static AudioCodec byId(int id) {
+        return id >= 0 && id < BY_ID.length ? BY_ID[id] : null;
+    }
+
+    /**
+     * @param name codec name, case-insensitive
+     * @return the codec, or null if the name is unknown
+     */
+    static AudioCodec byName(String name) {
+        if (name == null) return null;
+        String n = name.trim().toUpperCase(Locale.ROOT);
+        for (AudioCodec c : BY_ID) {
+            if (c.name().equals(n)) return c;
+        }
+        return null;
+    }
+
+    /**
+     * Picks the codec to use from a client's offer.
+     *
+     * @param offer comma-separated codec names, most preferred first; may be null
+     * @return the first supported codec of the offer, {@link #PCM} if none is supported
+     */
+    static AudioCodec negotiate(String offer) {
+        if (offer != null) {
+            for (String name : offer.split(",")) {
+                AudioCodec c = byName(name);
+                if (c != null) return c;
+            }
+        }
+        return PCM;
+    }
+
+    // 16-bit signed little-endian PCM, the capture/playback format
+    private static final class Pcm implements AudioCodec {
+        @Override public int id() { return 0; }
+        @Override public String name() { return "PCM"; }
+        @Override public int encodedSize(int samples) { return samples * 2; }
+
+        @Override
+        public int encode(short[] pcm, int samples, ByteBuffer dst) {
+            for (int i = 0; i < samples; i++) {
+                short s = pcm[i];
+                dst.put((byte) s);
+                dst.put((byte) (s >> 8));
+            }
+            return samples * 2;
+        }
+
+        @Override
+        public int decode(ByteBuffer src, int offset, int length, short[] pcm) {
+            int n = Math.min(length >> 1, pcm.length);
+            for (int i = 0; i < n; i++) {
+                int p = offset + (i << 1);
+                pcm[i] = (short) ((src.get(p) & 0xFF) | (src.get(p + 1) << 8));
+            }
+            return n;
+        }
+    }
+
+    // ITU-T G.711, one byte per sample; decoding uses a 256-entry table
+    private static final class G711 implements AudioCodec {
+        private static final int ULAW_BIAS = 0x84;
+        private static final int ULAW_CLIP = 32635;
+
+        private final int id;
+        private final String name;
+        private final boolean ulaw;
+        private final short[] decodeTable = new short[256];
+
+        G711(int id, String name, boolean ulaw) {
+            this.id = id;
+            this.name = name;
+            this.ulaw = ulaw;
+            for (int i = 0; i < 256; i++) {
+                decodeTable[i] = ulaw ? ulawToLinear(i) : alawToLinear(i);
+            }
+        }
+
+        @Override public int id() { return id; }
+        @Override public String name() { return name; }
+        @Override public int encodedSize(int samples) { return samples; }
+
+        @Override
+        public int encode(short[] pcm, int samples, ByteBuffer dst) {
+            for (int i = 0; i < samples; i++) {
+                dst.put(ulaw ? linearToUlaw(pcm[i]) : linearToAlaw(pcm[i]));
+            }
+            return samples;
+        }
+
+        @Override
+        public int decode(ByteBuffer src, int offset, int length, short[] pcm) {
+            int n = Math.min(length, pcm.length);
+            for (int i = 0; i < n; i++) {
+                pcm[i] = decodeTable[src.get(offset + i) & 0xFF];
+            }
+            return n;
+        }
+
+        private static byte linearToUlaw(int sample) {
+            int sign = (sample >> 8) & 0x80;
+            if (sign != 0) sample = -sample;
+            if (sample > ULAW_CLIP) sample = ULAW_CLIP;
+            sample += ULAW_BIAS;
+            int exponent = 7;
+            for (int mask = 0x4000; (sample & mask) == 0 && exponent > 0; mask >>= 1) exponent--;
+            int mantissa = (sample >> (exponent + 3)) & 0x0F;
+            return (byte) ~(sign | (exponent << 4) | mantissa);
+        }
+
+        private static short ulawToLinear(int u) {
+            u = ~u & 0xFF;
+            int t = ((u & 0x0F) << 3) + ULAW_BIAS;
+            t <<= (u & 0x70) >> 4;
+            return (short) ((u & 0x80) != 0 ? ULAW_BIAS - t : t - ULAW_BIAS);
+        }
+
+        private static byte linearToAlaw(int sample) {
+            int sign = (~sample >> 8) & 0x80;
+            if (sign == 0) sample = -sample;
+            if (sample > 32767) sample = 32767;
+            int out;
+            if (sample >= 256) {
+                int exponent = 7;
+                for (int mask = 0x4000; (sample & mask) == 0 && exponent > 1; mask >>= 1) exponent--;
+                int mantissa = (sample >> (exponent + 3)) & 0x0F;
+                out = (exponent << 4) | mantissa;
+            } else {
+                out = sample >> 4;
+            }
+            return (byte) ((out | sign) ^ 0x55);
+        }
+
+        private static short alawToLinear(int a) {
+            a ^= 0x55;
+            int t = (a & 0x0F) << 4;
+            int seg = (a & 0x70) >> 4;
+            switch (seg) {
+                case 0 -> t += 8;
+                case 1 -> t += 0x108;
+                default -> {
+                    t += 0x108;
+                    t <<= seg - 1;
+                }
+            }
+            return (short) ((a & 0x80) != 0 ? t : -t);
+        }
+    }
+
+    /*
+     * IMA-ADPCM with one self-contained block per frame so a lost packet does not corrupt the
+     * following ones: a 4-byte header (first sample as little-endian int16, initial step index,
+     * flags) followed by the remaining samples at 4 bits each, low nibble first. Flag bit 0 marks
+     * the high nibble of the last byte as padding, so an even frame decodes to as many samples as
+     * were encoded.
+     */
+    private static final class ImaAdpcm implements AudioCodec {
+        private static final int HEADER = 4;
+        private static final int FLAG_PADDED = 0x01;
+        private static final int[] INDEX_TABLE = {-1, -1, -1, -1, 2, 4, 6, 8, -1, -1, -1, -1, 2, 4, 6, 8};
+        private static final int[] STEP_TABLE = {
+            7, 8, 9, 10, 11, 12, 13, 14, 16, 17, 19, 21, 23, 25, 28, 31, 34, 37, 41, 45,
+            50, 55, 60, 66, 73, 80, 88, 97, 107, 118, 130, 143, 157, 173, 190, 209, 230, 253, 279, 307,
+            337, 371, 408, 449, 494, 544, 598, 658, 724, 796, 876, 963, 1060, 1166, 1282, 1411, 1552, 1707, 1878, 2066,
+            2272, 2499, 2749, 3024, 3327, 3660, 4026, 4428, 4871, 5358, 5894, 6484, 7132, 7845, 8630, 9493, 10442, 11487, 12635, 13899,
+            15289, 16818, 18500, 20350, 22385, 24623, 27086, 29794, 32767
+        };
+
+        @Override public int id() { return 3; }
+        @Override public String name() { return "ADPCM"; }
+        @Override public int encodedSize(int samples) { return samples == 0 ? 0 : HEADER + samples / 2; }
+
+        @Override
+        public int encode(short[] pcm, int samples, ByteBuffer dst) {
+            if (samples == 0) return 0;
+            int predictor = pcm[0];
+            int index = initialIndex(pcm, samples);
+            int flags = (samples - 1) % 2 != 0 ? FLAG_PADDED : 0;
+            dst.put((byte) predictor).put((byte) (predictor >> 8)).put((byte) index).put((byte) flags);
+            int written = HEADER;
+            int pending = -1;
+            for (int i = 1; i < samples; i++) {
+                int step = STEP_TABLE[index];
+                int diff = pcm[i] - predictor;
+                int nibble = 0;
+                if (diff < 0) {
+                    nibble = 8;
+                    diff = -diff;
+                }
+                int delta = step >> 3;
+                if (diff >= step) { nibble |= 4; diff -= step; delta += step; }
+                step >>= 1;
+                if (diff >= step) { nibble |= 2; diff -= step; delta += step; }
+                step >>= 1;
+                if (diff >= step) { nibble |= 1; delta += step; }
+                predictor += (nibble & 8) != 0 ? -delta : delta;
+                predictor = PcmMixer.saturate(predictor);
+                index = Math.max(0, Math.min(88, index + INDEX_TABLE[nibble]));
+                if (pending < 0) {
+                    pending = nibble;
+                } else {
+                    dst.put((byte) (pending | (nibble << 4)));
+                    written++;
+                    pending = -1;
+                }
+            }
+            if (pending >= 0) {
+                dst.put((byte) pending);
+                written++;
+            }
+            return written;
+        }
+
+        @Override
+        public int decode(ByteBuffer src, int offset, int length, short[] pcm) {
+            if (length < HEADER || pcm.length == 0) return 0;
+            int predictor = (short) ((src.get(offset) & 0xFF) | (src.get(offset + 1) << 8));
+            int index = Math.min(88, src.get(offset + 2) & 0xFF);
+            int samples = 1 + (length - HEADER) * 2 - (src.get(offset + 3) & FLAG_PADDED);
+            int end = Math.min(pcm.length, samples);
+            pcm[0] = (short) predictor;
+            int n = 1;
+            for (int p = offset + HEADER; p < offset + length && n < end; p++) {
+                int b = src.get(p) & 0xFF;
+                for (int shift = 0; shift <= 4 && n < end; shift += 4) {
+                    int nibble = (b >> shift) & 0x0F;
+                    int step = STEP_TABLE[index];
+                    int delta = step >> 3;
+                    if ((nibble & 4) != 0) delta += step;
+                    if ((nibble & 2) != 0) delta += step >> 1;
+                    if ((nibble & 1) != 0) delta += step >> 2;
+                    predictor = PcmMixer.saturate((nibble & 8) != 0 ? predictor - delta : predictor + delta);
+                    index = Math.max(0, Math.min(88, index + INDEX_TABLE[nibble]));
+                    pcm[n++] = (short) predictor;
+                }
+            }
+            return n;
+        }
+
+        // start with a step size matching the frame's typical sample-to-sample change
+        private static int initialIndex(short[] pcm, int samples) {
+            int probe = Math.min(samples, 9);
+            int sum = 0;
+            for (int i = 1; i < probe; i++) sum += Math.abs(pcm[i] - pcm[i - 1]);
+            int avg = probe > 1 ? sum / (probe - 1) : 0;
+            int index = 0;
+            while (index < 88 && STEP_TABLE[index] < avg) index++;
+            return index;
+        }
+    }
+}
@@ -1,5 +1,4 @@
 package com.audiostreaming;
-import java.io.ByteArrayOutputStream;
 import java.io.InterruptedIOException;
 import java.net.*;
 import java.nio.ByteBuffer;
@@ -16,8 +15,9 @@ import java.util.logging.Logger;
  * Handles audio capture, encoding, transmission, reception, and playback.
  * <p>
  * Manages separate threads for sending captured audio to the server and
- * receiving/playing audio from other clients. Implements jitter buffering
- * for smooth playback.
+ * receiving/playing audio from other clients. Each sender's audio goes through
+ * an adaptive {@link JitterBuffer} for smooth playback at the lowest delay the
+ * network allows.
  * </p>
  */
 @SuppressWarnings("resource")
@@ -37,9 +37,6 @@ public class AudioHandler {
     /** Logger for this class. */
     private static final Logger logger = Logger.getLogger(AudioHandler.class.getName());
 
-    /** Audio sample rate in Hz. */
-    private static final float SAMPLE_RATE = 8000.0F;
-    
     /** Audio sample size in bits. */
     private static final int SAMPLE_SIZE_IN_BITS = 16;
     
@@ -52,8 +49,11 @@ public class AudioHandler {
     /** Whether audio data uses big-endian byte order. */
     private static final boolean BIG_ENDIAN = false;
     
-    /** Size of audio buffer in bytes. */
-    private static final int BUFFER_SIZE = 320;
+    /** Sample rate and frame duration negotiated with the server. */
+    private final AudioProfile profile;
+
+    /** Size of one captured audio frame in bytes. */
+    private final int frameBytes;
 
     /** The audio format configuration. */
     private final AudioFormat format;
@@ -73,12 +73,88 @@ public class AudioHandler {
     /** The UDP socket for sending and receiving audio packets. */
     private final DatagramSocket socket; 
     
-    /** Jitter buffers for each client, storing audio packets ordered by sequence number. */
-    private final ConcurrentHashMap<Integer, ConcurrentSkipListMap<Long, byte[]>> jitterBuffers = new ConcurrentHashMap<>();
+    /**
+     * Receive state of each sender, storing decoded audio until its playout time. Replaced as a
+     * whole by the receive thread when a sender appears or is dropped, so the playback thread
+     * iterates a plain array.
+     */
+    private volatile ReceiveStream[] streams = new ReceiveStream[0];
+
+    /** Silence after which a sender's receive state is dropped; it is recreated if the sender returns. */
+    private static final long STREAM_IDLE_NANOS = Server.CLIENT_TIMEOUT_MS * 1_000_000L;
+
+    /** Set by {@link #removeSender(int)} so the receive thread drops the sender with its next packet. */
+    private volatile boolean sendersRemoved;
     
     /** The audio output line for playback. */
     private final SourceDataLine speakers;
 
+    /** Playback ticks kept queued in the output line; the device never waits for the network. */
+    private static final int OUTPUT_TARGET_TICKS = 2;
+
+    /** Size of the output line's buffer in playback ticks, so writes at the target fill never block. */
+    private static final int OUTPUT_BUFFER_TICKS = 8;
+
+    /** Audio written to the output line but not yet played, in milliseconds. */
+    private volatile int outputDelayMs;
+
+    /** Interval between comfort noise markers while silent frames are suppressed. */
+    private static final long COMFORT_NOISE_INTERVAL_MS = 400;
+
+    /** Whether silent frames are suppressed (discontinuous transmission). */
+    private volatile boolean dtxEnabled = true;
+
+    /** {@link PacketHeader} version of sent packets, negotiated with the server at registration. */
+    private volatile int headerVersion = 1;
+
+    /** Whether audio packets carry a redundant copy of the previous frame. */
+    private volatile boolean fecEnabled;
+
+    /** Codec used to encode captured audio, negotiated with the server at registration. */
+    private volatile AudioCodec codec = AudioCodecs.PCM;
+
+    /** Voice activity detector deciding which captured frames are sent when DTX is enabled. */
+    private final VoiceActivityDetector vad;
+
+    /** Number of captured frames sent as audio. */
+    private final java.util.concurrent.atomic.AtomicLong framesSent = new java.util.concurrent.atomic.AtomicLong();
+
+    /** Number of missing received frames filled in by loss concealment. */
+    private final java.util.concurrent.atomic.AtomicLong framesConcealed = new java.util.concurrent.atomic.AtomicLong();
+
+    /** Number of lost received frames replaced by their redundant copies. */
+    private final java.util.concurrent.atomic.AtomicLong framesRepaired = new java.util.concurrent.atomic.AtomicLong();
+
+    /** Number of lost received frames requested again from the server. */
+    private final java.util.concurrent.atomic.AtomicLong framesNacked = new java.util.concurrent.atomic.AtomicLong();
+
+    /**
+     * Smoothed round trip time to the server in nanoseconds, measured from each NACK to the
+     * first requested frame arriving; 0 until measured.
+     */
+    private volatile long roundTripNanos;
+
+    /** Interval after which a NACK is sent even if the round trip estimate says it is too late. */
+    private static final long NACK_PROBE_INTERVAL_NANOS = 1_000_000_000L;
+
+    /** When the last NACK was sent; receive thread only. */
+    private long lastNackNanos;
+
+    /** Server time carried by the last sender report, echoed in receiver reports; receive thread only. */
+    private int lastSenderReport;
+
+    /** When the last sender report arrived, 0 if none; receive thread only. */
+    private long lastSenderReportNanos;
+
+    /** Worst fraction of frames lost (0..255) over the senders in the last receiver report. */
+    private volatile int lossFraction;
+
+    /** Frames lost from all senders since they were first heard, as of the last receiver report. */
+    private volatile long cumulativeLost;
+
+    /** Number of captured frames suppressed as silence. */
+    private final java.util.concurrent.atomic.AtomicLong framesSuppressed = new java.util.concurrent.atomic.AtomicLong();
+
     /**
      * Constructs an AudioHandler with the specified parameters.
      * 
@@ -90,16 +166,34 @@ public class AudioHandler {
      * @throws LineUnavailableException if audio line cannot be opened
      */
     public AudioHandler(InetAddress serverAddress, int serverUdpPort, DatagramSocket socket, int initialClientId, AtomicBoolean isMute) throws LineUnavailableException {
+        this(serverAddress, serverUdpPort, socket, initialClientId, isMute, AudioProfile.DEFAULT);
+    }
+
+    /**
+     * Constructs an AudioHandler capturing and playing audio with the given profile.
+     *
+     * @param serverAddress the server's inet address
+     * @param serverUdpPort the UDP port for audio transmission
+     * @param socket the DatagramSocket for sending/receiving audio
+     * @param initialClientId the client's assigned ID
+     * @param isMute atomic boolean controlling mute state
+     * @param profile sample rate and frame duration negotiated with the server
+     * @throws LineUnavailableException if audio line cannot be opened
+     */
+    AudioHandler(InetAddress serverAddress, int serverUdpPort, DatagramSocket socket, int initialClientId, AtomicBoolean isMute, AudioProfile profile) throws LineUnavailableException {
         this.serverAddress = serverAddress;
         this.serverUdpPort = serverUdpPort;
         this.socket = socket;
         this.assignedClientId = initialClientId;
         this.isMute = isMute;
+        this.profile = profile;
+        this.frameBytes = profile.pcmBytesPerFrame();
+        this.vad = new VoiceActivityDetector(profile);
 
-        format = new AudioFormat(SAMPLE_RATE, SAMPLE_SIZE_IN_BITS, CHANNELS, SIGNED, BIG_ENDIAN);
+        format = new AudioFormat(profile.sampleRate(), SAMPLE_SIZE_IN_BITS, CHANNELS, SIGNED, BIG_ENDIAN);
         DataLine.Info info = new DataLine.Info(SourceDataLine.class, format);
         speakers = (SourceDataLine) AudioSystem.getLine(info);
-        speakers.open(format);
+        speakers.open(format, OUTPUT_BUFFER_TICKS * frameBytes);
         speakers.start();
     }
     
@@ -121,6 +215,172 @@ public class AudioHandler {
         this.assignedClientId = id;
     }
 
+    /**
+     * Enables or disables discontinuous transmission. When enabled (the default), captured frames
+     * that the voice activity detector judges to be silence are not sent; a small comfort noise
+     * marker is sent every {@value #COMFORT_NOISE_INTERVAL_MS} ms instead.
+     *
+     * @param enabled true to suppress silent frames
+     */
+    public void setDtxEnabled(boolean enabled) {
+        this.dtxEnabled = enabled;
+    }
+
+    /**
+     * Enables or disables forward error correction. When enabled, every audio packet also carries
+     * a copy of the previous frame, encoded with {@link AudioPacketizer#REDUNDANCY_CODEC}, so
+     * listeners can replace a single lost packet with real audio instead of concealing it. This
+     * costs about a quarter more bandwidth with PCM and adds one frame of playout delay at the
+     * receivers. Off by default.
+     *
+     * @param enabled true to send redundant frames
+     */
+    public void setFecEnabled(boolean enabled) {
+        this.fecEnabled = enabled;
+    }
+
+    /**
+     * Sets the codec used to encode captured audio. Received audio is decoded with whatever codec
+     * each packet names, so this only affects what this client sends.
+     *
+     * @param codec the codec negotiated with the server
+     */
+    void setCodec(AudioCodec codec) {
+        this.codec = codec == null ? AudioCodecs.PCM : codec;
+    }
+
+    /**
+     * Sets the header version of sent packets. Received packets may use either version.
+     *
+     * @param version the version negotiated with the server
+     */
+    void setHeaderVersion(int version) {
+        this.headerVersion = version == PacketHeader.VERSION_2 ? version : 1;
+    }
+
+    /**
+     * Returns the profile the audio lines were opened with.
+     *
+     * @return sample rate and frame duration of captured and played audio
+     */
+    AudioProfile getProfile() {
+        return profile;
+    }
+
+    /**
+     * Returns the number of captured frames sent as audio.
+     *
+     * @return frames sent
+     */
+    public long getFramesSent() {
+        return framesSent.get();
+    }
+
+    /**
+     * Returns the number of captured frames suppressed as silence by DTX.
+     *
+     * @return frames suppressed
+     */
+    public long getFramesSuppressed() {
+        return framesSuppressed.get();
+    }
+
+    /**
+     * Returns the number of missing received frames replaced by loss concealment.
+     *
+     * @return frames concealed
+     */
+    public long getFramesConcealed() {
+        return framesConcealed.get();
+    }
+
+    /**
+     * Returns the number of lost received frames recovered from redundant copies (forward error
+     * correction) before their playout time.
+     *
+     * @return frames repaired
+     */
+    public long getFramesRepaired() {
+        return framesRepaired.get();
+    }
+
+    /**
+     * Returns the number of lost received frames this client asked the server to retransmit.
+     *
+     * @return frames requested again
+     */
+    public long getFramesNacked() {
+        return framesNacked.get();
+    }
+
+    /**
+     * Returns the smoothed round trip time to the server, measured from retransmission requests
+     * to the frames they bring back and reported by the server from receiver reports. Lost frames
+     * are only requested while the round trip fits before their playout time.
+     *
+     * @return round trip time in milliseconds, 0 until measured
+     */
+    public int getRoundTripMs() {
+        return (int) (roundTripNanos / 1_000_000L);
+    }
+
+    /**
+     * Returns the share of frames lost in the last report interval, from the sender received
+     * worst. Recovered frames (retransmitted in time) do not count as lost.
+     *
+     * @return percentage of frames lost
+     */
+    public double getLossPercent() {
+        return lossFraction * 100.0 / 256;
+    }
+
+    /**
+     * Returns the number of frames lost from all senders since they were first heard, as of the
+     * last receiver report.
+     *
+     * @return frames lost
+     */
+    public long getCumulativeLost() {
+        return cumulativeLost;
+    }
+
+    /**
+     * Returns how much audio is queued in the output line ahead of the device, the part of the
+     * playback latency after the jitter buffer.
+     *
+     * @return output delay in milliseconds
+     */
+    public int getOutputDelayMs() {
+        return outputDelayMs;
+    }
+
+    /**
+     * Returns the current playout delay: how long received audio waits in the jitter buffer
+     * before being played, for the sender with the longest wait.
+     *
+     * @return playout delay in milliseconds, 0 if nothing has been received
+     */
+    public int getPlayoutDelayMs() {
+        int max = 0;
+        for (ReceiveStream stream : streams) {
+            max = Math.max(max, stream.buffer.getDelayMs());
+        }
+        return max;
+    }
+
+    /**
+     * Drops the receive state of a sender that left the call, such as on a {@code PRESENCE REMOVE}
+     * from the server, instead of waiting for it to time out. Safe to call from any thread.
+     *
+     * @param senderId the sender's client id
+     */
+    public void removeSender(int senderId) {
+        ReceiveStream stream = findStream(senderId);
+        if (stream == null) return;
+        stream.removed = true;
+        sendersRemoved = true;
+    }
+
     /**
      * Starts the audio streaming thread to capture and send audio to the server.
      */
@@ -193,7 +453,11 @@ public class AudioHandler {
      * Captures audio from the microphone and sends it to the server.
      * <p>
      * Implements the UDP header structure with client ID, sequence number, and audio length.
-     * Respects mute state and sends keepalive packets when muted.
+     * Respects mute state and sends keepalive packets when muted. With DTX enabled, frames the
+     * voice activity detector classifies as silence are not sent; a comfort noise marker keeps the
+     * sender visible instead. Sequence numbers only advance for packets actually sent, so peers
+     * see no gaps. Packets are built by an {@link AudioPacketizer} in one reusable buffer, so
+     * nothing is allocated per frame.
      * </p>
      */
     private void audioSender() {
@@ -202,51 +466,46 @@ public class AudioHandler {
                 microphone.open(format);
                 microphone.start();
 
-                byte[] buffer = new byte[BUFFER_SIZE];
+                byte[] buffer = new byte[frameBytes];
+                AudioPacketizer packets = new AudioPacketizer(profile, serverAddress, serverUdpPort);
             // Sequence number is int (4 bytes) starting at 0
             int sequenceNumber = 0; 
+            // Media timestamp in samples, advancing with every captured (or muted) frame, sent or not
+            int timestamp = 0;
             long lastSendTime = System.currentTimeMillis();
+            final int FRAME_DURATION_MS = profile.frameMs();
 
             while (isRunning) {
-                final int FRAME_DURATION_MS = (int)(BUFFER_SIZE * 1000 / (SAMPLE_RATE * SAMPLE_SIZE_IN_BITS/8)); // ~20ms
-                
+                packets.setHeaderVersion(headerVersion);
                 // Mute/Unmute logic check
                 if (!isMute.get()) { 
                     int bytesRead = microphone.read(buffer, 0, buffer.length);
                     
-                    if (bytesRead > 0) {
-                        // UDP Header: 4 bytes clientId (int), 4 bytes sequenceNumber (int), 2 bytes audioLength (short)
-                        // Total 10 bytes header, must be BIG-ENDIAN
-                        
-                        // Use ByteBuffer to pack the header in Big-Endian
-                        ByteBuffer headerBuffer = ByteBuffer.allocate(10).order(ByteOrder.BIG_ENDIAN);
-                        headerBuffer.putInt(assignedClientId); // 4 bytes clientId
-                        headerBuffer.putInt(sequenceNumber); // 4 bytes sequenceNumber (int32)
-                        headerBuffer.putShort((short) bytesRead); // 2 bytes audioLength (uint16)
-                        
-                        ByteArrayOutputStream packetData = new ByteArrayOutputStream();
-                        packetData.write(headerBuffer.array());
-                        packetData.write(buffer, 0, bytesRead); // Audio payload
+                    boolean speech = bytesRead > 0 && (!dtxEnabled || vad.isSpeech(buffer, 0, bytesRead));
+                    if (bytesRead > 0 && !speech) {
+                        framesSuppressed.incrementAndGet();
+                        if (System.currentTimeMillis() - lastSendTime >= COMFORT_NOISE_INTERVAL_MS) {
+                            // Comfort noise marker: empty payload, then the level and noise extensions
+                            socket.send(packets.comfortNoise(assignedClientId, sequenceNumber, timestamp, vad.getLastLevel(), vad.getNoiseLevel()));
 
-                        byte[] datasend = packetData.toByteArray();
-                        DatagramPacket packet = new DatagramPacket(datasend, datasend.length, serverAddress, serverUdpPort);
-                        socket.send(packet);
+                            sequenceNumber = (sequenceNumber + 1);
+                            lastSendTime = System.currentTimeMillis();
+                        }
+                    } else if (bytesRead > 0) {
+                        // Header, encoded payload and extensions, built in the packetizer's reusable buffer
+                        packets.setFecEnabled(fecEnabled);
+                        socket.send(packets.audio(assignedClientId, sequenceNumber, timestamp, buffer, bytesRead, codec));
                         
                         sequenceNumber = (sequenceNumber + 1); // Increment sequence number
                         lastSendTime = System.currentTimeMillis();
+                        framesSent.incrementAndGet();
                     }
+                    if (bytesRead > 0) timestamp += bytesRead / 2;
                 } else {
                     // Send a packet every 15-30s if idle (Mute)
                     if (System.currentTimeMillis() - lastSendTime > 15000) { // 15 seconds
-                         // Send a keepalive packet (header only, audioLength = 0)
-                        ByteBuffer headerBuffer = ByteBuffer.allocate(10).order(ByteOrder.BIG_ENDIAN);
-                        headerBuffer.putInt(assignedClientId);
-                        headerBuffer.putInt(sequenceNumber);
-                        headerBuffer.putShort((short) 0); // audioLength = 0
-                        
-                        byte[] datasend = headerBuffer.array();
-                        DatagramPacket packet = new DatagramPacket(datasend, datasend.length, serverAddress, serverUdpPort);
-                        socket.send(packet);
+                        // Send a keepalive packet (header only, audioLength = 0)
+                        socket.send(packets.keepalive(assignedClientId, sequenceNumber, timestamp));
                         
                         sequenceNumber = (sequenceNumber + 1);
                         lastSendTime = System.currentTimeMillis();
@@ -258,6 +517,7 @@ public class AudioHandler {
                         Thread.currentThread().interrupt();
                         break;
                     }
+                    timestamp += profile.samplesPerFrame();
                 }
             }
         } catch (LineUnavailableException | IllegalArgumentException e) {
@@ -274,50 +534,125 @@ public class AudioHandler {
     /**
      * Receives audio packets from the server and stores them in jitter buffers.
      * <p>
-     * Unpacks the 10-byte UDP header (client ID, sequence number, audio length)
-     * and stores audio data in per-client jitter buffers ordered by sequence number.
+     * Parses the UDP header of either {@link PacketHeader} version in place, decodes the payload
+     * with the codec named in the header or its extensions, and stores the PCM audio in
+     * per-client jitter buffers.
      * </p>
      */
     private void audioReceiver() {
         byte[] buffer = new byte[65535]; 
+        short[] decoded = new short[AudioProfile.MAX_SAMPLES_PER_FRAME];
+        short[] resampled = new short[AudioProfile.MAX_SAMPLES_PER_FRAME * 3];
+        // reused for every packet: the receive path allocates nothing per frame
+        DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+        ByteBuffer byteBuffer = ByteBuffer.wrap(buffer).order(ByteOrder.BIG_ENDIAN);
+        PacketHeader header = new PacketHeader();
+        byte[] feedback = new byte[FeedbackPackets.HEADER_SIZE + FeedbackPackets.NACK_ENTRY_SIZE];
+        DatagramPacket nack = new DatagramPacket(feedback, feedback.length, serverAddress, serverUdpPort);
+        ByteBuffer nackBuffer = ByteBuffer.wrap(feedback).order(ByteOrder.BIG_ENDIAN);
+        byte[] reportBytes = new byte[Server.MAX_PACKET_SIZE];
+        DatagramPacket report = new DatagramPacket(reportBytes, reportBytes.length, serverAddress, serverUdpPort);
+        ByteBuffer reportBuffer = ByteBuffer.wrap(reportBytes).order(ByteOrder.BIG_ENDIAN);
+        long lastReportNanos = System.nanoTime();
         while (isRunning) {
             try {
-                DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+                packet.setLength(buffer.length);
                 socket.receive(packet); // Use the created socket
 
-                    if (packet.getLength() < 10) { // Packet must have at least 10 bytes of header
-                        logger.fine("Dropping malformed packet: length too small.");
-                    continue; 
+                // Reception reports ride on received packets; sender reports arrive at least once per interval
+                long now = System.nanoTime();
+                if (sendersRemoved) dropStreams(now);
+                if (now - lastReportNanos >= FeedbackPackets.REPORT_INTERVAL_MS * 1_000_000L && assignedClientId > 0) {
+                    lastReportNanos = now;
+                    dropStreams(now);
+                    sendReceiverReport(now, report, reportBuffer);
+                }
+                if (FeedbackPackets.isFeedback(byteBuffer, packet.getLength())) {
+                    // Sender report: server time to echo, and the round trip the server measured
+                    if ((byteBuffer.get(0) & 0xFF) == FeedbackPackets.TYPE_SENDER_REPORT
+                            && packet.getLength() >= FeedbackPackets.HEADER_SIZE + FeedbackPackets.SENDER_REPORT_SIZE) {
+                        lastSenderReport = byteBuffer.getInt(FeedbackPackets.HEADER_SIZE);
+                        lastSenderReportNanos = now;
+                        int rtt = byteBuffer.getInt(FeedbackPackets.HEADER_SIZE + 4);
+                        if (rtt > 0) updateRoundTrip(rtt * 1000L);
+                    }
+                    continue;
                 }
 
-                // Unpack the Big-Endian header
-                ByteBuffer byteBuffer = ByteBuffer.wrap(packet.getData(), 0, packet.getLength())
-                                                .order(ByteOrder.BIG_ENDIAN);
-                
-                int senderId = byteBuffer.getInt(); // 4 bytes clientId
-                // Read int (4 bytes) and convert to Long to treat as unsigned int for sequence number
-                long sequenceNumber = byteBuffer.getInt() & 0xFFFFFFFFL; 
-                int audioLength = byteBuffer.getShort() & 0xFFFF; // 2 bytes audioLength (unsigned short)
-                
-                // Validate packet length
-                if (audioLength > BUFFER_SIZE || audioLength < 0 || packet.getLength() != 10 + audioLength) {
+                // Parse the Big-Endian header in place, version 1 or 2
+                try {
+                    header.parse(byteBuffer, packet.getLength());
+                } catch (IllegalArgumentException e) {
+                    logger.fine("Dropping malformed packet: " + e.getMessage());
+                    continue;
+                }
+                int senderId = header.clientId;
+                int sequenceNumber = header.sequenceNumber; // compared with serial arithmetic
+                int audioOffset = header.payloadOffset;
+                int audioLength = header.payloadLength;
+                // bytes after the payload are extensions (see PacketExtensions)
+                int extensionsOffset = header.extensionsOffset;
+                int extensionsEnd = header.extensionsEnd;
+                boolean talkspurtStart = (header.flags & PacketHeader.FLAG_MARKER) != 0;
+
+                if (audioLength > AudioProfile.MAX_PAYLOAD_BYTES) {
                     logger.fine("Dropping malformed packet: invalid audioLength or packet size.");
                     continue;
                 }
                 
-                // If audioLength = 0, ignore (might be a keepalive packet)
-                if(audioLength == 0) continue;
+                // If audioLength = 0, ignore (keepalive or comfort noise marker from a silent sender),
+                // apart from noticing frames lost before it
+                if(audioLength == 0) {
+                    ReceiveStream quiet = findStream(senderId);
+                    if (quiet != null) trackSequence(quiet, sequenceNumber, false, now, nack, nackBuffer);
+                    continue;
+                }
                 
-                byte[] audioData = new byte[audioLength];
-                byteBuffer.get(audioData); // Payload
+                // Decode the payload with the codec the sender used
+                int codecId = header.version == PacketHeader.VERSION_2 ? header.codecId : PacketExtensions.codecId(byteBuffer, extensionsOffset, extensionsEnd);
+                AudioCodec payloadCodec = AudioCodecs.byId(codecId);
+                if (payloadCodec == null) {
+                    logger.fine("Dropping packet with unknown codec.");
+                    continue;
+                }
+                int sampleCount = payloadCodec.decode(byteBuffer, audioOffset, audioLength, decoded);
+                // Senders may use another profile: convert to our playback rate
+                int senderRate = PacketExtensions.sampleRate(byteBuffer, extensionsOffset, extensionsEnd);
+                if (senderRate != 8000 && senderRate != 16000 && senderRate != 24000) {
+                    logger.fine("Dropping packet with unsupported sample rate.");
+                    continue;
+                }
+                sampleCount = PcmMixer.resample(decoded, sampleCount, senderRate, resampled, profile.sampleRate());
 
-                // Use ConcurrentSkipListMap for the Jitter Buffer (ordered by sequence number)
-                jitterBuffers.putIfAbsent(senderId, new ConcurrentSkipListMap<>());
-                ConcurrentSkipListMap<Long, byte[]> queue = jitterBuffers.get(senderId);
-                
-                if (queue.size() < 200) { // Cap Jitter Buffer size (e.g., 200 frames)
-                    queue.put(sequenceNumber, audioData); 
+                // Copy the frame into the sender's jitter buffer, which drops it if it is late; the
+                // buffer is paced by the sender's frame duration, which may differ from ours
+                ReceiveStream stream = findStream(senderId);
+                int senderFrameMs = sampleCount * 1000 / profile.sampleRate();
+                if (stream == null) {
+                    stream = new ReceiveStream(senderId, newJitterBuffer(senderFrameMs), new LossConcealer(profile.sampleRate()));
+                    ReceiveStream[] grown = java.util.Arrays.copyOf(streams, streams.length + 1);
+                    grown[grown.length - 1] = stream;
+                    streams = grown;
+                } else if (stream.buffer.getFrameMs() != senderFrameMs && AudioProfile.isFrameDuration(senderFrameMs)) {
+                    stream.buffer = newJitterBuffer(senderFrameMs);
+                }
+                stream.buffer.offer(sequenceNumber, resampled, sampleCount, now);
+
+                // A redundant copy of an earlier frame fills the gap if that packet was lost
+                int redundant = PacketExtensions.find(byteBuffer, extensionsOffset, extensionsEnd, PacketExtensions.TYPE_REDUNDANT);
+                if (redundant >= 0 && PacketExtensions.valueLength(byteBuffer, redundant) > PacketExtensions.REDUNDANT_HEADER_SIZE) {
+                    int distance = byteBuffer.get(redundant) & 0xFF;
+                    AudioCodec redundantCodec = AudioCodecs.byId(byteBuffer.get(redundant + 1) & 0xFF);
+                    if (distance > 0 && redundantCodec != null) {
+                        int redundantLength = PacketExtensions.valueLength(byteBuffer, redundant) - PacketExtensions.REDUNDANT_HEADER_SIZE;
+                        int n = redundantCodec.decode(byteBuffer, redundant + PacketExtensions.REDUNDANT_HEADER_SIZE, redundantLength, decoded);
+                        n = PcmMixer.resample(decoded, n, senderRate, resampled, profile.sampleRate());
+                        if (stream.buffer.repair(sequenceNumber - distance, resampled, n, now)) {
+                            framesRepaired.incrementAndGet();
+                        }
+                    }
                 }
+                trackSequence(stream, sequenceNumber, talkspurtStart, now, nack, nackBuffer);
             } catch (InterruptedIOException ignore) {
                 // Ignore timeouts/interrupts (covers SocketTimeoutException as it subclasses InterruptedIOException)
             } catch (IOException e) {
@@ -332,56 +667,213 @@ public class AudioHandler {
         }
     }
 
+    // Tracks a sender's sequence numbers for receiver reports. Frames missing behind a newly
+    // received one are requested again with a NACK if the retransmission could still arrive
+    // before their playout time; the first frame of a NACK coming back measures the round trip.
+    // Large jumps and gaps before a talkspurt's first packet are pauses (mute, sequence
+    // restarts), not losses.
+    private void trackSequence(ReceiveStream stream, int seq, boolean talkspurtStart, long now, DatagramPacket nack, ByteBuffer nackBuffer) throws IOException {
+        stream.received++;
+        stream.lastHeardNanos = now;
+        if (stream.nackedNanos != 0 && seq == stream.nackedSeq) {
+            updateRoundTrip(now - stream.nackedNanos);
+            stream.nackedNanos = 0;
+        }
+        if (!stream.hasHighest) {
+            stream.highestSeq = seq;
+            stream.baseSeq = seq;
+            stream.hasHighest = true;
+            return;
+        }
+        int gap = seq - stream.highestSeq - 1;
+        if (gap < 0) return; // reordered or retransmitted
+        stream.highestSeq = seq;
+        if (gap == 0) return;
+        if (talkspurtStart || gap > FeedbackPackets.NACK_ENTRY_SPAN) {
+            stream.skipped += gap;
+            return;
+        }
+        if (assignedClientId <= 0) return;
+
+        // now and then ignore the estimate so it can follow a round trip that got shorter
+        long lead = now - lastNackNanos >= NACK_PROBE_INTERVAL_NANOS ? 0 : roundTripNanos;
+        JitterBuffer jitterBuffer = stream.buffer;
+        int firstLost = 0;
+        int mask = -1; // no frame to request yet
+        for (int s = seq - gap; s != seq; s++) {
+            if (!jitterBuffer.isRecoverable(s, now, lead)) continue;
+            if (mask < 0) {
+                firstLost = s;
+                mask = 0;
+            } else {
+                mask |= 1 << (s - firstLost - 1);
+            }
+        }
+        if (mask < 0) return;
+        FeedbackPackets.putHeader(nackBuffer, FeedbackPackets.TYPE_NACK, assignedClientId, stream.senderId);
+        FeedbackPackets.putNack(nackBuffer, firstLost, mask);
+        nack.setLength(nackBuffer.position());
+        socket.send(nack);
+        stream.nackedSeq = firstLost;
+        stream.nackedNanos = now;
+        lastNackNanos = now;
+        framesNacked.addAndGet(1 + Integer.bitCount(mask));
+    }
+
+    private void updateRoundTrip(long sample) {
+        roundTripNanos = roundTripNanos == 0 ? sample : roundTripNanos + (sample - roundTripNanos) / 8;
+    }
+
+    // Receiver report with one block per sender heard from (RFC 3550 section 6.4.2 arithmetic),
+    // echoing the last sender report so the server can measure the round trip
+    private void sendReceiverReport(long now, DatagramPacket report, ByteBuffer out) throws IOException {
+        FeedbackPackets.putHeader(out, FeedbackPackets.TYPE_RECEIVER_REPORT, assignedClientId, assignedClientId);
+        int delay = lastSenderReportNanos == 0 ? 0 : FeedbackPackets.micros(now - lastSenderReportNanos);
+        FeedbackPackets.putReceiverReport(out, lastSenderReport, delay);
+        int worstFraction = 0;
+        long lost = 0;
+        for (ReceiveStream stream : streams) {
+            if (!stream.hasHighest || out.remaining() < FeedbackPackets.REPORT_BLOCK_SIZE) continue;
+            long expected = (stream.highestSeq - stream.baseSeq + 1L) - stream.skipped;
+            long expectedInterval = expected - stream.expectedPrior;
+            long lostInterval = expectedInterval - (stream.received - stream.receivedPrior);
+            int fraction = expectedInterval <= 0 || lostInterval <= 0 ? 0 : (int) Math.min(255, (lostInterval << 8) / expectedInterval);
+            stream.expectedPrior = expected;
+            stream.receivedPrior = stream.received;
+            int cumulative = (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, expected - stream.received));
+            int jitter = (int) (stream.buffer.getJitterMs() * 1000);
+            FeedbackPackets.putReportBlock(out, stream.senderId, fraction, cumulative, stream.highestSeq, jitter);
+            worstFraction = Math.max(worstFraction, fraction);
+            lost += Math.max(0, cumulative);
+        }
+        report.setLength(out.position());
+        socket.send(report);
+        lossFraction = worstFraction;
+        cumulativeLost = lost;
+    }
+
+    // Drops the streams of senders that left or were silent for STREAM_IDLE_NANOS; the playback
+    // thread sees the new array and stops mixing them. Receive thread only.
+    private void dropStreams(long now) {
+        sendersRemoved = false;
+        ReceiveStream[] current = streams;
+        ReceiveStream[] remaining = null; // allocated once something is dropped
+        int kept = 0;
+        for (int i = 0; i < current.length; i++) {
+            ReceiveStream stream = current[i];
+            if (stream.removed || now - stream.lastHeardNanos > STREAM_IDLE_NANOS) {
+                if (remaining == null) {
+                    remaining = java.util.Arrays.copyOf(current, current.length);
+                    kept = i;
+                }
+            } else if (remaining != null) {
+                remaining[kept++] = stream;
+            }
+        }
+        if (remaining != null) streams = java.util.Arrays.copyOf(remaining, kept);
+    }
+
+    // senders are few, so a linear scan beats hashing (and boxing) the id
+    private ReceiveStream findStream(int senderId) {
+        for (ReceiveStream stream : streams) {
+            if (stream.senderId == senderId) return stream;
+        }
+        return null;
+    }
+
+    // slots hold one of the sender's frames after resampling to our rate
+    private JitterBuffer newJitterBuffer(int senderFrameMs) {
+        int frameMs = AudioProfile.isFrameDuration(senderFrameMs) ? senderFrameMs : profile.frameMs();
+        return new JitterBuffer(frameMs, profile.sampleRate() / 1000 * Math.max(frameMs, senderFrameMs));
+    }
+
     /**
      * Retrieves audio packets from jitter buffers and plays them through speakers.
      * <p>
-     * Implements jitter buffering by waiting for a threshold of packets before playback.
-     * Processes packets in sequence number order for smooth audio output.
+     * Driven by the output device: the line's frame position tells how much written audio is
+     * still queued, and a tick (one frame period) is produced whenever that drops below
+     * {@value #OUTPUT_TARGET_TICKS} ticks. Each tick, every jitter buffer releases the frames
+     * whose playout time has come (frames missing at their playout time are filled in by the
+     * sender's {@link LossConcealer}), the {@link PlaybackMixer} sums one tick of every sender's
+     * audio, and the mixed frame is written to the speakers once. Silence is written when nobody
+     * talks so the device clock, and with it the output delay, never stops.
      * </p>
      */
     private void audioPlayback() {
-        // ~20ms playback interval
-        final int PLAYBACK_INTERVAL_MS = (int)(BUFFER_SIZE * 1000 / (SAMPLE_RATE * SAMPLE_SIZE_IN_BITS/8)); 
-        final int JITTER_THRESHOLD = 2; // Start playing when at least 2 packets are in the buffer
+        final int TICK_FRAMES = profile.samplesPerFrame(); // sample frames per tick
+        final long TARGET_FILL = (long) OUTPUT_TARGET_TICKS * TICK_FRAMES;
+        // playback thread only
+        PlaybackMixer mixer = new PlaybackMixer(profile);
+        short[] frame = new short[AudioProfile.MAX_SAMPLES_PER_FRAME * 3];
+        byte[] mixed = new byte[frameBytes];
+        long written = 0; // sample frames written to the line
+        ReceiveStream[] mixing = streams; // the streams the mixer has sources for
         
         while (isRunning) {
-            boolean played = false;
+            // Wait until the device has played the audio queued beyond the target
+            long queued = written - speakers.getLongFramePosition();
+            outputDelayMs = (int) (queued * 1000 / profile.sampleRate());
+            if (queued >= TARGET_FILL || speakers.available() < frameBytes) {
+                long frames = Math.max(1, queued - TARGET_FILL + 1);
+                java.util.concurrent.locks.LockSupport.parkNanos(frames * 1_000_000_000L / profile.sampleRate());
+                if (Thread.currentThread().isInterrupted()) return;
+                continue;
+            }
+
+            // Stop mixing senders the receive thread dropped
+            ReceiveStream[] current = streams;
+            if (current != mixing) {
+                removeSources(mixer, mixing, current);
+                mixing = current;
+            }
 
-            // Iterate through all client buffers
-            for (ConcurrentSkipListMap<Long, byte[]> buffer : jitterBuffers.values()) {
+            // Collect every sender's due frames
+            for (ReceiveStream stream : current) {
+                if (stream.source == null) stream.source = mixer.newSource();
                 try {
-                    // Jitter Threshold: only play if there are enough packets
-                    if (buffer.size() >= JITTER_THRESHOLD) {
-                        // Get and remove the packet with the lowest sequenceNumber (the oldest)
-                        Long oldestKey = buffer.firstKey();
-                        byte[] audioData = buffer.remove(oldestKey); 
-                        
-                        if (audioData != null) {
-                            try {
-                                speakers.write(audioData, 0, audioData.length);
-                                played = true;
-                            } catch (IllegalStateException | IllegalArgumentException e) {
-                                logger.log(Level.WARNING, "Failed to write to speakers: " + e.getMessage(), e);
-                            }
+                    JitterBuffer buffer = stream.buffer;
+                    int samples;
+                    while ((samples = buffer.poll(System.nanoTime(), frame)) != JitterBuffer.NOTHING_DUE) {
+                        if (samples == JitterBuffer.LOST) {
+                            samples = stream.concealer.conceal(frame);
+                            if (samples == 0) continue;
+                            framesConcealed.incrementAndGet();
+                        } else {
+                            stream.concealer.onFrame(frame, samples);
                         }
+                        mixer.add(stream.source, frame, samples);
                     }
                 } catch (RuntimeException e) {
                     logger.log(Level.WARNING, "Error in AudioPlayer: " + e.getMessage(), e);
                 }
             }
-            
-            // Sleep to regulate playback speed
-            if (!played) { 
-                try {
-                    // Sleep for the frame duration if nothing was played
-                    TimeUnit.MILLISECONDS.sleep(PLAYBACK_INTERVAL_MS);
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                    return;
-                }
+
+            // Mix one tick of all senders (silence if nobody talks) and play it
+            int length = mixer.mix(mixed);
+            java.util.Arrays.fill(mixed, length, mixed.length, (byte) 0);
+            try {
+                speakers.write(mixed, 0, mixed.length);
+                written += TICK_FRAMES;
+            } catch (IllegalStateException | IllegalArgumentException e) {
+                logger.log(Level.WARNING, "Failed to write to speakers: " + e.getMessage(), e);
             }
         }
         speakers.stop();
         speakers.close();
     }
+
+    // playback thread: removes the mixer sources of streams that are no longer current
+    private static void removeSources(PlaybackMixer mixer, ReceiveStream[] previous, ReceiveStream[] current) {
+        for (ReceiveStream stream : previous) {
+            if (stream.source == null) continue;
+            boolean kept = false;
+            for (ReceiveStream s : current) {
+                if (s == stream) {
+                    kept = true;
+                    break;
+                }
+            }
+            if (!kept) mixer.removeSource(stream.source);
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,155 @@
+package com.audiostreaming;
+
+import java.net.DatagramPacket;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Builds the UDP packets a client sends, reusing one buffer and one {@link DatagramPacket}.
+ * <p>
+ * Every packet starts with a {@link PacketHeader} of the negotiated version (1 until the server
+ * agrees to version 2), followed by the payload and its {@link PacketExtensions}. Version 2
+ * packets carry the codec and a talkspurt marker in the header. With forward error
+ * correction enabled, an audio packet also carries a redundant copy of the previous frame,
+ * encoded with {@link #REDUNDANCY_CODEC}, if that frame was sent in the directly preceding
+ * packet and the copy fits in {@link #MAX_PACKET_SIZE}. The returned packet is only
+ * valid until the next call; it is meant to be passed to {@link java.net.DatagramSocket#send}
+ * right away. Nothing is allocated per packet. Not thread-safe; used by the sender thread only.
+ * </p>
+ */
+final class AudioPacketizer {
+    /** Largest packet sent, the size of the server's receive buffers. */
+    static final int MAX_PACKET_SIZE = Server.MAX_PACKET_SIZE;
+    /** Codec of redundant copies: about a quarter of the PCM size at acceptable quality. */
+    static final AudioCodec REDUNDANCY_CODEC = AudioCodecs.ADPCM;
+
+    private final AudioProfile profile;
+    private final byte[] bytes = new byte[MAX_PACKET_SIZE];
+    private final ByteBuffer out = ByteBuffer.wrap(bytes).order(ByteOrder.BIG_ENDIAN);
+    private final short[] samples;
+    private final short[] previous; // samples of the last audio frame, for redundancy
+    private int previousCount;
+    private int previousSeq;
+    private final DatagramPacket packet;
+    private boolean fecEnabled;
+    private int version = 1;
+    private int extensionsOffset; // where the current packet's payload ends
+
+    /**
+     * @param profile profile of the captured audio
+     * @param serverAddress destination address
+     * @param serverUdpPort destination port
+     */
+    AudioPacketizer(AudioProfile profile, InetAddress serverAddress, int serverUdpPort) {
+        this.profile = profile;
+        this.samples = new short[profile.samplesPerFrame()];
+        this.previous = new short[profile.samplesPerFrame()];
+        this.packet = new DatagramPacket(bytes, 0, serverAddress, serverUdpPort);
+    }
+
+    /**
+     * Enables or disables redundant copies of the previous frame in audio packets.
+     *
+     * @param enabled true to add forward error correction
+     */
+    void setFecEnabled(boolean enabled) {
+        this.fecEnabled = enabled;
+    }
+
+    /**
+     * Sets the header version of the packets built from now on.
+     *
+     * @param version 1, or {@link PacketHeader#VERSION_2} once negotiated with the server
+     */
+    void setHeaderVersion(int version) {
+        this.version = version;
+    }
+
+    /**
+     * Builds an audio packet from one captured frame.
+     *
+     * @param clientId sender's client id
+     * @param seq sequence number
+     * @param timestamp media timestamp of the frame in samples
+     * @param pcm captured 16-bit little-endian samples
+     * @param length number of captured bytes, at most one frame
+     * @param codec codec to encode the payload with
+     * @return the packet, valid until the next call
+     */
+    DatagramPacket audio(int clientId, int seq, int timestamp, byte[] pcm, int length, AudioCodec codec) {
+        int sampleCount = Math.min(length >> 1, samples.length);
+        for (int i = 0; i < sampleCount; i++) {
+            samples[i] = (short) ((pcm[2 * i] & 0xFF) | (pcm[2 * i + 1] << 8));
+        }
+
+        // a frame not following the previous audio packet starts a talkspurt
+        boolean marker = previousCount == 0 || previousSeq != seq - 1;
+        header(marker ? PacketHeader.FLAG_MARKER : 0, codec, clientId, seq, timestamp);
+        int encoded = codec.encode(samples, sampleCount, out);
+        PacketHeader.putPayloadLength(out, version, encoded);
+        extensionsOffset = out.position();
+
+        // Extensions: audio level (used by the server to pick the loudest talkers), codec (in the
+        // header from version 2 on) and sample rate
+        PacketExtensions.putAudioLevel(out, PcmMixer.levelDbov(pcm, 0, length));
+        if (codec != AudioCodecs.PCM && version != PacketHeader.VERSION_2) PacketExtensions.putCodec(out, codec.id());
+        if (profile.sampleRate() != 8000) PacketExtensions.putSampleRate(out, profile.sampleRate());
+        if (fecEnabled && previousCount > 0 && previousSeq == seq - 1
+                && out.remaining() >= PacketExtensions.ENTRY_HEADER_SIZE + PacketExtensions.REDUNDANT_HEADER_SIZE + REDUNDANCY_CODEC.encodedSize(previousCount)) {
+            PacketExtensions.putRedundant(out, 1, REDUNDANCY_CODEC, previous, previousCount);
+        }
+        System.arraycopy(samples, 0, previous, 0, sampleCount);
+        previousCount = sampleCount;
+        previousSeq = seq;
+        return finish();
+    }
+
+    /**
+     * Builds a comfort noise marker: an empty payload with the level and noise extensions.
+     *
+     * @param clientId sender's client id
+     * @param seq sequence number
+     * @param timestamp media timestamp in samples
+     * @param level level of the last captured frame in -dBov
+     * @param noiseLevel background noise level in -dBov
+     * @return the packet, valid until the next call
+     */
+    DatagramPacket comfortNoise(int clientId, int seq, int timestamp, int level, int noiseLevel) {
+        header(0, AudioCodecs.PCM, clientId, seq, timestamp);
+        extensionsOffset = out.position();
+        PacketExtensions.putAudioLevel(out, level);
+        PacketExtensions.putComfortNoise(out, noiseLevel);
+        return finish();
+    }
+
+    /**
+     * Builds a keepalive: the header alone with an empty payload.
+     *
+     * @param clientId sender's client id
+     * @param seq sequence number
+     * @param timestamp media timestamp in samples
+     * @return the packet, valid until the next call
+     */
+    DatagramPacket keepalive(int clientId, int seq, int timestamp) {
+        header(0, AudioCodecs.PCM, clientId, seq, timestamp);
+        extensionsOffset = out.position();
+        return finish();
+    }
+
+    // payload length (and extensions length) filled in later
+    private void header(int flags, AudioCodec codec, int clientId, int seq, int timestamp) {
+        out.clear();
+        if (version == PacketHeader.VERSION_2) {
+            PacketHeader.putV2(out, flags, codec.id(), clientId, seq, timestamp);
+        } else {
+            PacketHeader.putV1(out, clientId, seq);
+        }
+    }
+
+    private DatagramPacket finish() {
+        PacketHeader.putExtensionsLength(out, version, out.position() - extensionsOffset);
+        packet.setLength(out.position());
+        return packet;
+    }
+}
@@ -0,0 +1,146 @@
+package com.audiostreaming;
+
+import java.util.Objects;
+
+/**
+ * Sample rate and frame duration of an audio stream (16-bit mono), negotiated at REGISTER.
+ * <p>
+ * A client offers profiles in preference order ({@code PROFILE=16000/20,8000/20}) and the server
+ * answers with the one to use ({@code OK <id> ... PROFILE=16000/20}). Longer frames halve the
+ * packet rate a server has to handle; shorter frames cut latency. Streams with different
+ * profiles can share a room: packets that are not 8 kHz say so in the
+ * {@link PacketExtensions#TYPE_SAMPLE_RATE} extension and receivers resample to their own rate.
+ * </p>
+ */
+final class AudioProfile {
+    static final int[] SAMPLE_RATES = {8000, 16000, 24000};
+    static final int[] FRAME_DURATIONS_MS = {10, 20, 40};
+    /** Largest encoded payload allowed, so a packet with extensions stays within a typical MTU. */
+    static final int MAX_PAYLOAD_BYTES = 1400;
+    /** Samples in the longest supported frame (24 kHz, 40 ms). */
+    static final int MAX_SAMPLES_PER_FRAME = 960;
+
+    /** The original fixed format: 8 kHz, 20 ms frames. */
+    static final AudioProfile DEFAULT = new AudioProfile(8000, 20);
+    /** Profiles a client offers by default, most preferred first. */
+    static final String DEFAULT_OFFER = "16000/20,8000/20";
+
+    private final int sampleRate;
+    private final int frameMs;
+
+    private AudioProfile(int sampleRate, int frameMs) {
+        this.sampleRate = sampleRate;
+        this.frameMs = frameMs;
+    }
+
+    /**
+     * Parses a profile name of the form {@code <rate>/<ms>}.
+     *
+     * @param name profile name such as {@code 16000/20}
+     * @return the profile, or null if malformed or unsupported
+     */
+    static AudioProfile parse(String name) {
+        if (name == null) return null;
+        int slash = name.indexOf('/');
+        if (slash < 0) return null;
+        try {
+            int rate = Integer.parseInt(name.substring(0, slash).trim());
+            int ms = Integer.parseInt(name.substring(slash + 1).trim());
+            if (!contains(SAMPLE_RATES, rate) || !contains(FRAME_DURATIONS_MS, ms)) return null;
+            return rate == DEFAULT.sampleRate && ms == DEFAULT.frameMs ? DEFAULT : new AudioProfile(rate, ms);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Picks the profile to use from a client's offer.
+     *
+     * @param offer comma-separated profile names, most preferred first; may be null
+     * @param codec the codec the client will send, whose frames must fit {@link #MAX_PAYLOAD_BYTES}
+     * @return the first supported profile of the offer that fits, {@link #DEFAULT} otherwise
+     */
+    static AudioProfile negotiate(String offer, AudioCodec codec) {
+        if (offer != null) {
+            for (String name : offer.split(",")) {
+                AudioProfile p = parse(name);
+                if (p != null && p.fits(codec)) return p;
+            }
+        }
+        return DEFAULT;
+    }
+
+    /**
+     * @param ms a duration in milliseconds
+     * @return whether it is one of the supported {@link #FRAME_DURATIONS_MS}
+     */
+    static boolean isFrameDuration(int ms) {
+        return contains(FRAME_DURATIONS_MS, ms);
+    }
+
+    /**
+     * @param rate a sample rate in Hz
+     * @return whether it is one of the supported {@link #SAMPLE_RATES}
+     */
+    static boolean isSampleRate(int rate) {
+        return contains(SAMPLE_RATES, rate);
+    }
+
+    private static boolean contains(int[] values, int v) {
+        for (int x : values) {
+            if (x == v) return true;
+        }
+        return false;
+    }
+
+    /** @return samples per second */
+    int sampleRate() {
+        return sampleRate;
+    }
+
+    /** @return frame duration in milliseconds */
+    int frameMs() {
+        return frameMs;
+    }
+
+    /** @return samples in one frame */
+    int samplesPerFrame() {
+        return sampleRate / 1000 * frameMs;
+    }
+
+    /** @return bytes of 16-bit PCM in one frame */
+    int pcmBytesPerFrame() {
+        return samplesPerFrame() * 2;
+    }
+
+    /**
+     * @param codec a codec
+     * @return whether one frame encoded with {@code codec} fits {@link #MAX_PAYLOAD_BYTES}
+     */
+    boolean fits(AudioCodec codec) {
+        return codec.encodedSize(samplesPerFrame()) <= MAX_PAYLOAD_BYTES;
+    }
+
+    /** @return the negotiation name, e.g. {@code 16000/20} */
+    String name() {
+        return sampleRate + "/" + frameMs;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof AudioProfile)) return false;
+        AudioProfile other = (AudioProfile) o;
+        return sampleRate == other.sampleRate && frameMs == other.frameMs;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(sampleRate, frameMs);
+    }
+
+    @Override
+    public String toString() {
+        return name();
+    }
+}
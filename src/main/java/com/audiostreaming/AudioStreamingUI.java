@@ -348,10 +348,18 @@ public class AudioStreamingUI {
         }
         
         serverIp = serverIp.trim();
+
+        // Prompt for the voice channel (room) to join on that server
+        String room = javax.swing.JOptionPane.showInputDialog(
+            frame,
+            "Enter voice channel:",
+            "General"
+        );
         
         // Create client instance and mark connected
         try {
             client = new VoiceChatClient(serverIp, 4444, 5555);
+            client.setRoom(room);
             // Ensure TCP control is connected (client created but TCP connect happens when joining)
             boolean ok = client.connectControl();
             if (!ok) {
@@ -400,7 +408,7 @@ public class AudioStreamingUI {
         // Update UI
         userModel.clear();
         userModel.addElement(user + " (You)");
-        channelTitleLabel.setText("  Voice Channel: General Chat");
+        channelTitleLabel.setText("  Voice Channel: " + client.getRoom());
 
         // Ask the client to join the session and start audio
         // Defensive: check client is not null
@@ -522,6 +530,19 @@ public class AudioStreamingUI {
                         }
                     });
                 }
+            } else if (line.startsWith("ROOM ")) {
+                // The server confirms our room; when we were moved, the participant list that
+                // follows replaces the previous room's list.
+                final String roomName = line.substring(5).trim();
+                SwingUtilities.invokeLater(() -> {
+                    if (!joined) return;
+                    channelTitleLabel.setText("  Voice Channel: " + roomName);
+                    String myName = usernameField.getText().trim();
+                    idToName.keySet().removeIf(id -> id != myAssignedId);
+                    for (int i = userModel.size() - 1; i >= 0; i--) {
+                        if (!(myName + " (You)").equals(userModel.get(i))) userModel.remove(i);
+                    }
+                });
             } else if (line.startsWith("OK ")) {
                 SwingUtilities.invokeLater(() -> {
                     if (!joined) return; // ignore OK if we've already left
@@ -0,0 +1,80 @@
+package com.audiostreaming;
+
+import java.net.InetAddress;
+
+/**
+ * Per-client state tracked by the server for presence and forwarding decisions.
+ * <p>
+ * Presence fields are volatile because they are written by control threads and lanes and read
+ * when the routing table is rebuilt. The sequencing state ({@code window}) and the retransmit
+ * cache belong to the client's own lane; control threads ask for a reset via
+ * {@link #requestSequenceReset()} and the lane applies it before touching them.
+ * </p>
+ */
+class ClientState {
+    private static final long RETRANSMIT_INTERVAL_NANOS = 1_000_000_000L / Server.MAX_RETRANSMITS_PER_SECOND;
+    private static final long RETRANSMIT_BURST_NANOS = RETRANSMIT_INTERVAL_NANOS * RetransmitCache.CAPACITY;
+
+    volatile int clientId; 
+    volatile int clientPort; 
+    volatile InetAddress clientAddress; 
+    volatile String username;
+    volatile ClientStatus status = ClientStatus.ACTIVE; // could be ACTIVE, MUTED, LEFT, DISCONNECTED
+    volatile String room = Server.DEFAULT_ROOM;
+    volatile RoutingTable routes = RoutingTable.EMPTY; // fan-out table of this client's room, set by rebuildRoutes()
+    final ConferenceMixer.Input mixInput = new ConferenceMixer.Input(); // lane -> mixer, MCU mode only
+    int mixSequence; // sequence number of mixed frames sent to this client, mixer thread only
+    volatile int smoothedLevel = PacketExtensions.LEVEL_SILENCE; // recent audio level in -dBov, written by the lane
+    volatile long lastLevelNanos; // receive time of the last frame that carried a level
+    volatile boolean speaker; // among the room's loudest talkers, set by the speaker selection
+    boolean gated; // frames were held back since the last one forwarded, lane only
+    volatile AudioCodec codec = AudioCodecs.PCM; // negotiated at REGISTER, used for this client's mixed stream
+    volatile AudioProfile profile = AudioProfile.DEFAULT; // sample rate and frame duration negotiated at REGISTER
+    volatile int headerVersion = 1; // PacketHeader version negotiated at REGISTER; 1 for clients that predate version 2
+    volatile boolean bareAudio; // registered without options, like clients that predate them: plays only bare 8 kHz PCM (see Server.bareWire)
+    final ReorderWindow window = new ReorderWindow(Server.MAX_BUFFERED_PACKETS); // pooled frames by sequence number, lane only
+    volatile boolean gapWatched; // on its lane's list of windows holding frames (see Server.expireReorderGaps)
+    final RetransmitCache retransmits = new RetransmitCache(Server.MAX_PACKET_SIZE); // forwarded frames, lane only
+    final java.nio.ByteBuffer legacyWire = java.nio.ByteBuffer.allocate(Server.MAX_PACKET_SIZE); // version 1 copy of a forwarded frame, lane only
+    final java.nio.ByteBuffer bareWire = java.nio.ByteBuffer.allocate(Server.MAX_PACKET_SIZE); // bare pieces of a forwarded frame, lane only
+    final short[] bareSamples = new short[AudioProfile.MAX_SAMPLES_PER_FRAME]; // decoded payload of a forwarded frame, lane only
+    final short[] bareResampled = new short[AudioProfile.MAX_SAMPLES_PER_FRAME]; // the same at 8 kHz, lane only
+    final PacketHeader retransmitHeader = new PacketHeader(); // header of a cached packet resent to a version 1 listener, lane only
+    final int[] nackedSequences = new int[RetransmitCache.CAPACITY]; // sequence numbers of the NACK being answered, lane only
+    // when this client, as a listener, may next be sent a retransmission (GCRA), shared by the senders' lanes
+    private final java.util.concurrent.atomic.AtomicLong retransmitDue = new java.util.concurrent.atomic.AtomicLong(System.nanoTime());
+    volatile long lastHeard; // timestamp of last packet from this client
+    // reception quality from the client's receiver reports (see FeedbackPackets), -1 until reported
+    volatile int roundTripMicros = -1;
+    volatile int lossFraction = -1; // worst fraction lost over the client's senders, 0..255
+    volatile int jitterMicros = -1; // worst interarrival jitter over the client's senders
+    volatile long cumulativeLost; // frames lost from all senders since they were first heard
+    private final java.util.concurrent.atomic.AtomicInteger resetRequests = new java.util.concurrent.atomic.AtomicInteger(); // bumped by control threads
+    private int resetsApplied; // lane-owned
+
+
+    // ask the owning lane to restart sequencing at 0 and drop buffered frames
+    void requestSequenceReset() {
+        resetRequests.incrementAndGet();
+    }
+
+    // any lane: take one retransmission to this client from its budget of
+    // Server.MAX_RETRANSMITS_PER_SECOND, allowing bursts of a whole retransmit cache; false if over it
+    boolean tryRetransmit(long nowNanos) {
+        for (;;) {
+            long due = retransmitDue.get();
+            long next = (due - nowNanos < 0 ? nowNanos : due) + RETRANSMIT_INTERVAL_NANOS;
+            if (next - nowNanos > RETRANSMIT_BURST_NANOS) return false;
+            if (retransmitDue.compareAndSet(due, next)) return true;
+        }
+    }
+
+    // lane only: apply a pending reset requested by a control thread
+    void applySequenceReset() {
+        int requested = resetRequests.get();
+        if (requested != resetsApplied) {
+            resetsApplied = requested;
+            window.reset(0);
+        }
+    }
+}
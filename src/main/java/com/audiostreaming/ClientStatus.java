@@ -0,0 +1,11 @@
+package com.audiostreaming;
+
+/**
+ * Enumerates possible client states used by the server.
+ */
+enum ClientStatus {
+    ACTIVE,
+    MUTED,
+    LEFT,
+    DISCONNECTED
+}
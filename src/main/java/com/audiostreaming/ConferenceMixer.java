@@ -0,0 +1,202 @@
+package com.audiostreaming;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Server-side mix-minus mixer (MCU mode).
+ * <p>
+ * Instead of forwarding every talker's frames to every listener, lanes hand each in-order frame
+ * to the sender's {@link Input}. Every 20 ms {@link #tick(RoutingTable[])} takes at most one frame
+ * per talker in each room, sums them, and sends each listener a single frame containing everyone
+ * but themselves. A listener therefore receives one stream regardless of how many people talk.
+ * </p>
+ * <p>
+ * Talkers' frames are decoded with the codec named in each packet and resampled to the mix's
+ * 8 kHz, so talkers keep whatever profile they registered with; each listener's mix is encoded
+ * with the codec negotiated for that listener. Mixed frames use the v1 header with
+ * {@link #MIX_SOURCE_ID} as client id and a per-listener sequence number, so clients play them
+ * like any other single sender. Ticks run on one thread; the mixer itself is not thread-safe.
+ * </p>
+ */
+final class ConferenceMixer {
+    /** Client id written in the header of mixed frames; real client ids start at 1. */
+    static final int MIX_SOURCE_ID = 0;
+    /** Audio profile of every mixed stream, and of talkers that register while MCU mode is on. */
+    static final AudioProfile PROFILE = AudioProfile.DEFAULT;
+    /** Mix period in milliseconds, one client audio frame. */
+    static final long TICK_MS = PROFILE.frameMs();
+    /** Samples per mixed frame: 20 ms of 8 kHz mono. */
+    static final int FRAME_SAMPLES = PROFILE.samplesPerFrame();
+    static final int FRAME_BYTES = FRAME_SAMPLES * 2;
+    // frames a talker may have queued before the oldest are dropped, bounding added latency
+    private static final int MAX_QUEUED_FRAMES = 2;
+
+    private final UdpTransport transport;
+    private final ServerMetrics metrics;
+    private final PacketTracer tracer;
+    private final int[] acc = new int[FRAME_SAMPLES];
+    private final short[] mixed = new short[FRAME_SAMPLES];
+    private final ByteBuffer out = ByteBuffer.allocate(PacketHeader.V2_SIZE + FRAME_BYTES + PacketExtensions.ENTRY_HEADER_SIZE + 1);
+    private short[][] contributions = new short[16][];
+
+    private int timestamp; // media timestamp of the current period, in samples
+
+    private final LongAdder framesSent = new LongAdder();
+
+    /**
+     * @param transport transport the mixed frames are sent on
+     * @param metrics the server's counters; mixed frames count as sent datagrams, talker frames
+     *        dropped to catch up as mix input drops
+     * @param tracer the server's tracer, for failed sends
+     */
+    ConferenceMixer(UdpTransport transport, ServerMetrics metrics, PacketTracer tracer) {
+        this.transport = transport;
+        this.metrics = metrics;
+        this.tracer = tracer;
+    }
+
+    /**
+     * Mixes one period for every room.
+     *
+     * @param rooms the current per-room routing tables
+     */
+    void tick(RoutingTable[] rooms) {
+        timestamp += FRAME_SAMPLES;
+        for (RoutingTable room : rooms) {
+            mixRoom(room);
+        }
+    }
+
+    private void mixRoom(RoutingTable room) {
+        int n = room.size();
+        if (contributions.length < n) {
+            contributions = new short[Integer.highestOneBit(n) << 1][];
+        }
+        Arrays.fill(acc, 0);
+        int talkers = 0;
+        for (int i = 0; i < n; i++) {
+            Input in = room.member(i).mixInput;
+            int trimmed = in.trim(MAX_QUEUED_FRAMES);
+            if (trimmed > 0) metrics.mixInputDrops.add(trimmed);
+            short[] frame = in.peek();
+            contributions[i] = frame;
+            if (frame != null) {
+                PcmMixer.add(acc, frame, FRAME_SAMPLES);
+                talkers++;
+            }
+        }
+        if (talkers > 0) {
+            for (int i = 0; i < n; i++) {
+                // a lone talker would only hear silence
+                if (talkers == 1 && contributions[i] != null) continue;
+                ClientState listener = room.member(i);
+                AudioCodec codec = listener.codec;
+                PcmMixer.mixMinus(acc, contributions[i], FRAME_SAMPLES, mixed);
+                int version = listener.headerVersion;
+                out.clear();
+                if (version == PacketHeader.VERSION_2) {
+                    PacketHeader.putV2(out, 0, codec.id(), MIX_SOURCE_ID, listener.mixSequence++, timestamp);
+                } else {
+                    PacketHeader.putV1(out, MIX_SOURCE_ID, listener.mixSequence++);
+                }
+                int encoded = codec.encode(mixed, FRAME_SAMPLES, out);
+                PacketHeader.putPayloadLength(out, version, encoded);
+                // version 2 names the codec in the header
+                if (codec != AudioCodecs.PCM && version != PacketHeader.VERSION_2) PacketExtensions.putCodec(out, codec.id());
+                out.flip();
+                try {
+                    transport.send(out, room.target(i));
+                    framesSent.increment();
+                    metrics.sent(out.remaining());
+                } catch (IOException e) {
+                    metrics.sendErrors.increment();
+                    tracer.trace(PacketTracer.Event.SEND_FAILED, MIX_SOURCE_ID, listener.mixSequence - 1, 0, room.target(i), e);
+                }
+            }
+        }
+        for (int i = 0; i < n; i++) {
+            if (contributions[i] != null) {
+                room.member(i).mixInput.consume();
+                contributions[i] = null;
+            }
+        }
+    }
+
+    /** @return number of mixed frames sent to listeners */
+    long getSentFrameCount() {
+        return framesSent.sum();
+    }
+
+    /**
+     * Single-producer/single-consumer queue of one talker's decoded audio: the talker's lane
+     * offers frames, the mixer thread takes {@link #FRAME_SAMPLES} at a time. Frames are decoded
+     * and resampled to the mix's 8 kHz, whatever the talker's profile, into a preallocated ring of
+     * samples, so talkers with 10 or 40 ms frames mix like everyone else and nothing is allocated
+     * per frame.
+     */
+    static final class Input {
+        private static final int CAPACITY = 2048; // samples, a power of two: about 250 ms
+        private final short[] ring = new short[CAPACITY];
+        private final short[] decoded = new short[AudioProfile.MAX_SAMPLES_PER_FRAME]; // lane only
+        private final short[] resampled = new short[AudioProfile.MAX_SAMPLES_PER_FRAME]; // lane only
+        private final short[] frame = new short[FRAME_SAMPLES]; // mixer only
+        private volatile long head; // next sample to mix, written by the mixer
+        private volatile long tail; // next sample to fill, written by the lane
+        private volatile int talkerFrame = FRAME_SAMPLES; // samples of the talker's last frame at 8 kHz
+
+        /**
+         * Decodes a frame's payload and queues its samples at 8 kHz (lane only).
+         *
+         * @param codec codec of the payload
+         * @param buf frame buffer
+         * @param offset absolute index of the payload
+         * @param length payload length in bytes
+         * @param sampleRate sample rate of the payload, one of {@link AudioProfile#SAMPLE_RATES}
+         * @return false if the queue was full and the frame was dropped
+         */
+        boolean offer(AudioCodec codec, ByteBuffer buf, int offset, int length, int sampleRate) {
+            int n = codec.decode(buf, offset, length, decoded);
+            n = PcmMixer.resample(decoded, n, sampleRate, resampled, PROFILE.sampleRate());
+            long t = tail;
+            if (t + n - head > CAPACITY) return false;
+            int i = (int) (t & (CAPACITY - 1));
+            int first = Math.min(n, CAPACITY - i);
+            System.arraycopy(resampled, 0, ring, i, first);
+            System.arraycopy(resampled, first, ring, 0, n - first);
+            talkerFrame = n;
+            tail = t + n;
+            return true;
+        }
+
+        // mixer only: the oldest FRAME_SAMPLES queued samples, or null if fewer are queued (a
+        // partial frame waits for the rest); they stay queued until consume()
+        short[] peek() {
+            long h = head;
+            if (tail - h < FRAME_SAMPLES) return null;
+            int i = (int) (h & (CAPACITY - 1));
+            int first = Math.min(FRAME_SAMPLES, CAPACITY - i);
+            System.arraycopy(ring, i, frame, 0, first);
+            System.arraycopy(ring, 0, frame, first, FRAME_SAMPLES - first);
+            return frame;
+        }
+
+        // mixer only
+        void consume() {
+            head = head + FRAME_SAMPLES;
+        }
+
+        // mixer only: drop the oldest mix frames so at most max of the talker's frames, and never
+        // less than max mix frames, remain queued; returns the number of mix frames dropped
+        int trim(int max) {
+            long h = head;
+            long excess = (tail - h) - (long) max * Math.max(FRAME_SAMPLES, talkerFrame);
+            if (excess <= 0) return 0;
+            int frames = (int) ((excess + FRAME_SAMPLES - 1) / FRAME_SAMPLES);
+            head = h + (long) frames * FRAME_SAMPLES;
+            return frames;
+        }
+    }
+}
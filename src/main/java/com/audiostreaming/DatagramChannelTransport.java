@@ -0,0 +1,126 @@
+package com.audiostreaming;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * {@link UdpTransport} over several blocking NIO {@link DatagramChannel}s bound to the same
+ * port with {@code SO_REUSEPORT}, one receiver per channel.
+ * <p>
+ * The kernel spreads incoming datagrams across the channels by source address, so each sender
+ * is consistently read by the same receiver thread and ingest scales with the number of cores.
+ * Frames are received into direct buffers to avoid the JDK's intermediate copy. On platforms
+ * without {@code SO_REUSEPORT} a single channel is used.
+ * </p>
+ */
+final class DatagramChannelTransport implements UdpTransport {
+    private static final Logger logger = Logger.getLogger(DatagramChannelTransport.class.getName());
+
+    private final DatagramChannel[] channels;
+    private final int localPort;
+    private volatile boolean closed;
+
+    /**
+     * Opens and binds the channels.
+     *
+     * @param port UDP port to bind, or 0 for an ephemeral port
+     * @param receivers requested number of channels/receivers (at least 1)
+     * @throws IOException if a channel cannot be opened or bound
+     */
+    DatagramChannelTransport(int port, int receivers) throws IOException {
+        DatagramChannel first = open();
+        boolean reusePort = first.supportedOptions().contains(StandardSocketOptions.SO_REUSEPORT);
+        int count = Math.max(1, receivers);
+        if (count > 1 && !reusePort) {
+            logger.warning("[UDP] - SO_REUSEPORT not supported on this platform, using a single receive channel");
+            count = 1;
+        }
+        if (count > 1) first.setOption(StandardSocketOptions.SO_REUSEPORT, true);
+        first.bind(new InetSocketAddress(port));
+        this.localPort = ((InetSocketAddress) first.getLocalAddress()).getPort();
+
+        this.channels = new DatagramChannel[count];
+        channels[0] = first;
+        try {
+            for (int i = 1; i < count; i++) {
+                DatagramChannel ch = open();
+                ch.setOption(StandardSocketOptions.SO_REUSEPORT, true);
+                ch.bind(new InetSocketAddress(localPort));
+                channels[i] = ch;
+            }
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    private static DatagramChannel open() throws IOException {
+        DatagramChannel ch = DatagramChannel.open();
+        ch.configureBlocking(true);
+        return ch;
+    }
+
+    @Override
+    public int getLocalPort() {
+        return localPort;
+    }
+
+    @Override
+    public int getReceiverCount() {
+        return channels.length;
+    }
+
+    @Override
+    public boolean usesDirectBuffers() {
+        return true;
+    }
+
+    @Override
+    public boolean receive(int receiver, Frame frame) throws IOException {
+        ByteBuffer buf = frame.buf;
+        buf.clear();
+        SocketAddress src = channels[receiver].receive(buf);
+        if (src == null) return false;
+        InetSocketAddress isa = (InetSocketAddress) src;
+        frame.length = buf.position();
+        frame.srcAddr = isa.getAddress();
+        frame.srcPort = isa.getPort();
+        return true;
+    }
+
+    @Override
+    public void send(ByteBuffer data, InetSocketAddress target) throws IOException {
+        // spread senders over the channels so workers do not all contend on one write lock
+        DatagramChannel ch = channels[(int) (Thread.currentThread().getId() % channels.length)];
+        int position = data.position();
+        try {
+            ch.send(data, target);
+        } finally {
+            data.position(position);
+        }
+    }
+
+    @Override
+    public boolean isClosed() {
+        return closed;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        for (DatagramChannel ch : channels) {
+            if (ch == null) continue;
+            try {
+                ch.close();
+            } catch (IOException e) {
+                logger.log(Level.FINE, "[UDP] - Failed to close channel", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.audiostreaming;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+
+/**
+ * {@link UdpTransport} over a single blocking {@link DatagramSocket} with one receiver.
+ */
+final class DatagramSocketTransport implements UdpTransport {
+    private final DatagramSocket socket;
+    // re-pointed at each frame's buffer; only used by the single receiver thread
+    private final DatagramPacket receivePacket = new DatagramPacket(new byte[0], 0);
+    // per sending thread so concurrent workers never share a packet
+    private final ThreadLocal<DatagramPacket> sendPacket = ThreadLocal.withInitial(() -> new DatagramPacket(new byte[0], 0));
+
+    DatagramSocketTransport(DatagramSocket socket) {
+        this.socket = socket;
+    }
+
+    @Override
+    public int getLocalPort() {
+        return socket.getLocalPort();
+    }
+
+    @Override
+    public int getReceiverCount() {
+        return 1;
+    }
+
+    @Override
+    public boolean usesDirectBuffers() {
+        return false;
+    }
+
+    @Override
+    public boolean receive(int receiver, Frame frame) throws IOException {
+        receivePacket.setData(frame.data, 0, frame.data.length);
+        socket.receive(receivePacket);
+        frame.length = receivePacket.getLength();
+        frame.srcAddr = receivePacket.getAddress();
+        frame.srcPort = receivePacket.getPort();
+        return true;
+    }
+
+    @Override
+    public void send(ByteBuffer data, InetSocketAddress target) throws IOException {
+        DatagramPacket packet = sendPacket.get();
+        packet.setData(data.array(), data.arrayOffset() + data.position(), data.remaining());
+        packet.setSocketAddress(target);
+        socket.send(packet);
+    }
+
+    @Override
+    public boolean isClosed() {
+        return socket.isClosed();
+    }
+
+    @Override
+    public void close() {
+        socket.close();
+    }
+}
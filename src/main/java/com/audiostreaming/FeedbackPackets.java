@@ -0,0 +1,177 @@
+package com.audiostreaming;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Feedback packets about the audio a client receives, exchanged between client and server.
+ * <p>
+ * Feedback shares the audio UDP port. Its first byte is a packet type with the top two bits set,
+ * which never starts an audio packet (see {@link PacketHeader}). The rest of the header
+ * names the reporting client and the sender the feedback is about (big-endian):
+ * </p>
+ * <pre>
+ * | type (1 byte) | reporter client id (4 bytes) | sender client id (4 bytes) | body ...
+ * </pre>
+ * <p>
+ * A {@link #TYPE_NACK} body is a list of entries like RFC 4585's generic NACK, each naming a
+ * lost sequence number and a bitmask of the 16 following it that were lost too:
+ * </p>
+ * <pre>
+ * | first lost sequence number (4 bytes) | bitmask (2 bytes, bit i = first + 1 + i) | ...
+ * </pre>
+ * <p>
+ * Reports work like RTCP's (RFC 3550 section 6.4). Every {@value #REPORT_INTERVAL_MS} ms the
+ * server sends each client a {@link #TYPE_SENDER_REPORT} (reporter 0, sender the addressed
+ * client) and each client answers with a {@link #TYPE_RECEIVER_REPORT} naming itself in both
+ * fields. Times are microseconds of the sending side's {@link System#nanoTime()}, truncated to
+ * 32 bits; only differences on one clock are used, so the clocks need not agree.
+ * </p>
+ * <pre>
+ * sender report:   | server time (4) | round trip the server measured to the client, us, 0 if unknown (4) |
+ * receiver report: | server time of the last sender report, 0 if none (4) | delay since it, us (4) |
+ *                  | report block ... |
+ * report block:    | sender id (4) | fraction lost (1, /256) | cumulative lost (3, signed) |
+ *                  | highest sequence number (4) | interarrival jitter, us (4) |
+ * </pre>
+ * <p>
+ * The server takes the round trip from a receiver report as its arrival time minus the echoed
+ * server time minus the delay, and returns it in the next sender report.
+ * </p>
+ */
+final class FeedbackPackets {
+    /** Size of the feedback header. */
+    static final int HEADER_SIZE = 9;
+    /** Request to retransmit lost frames of a sender. */
+    static final int TYPE_NACK = 0xC1;
+    /** Size of one NACK entry. */
+    static final int NACK_ENTRY_SIZE = 6;
+    /** Sequence numbers one NACK entry can name. */
+    static final int NACK_ENTRY_SPAN = 17;
+    /** Reception quality report from a client. */
+    static final int TYPE_RECEIVER_REPORT = 0xC2;
+    /** Timing report from the server. */
+    static final int TYPE_SENDER_REPORT = 0xC3;
+    /** Interval between reports. */
+    static final int REPORT_INTERVAL_MS = 1000;
+    /** Size of a sender report's body. */
+    static final int SENDER_REPORT_SIZE = 8;
+    /** Size of a receiver report's body before its report blocks. */
+    static final int RECEIVER_REPORT_SIZE = 8;
+    /** Size of one receiver report block. */
+    static final int REPORT_BLOCK_SIZE = 16;
+
+    private FeedbackPackets() {
+    }
+
+    /**
+     * @param buf buffer holding a datagram
+     * @param length length of the datagram
+     * @return whether the datagram is feedback rather than audio
+     */
+    static boolean isFeedback(ByteBuffer buf, int length) {
+        return length > 0 && (buf.get(0) & 0xC0) == 0xC0;
+    }
+
+    /**
+     * Writes a feedback header at the start of the buffer and positions it for the body.
+     *
+     * @param dst destination buffer
+     * @param type packet type
+     * @param reporterId client id of the reporting client
+     * @param senderId client id of the sender the feedback is about
+     */
+    static void putHeader(ByteBuffer dst, int type, int reporterId, int senderId) {
+        dst.clear();
+        dst.put((byte) type).putInt(reporterId).putInt(senderId);
+    }
+
+    /**
+     * @param nanos a {@link System#nanoTime()} value
+     * @return the time in the 32-bit microsecond form used by reports
+     */
+    static int micros(long nanos) {
+        return (int) (nanos / 1000);
+    }
+
+    /**
+     * Appends a sender report body at the buffer's position.
+     *
+     * @param dst destination buffer
+     * @param serverMicros current server time, see {@link #micros}
+     * @param roundTripMicros round trip measured to the addressed client, 0 if unknown
+     */
+    static void putSenderReport(ByteBuffer dst, int serverMicros, int roundTripMicros) {
+        dst.putInt(serverMicros).putInt(roundTripMicros);
+    }
+
+    /**
+     * Appends the start of a receiver report body at the buffer's position; report blocks follow.
+     *
+     * @param dst destination buffer
+     * @param lastSenderReport server time carried by the last sender report, 0 if none
+     * @param delayMicros time since that sender report arrived
+     */
+    static void putReceiverReport(ByteBuffer dst, int lastSenderReport, int delayMicros) {
+        dst.putInt(lastSenderReport).putInt(delayMicros);
+    }
+
+    /**
+     * Appends a receiver report block at the buffer's position.
+     *
+     * @param dst destination buffer
+     * @param senderId sender the block is about
+     * @param fractionLost frames lost since the previous report, in 1/256, 0..255
+     * @param cumulativeLost frames lost since the sender was first heard, clamped to 24 bits
+     * @param highestSeq highest sequence number received
+     * @param jitterMicros interarrival jitter estimate
+     */
+    static void putReportBlock(ByteBuffer dst, int senderId, int fractionLost, int cumulativeLost, int highestSeq, int jitterMicros) {
+        int lost = Math.max(-0x800000, Math.min(0x7FFFFF, cumulativeLost));
+        dst.putInt(senderId).putInt((fractionLost << 24) | (lost & 0xFFFFFF)).putInt(highestSeq).putInt(jitterMicros);
+    }
+
+    /**
+     * Appends a NACK entry at the buffer's position.
+     *
+     * @param dst destination buffer
+     * @param firstLost first lost sequence number
+     * @param bitmask further lost sequence numbers, bit i standing for {@code firstLost + 1 + i}
+     */
+    static void putNack(ByteBuffer dst, int firstLost, int bitmask) {
+        dst.putInt(firstLost).putShort((short) bitmask);
+    }
+
+    /**
+     * Lists the sequence numbers a NACK body names, in order and each once. At most
+     * {@code dst.length} entries are read and at most {@code dst.length} sequence numbers
+     * returned, so a request cannot ask for more than the caller is willing to resend.
+     *
+     * @param buf buffer holding the NACK
+     * @param offset index of the first entry
+     * @param end index after the body; a trailing partial entry is ignored
+     * @param dst receives the sequence numbers
+     * @return the number of sequence numbers written to {@code dst}
+     */
+    static int nackedSequences(ByteBuffer buf, int offset, int end, int[] dst) {
+        int n = 0;
+        int entries = 0;
+        for (int p = offset; p + NACK_ENTRY_SIZE <= end && entries < dst.length && n < dst.length; p += NACK_ENTRY_SIZE, entries++) {
+            int first = buf.getInt(p);
+            int mask = buf.getShort(p + 4) & 0xFFFF;
+            n = addOnce(dst, n, first);
+            for (int bit = 0; mask >>> bit != 0 && n < dst.length; bit++) {
+                if ((mask & (1 << bit)) != 0) n = addOnce(dst, n, first + 1 + bit);
+            }
+        }
+        return n;
+    }
+
+    // requests are short, so a linear scan beats any set
+    private static int addOnce(int[] dst, int n, int seq) {
+        for (int i = 0; i < n; i++) {
+            if (dst[i] == seq) return n;
+        }
+        dst[n] = seq;
+        return n + 1;
+    }
+}
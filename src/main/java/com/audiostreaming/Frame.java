@@ -0,0 +1,140 @@
+package com.audiostreaming;
+
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+
+/**
+ * A pooled UDP datagram together with its source endpoint and parsed header fields.
+ * <p>
+ * The audio payload is never copied out of the frame: {@link #audioOffset} and
+ * {@link #audioLength} describe where it lives inside {@link #buf}. Heap frames also expose the
+ * backing array as {@link #data}; direct frames (NIO transport) leave it {@code null}.
+ * </p>
+ */
+final class Frame {
+    private final FramePool pool;
+    final int list; // the pool's free list this frame returns to
+    private final PacketHeader header = new PacketHeader();
+    final ByteBuffer buf;
+    final byte[] data;
+
+    int length;
+    InetAddress srcAddr;
+    int srcPort;
+    long receivedNanos; // System.nanoTime() when the datagram was received
+
+    int feedbackType; // a FeedbackPackets type, 0 for audio
+    int reporterId; // feedback only: the reporting client; clientId is the sender it is about
+    int version; // PacketHeader version of an audio frame
+    int flags;
+    int timestamp; // media timestamp, 0 for version 1 frames
+    int clientId;
+    int sequenceNumber;
+    int audioOffset;
+    int audioLength;
+    int extensionsEnd; // end of the extensions following the payload
+    int audioLevel; // -dBov from the audio level extension, -1 if the sender did not include one
+    int codecId; // payload codec from the header or the codec extension, 0 (PCM) if absent
+    int sampleRate; // payload sample rate from the sample rate extension, 8000 if absent
+
+    Frame(FramePool pool, int list, int size, boolean direct) {
+        this.pool = pool;
+        this.list = list;
+        this.buf = direct ? ByteBuffer.allocateDirect(size) : ByteBuffer.allocate(size);
+        this.data = direct ? null : buf.array();
+    }
+
+    void reset() {
+        buf.clear();
+        length = 0;
+        srcAddr = null;
+        srcPort = 0;
+        receivedNanos = 0;
+        feedbackType = 0;
+        reporterId = 0;
+        version = 0;
+        flags = 0;
+        timestamp = 0;
+        clientId = 0;
+        sequenceNumber = 0;
+        audioOffset = 0;
+        audioLength = 0;
+        extensionsEnd = 0;
+        audioLevel = -1;
+        codecId = 0;
+        sampleRate = 8000;
+    }
+
+    /**
+     * Parses the header in place, either version of {@link PacketHeader}, plus the audio level,
+     * codec and sample rate from the {@link PacketExtensions} following the payload, if present.
+     * A {@link FeedbackPackets} datagram only has its feedback header parsed;
+     * its body starts at {@link #audioOffset}.
+     *
+     * @throws IllegalArgumentException if the frame is malformed
+     */
+    void parseHeader() {
+        if (FeedbackPackets.isFeedback(buf, length)) {
+            if (length < FeedbackPackets.HEADER_SIZE) {
+                throw new IllegalArgumentException("Packet too short for feedback header");
+            }
+            feedbackType = buf.get(0) & 0xFF;
+            reporterId = buf.getInt(1);
+            clientId = buf.getInt(5);
+            audioOffset = FeedbackPackets.HEADER_SIZE;
+            return;
+        }
+        header.parse(buf, length);
+        version = header.version;
+        flags = header.flags;
+        timestamp = header.timestamp;
+        clientId = header.clientId;
+        sequenceNumber = header.sequenceNumber;
+        codecId = header.codecId;
+        audioOffset = header.payloadOffset;
+        audioLength = header.payloadLength;
+        extensionsEnd = header.extensionsEnd;
+        parseExtensions(header.extensionsOffset, extensionsEnd);
+    }
+
+    // single pass over the extensions after the payload; a malformed entry ends the scan
+    private void parseExtensions(int from, int end) {
+        int p = from;
+        while (p + PacketExtensions.ENTRY_HEADER_SIZE <= end) {
+            int type = buf.get(p) & 0xFF;
+            int len = buf.getShort(p + 1) & 0xFFFF;
+            int value = p + PacketExtensions.ENTRY_HEADER_SIZE;
+            if (value + len > end) return;
+            if (len > 0) {
+                switch (type) {
+                    case PacketExtensions.TYPE_AUDIO_LEVEL -> audioLevel = Math.min(buf.get(value) & 0x7F, PacketExtensions.LEVEL_SILENCE);
+                    case PacketExtensions.TYPE_CODEC -> codecId = buf.get(value) & 0xFF;
+                    case PacketExtensions.TYPE_SAMPLE_RATE -> sampleRate = (buf.get(value) & 0xFF) * 1000;
+                    default -> { } // unknown extensions are skipped
+                }
+            }
+            p = value + len;
+        }
+    }
+
+    /** @return the parsed audio header, valid until the frame is parsed again or released */
+    PacketHeader header() {
+        return header;
+    }
+
+    /**
+     * Returns the frame's buffer positioned over the received datagram, ready to be sent
+     * unchanged to any number of recipients.
+     *
+     * @return {@link #buf} with position 0 and limit {@link #length}
+     */
+    ByteBuffer wire() {
+        buf.limit(length).position(0);
+        return buf;
+    }
+
+    /** Returns this frame to its pool; the caller must not touch it afterwards. */
+    void release() {
+        pool.release(this);
+    }
+}
@@ -0,0 +1,109 @@
+package com.audiostreaming;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Fixed slab of reusable UDP frame buffers for the server data plane.
+ * <p>
+ * The receive loop acquires a {@link Frame}, receives a datagram straight into its buffer and
+ * hands it to a lane of the {@link ShardedExecutor}. Whoever finishes with the frame (after
+ * forwarding, or when it is dropped or evicted from a reorder buffer) calls
+ * {@link Frame#release()} to return it to the slab.
+ * </p>
+ * <p>
+ * The slab is split into free lists, one per receive thread plus one shared by every other
+ * caller, each a lock-free {@link MpscQueue}: a frame goes back to the list it was taken from,
+ * so lanes release from any thread while each receive thread is the only consumer of its own
+ * list, and receive threads never contend with each other. In steady state no buffers are
+ * allocated; if a list runs dry under a burst a fresh frame is created, kept by that list, and
+ * counted in {@link #getAllocationCount()}, so sustained misses are visible.
+ * </p>
+ */
+final class FramePool {
+    private final MpscQueue<Frame>[] lists;
+    private final int shared; // index of the list for callers that are not receive threads
+    private final Object sharedLock = new Object();
+    private final int frameSize;
+    private final boolean direct;
+
+    private final AtomicLong allocations = new AtomicLong();
+
+    /**
+     * Creates a pool without receive threads, whose frames are all taken with {@link #acquire()}.
+     *
+     * @param capacity number of frames kept in the slab
+     * @param frameSize size in bytes of each frame buffer
+     * @param direct whether frame buffers are allocated off-heap
+     */
+    FramePool(int capacity, int frameSize, boolean direct) {
+        this(0, capacity, frameSize, direct);
+    }
+
+    /**
+     * Creates a pool and pre-allocates its slab, split evenly over the free lists.
+     *
+     * @param receivers number of receive threads, each taking frames with {@link #acquire(int)}
+     * @param capacity number of frames kept in the slab
+     * @param frameSize size in bytes of each frame buffer
+     * @param direct whether frame buffers are allocated off-heap
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    FramePool(int receivers, int capacity, int frameSize, boolean direct) {
+        this.lists = new MpscQueue[receivers + 1];
+        this.shared = receivers;
+        this.frameSize = frameSize;
+        this.direct = direct;
+        for (int l = 0; l < lists.length; l++) {
+            // room for the whole slab, so frames allocated during a burst are kept
+            lists[l] = new MpscQueue<>(capacity);
+            for (int i = 0; i < capacity / lists.length; i++) {
+                lists[l].offer(new Frame(this, l, frameSize, direct));
+            }
+        }
+    }
+
+    /**
+     * Takes a frame from a receive thread's free list, allocating a new one only if it is empty.
+     *
+     * @param receiver index of the calling receive thread; no other thread may use it
+     * @return a reset frame owned by the caller until released
+     */
+    Frame acquire(int receiver) {
+        Frame frame = lists[receiver].poll();
+        if (frame == null) {
+            allocations.incrementAndGet();
+            frame = new Frame(this, receiver, frameSize, direct);
+        }
+        frame.reset();
+        return frame;
+    }
+
+    /**
+     * Takes a frame from the shared free list, for callers that are not receive threads.
+     *
+     * @return a reset frame owned by the caller until released
+     */
+    Frame acquire() {
+        // the list has a single consumer, so its callers take turns
+        synchronized (sharedLock) {
+            return acquire(shared);
+        }
+    }
+
+    void release(Frame frame) {
+        // frames allocated during a burst are simply dropped if their list is already full
+        lists[frame.list].offer(frame);
+    }
+
+    /** @return number of frames allocated after construction because a free list was empty */
+    long getAllocationCount() {
+        return allocations.get();
+    }
+
+    /** @return number of frames currently sitting in the slab; one that keeps falling means frames leak */
+    int getFreeCount() {
+        int free = 0;
+        for (MpscQueue<Frame> list : lists) free += list.size();
+        return free;
+    }
+}
@@ -0,0 +1,315 @@
+package com.audiostreaming;
+
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+
+/**
+ * Stand-alone micro-benchmark for the server's fan-out path and the client's send path.
+ * <p>
+ * Compares, for growing room sizes, the cost of forwarding one received frame to every other
+ * member when the frame is re-serialized per recipient (the former behaviour) versus what
+ * {@link Server} does now: each frame is copied into a pooled frame and run through
+ * {@link Server#processPacket}, which parses it, passes it through the talker's reorder window,
+ * stores it in the retransmit cache, walks the room's routing table and records the metrics and
+ * ingest-to-send latency. Sends go to a discarding {@link UdpTransport}, so only CPU and
+ * allocation on the calling thread are measured.
+ * </p>
+ * <p>
+ * It then measures what {@link AudioHandler}'s sender does per captured frame (voice activity
+ * detection and building the packet with an {@link AudioPacketizer}) for each codec, and what
+ * its receive and playback threads do per received frame (jitter buffer, loss concealment and
+ * mixing). Last, it measures what {@link PacketTracer} costs the server per forwarded frame with
+ * tracing off and with every packet traced. Allocation is reported per frame; that these paths
+ * allocate nothing is checked by {@code HotPathAllocationTest}, which runs the same workloads.
+ * Run with:
+ * <pre>
+ * java -cp target/classes com.audiostreaming.HotPathBenchmark
+ * </pre>
+ * </p>
+ */
+final class HotPathBenchmark {
+    private static final int[] ROOM_SIZES = {2, 5, 10, 25, 50, 100};
+    private static final int WARMUP_FRAMES = 20_000;
+    private static final int MEASURED_FRAMES = 50_000;
+    private static final int PAYLOAD_SIZE = 320;
+    /** Client id of the talker whose frames the server forwards. */
+    static final int TALKER_ID = 7;
+    private static final InetAddress TALKER_ADDRESS = InetAddress.getLoopbackAddress();
+    private static final int TALKER_PORT = 19_999;
+
+    private HotPathBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        DiscardTransport transport = new DiscardTransport();
+        Server server = new Server(transport);
+
+        byte[] received = talkerPacket();
+        var packet = server.deserializeAudioPacket(received);
+        int[] seq = {0};
+
+        System.out.printf("%-6s %-22s %12s %12s %14s%n", "room", "strategy", "ns/frame", "ns/send", "bytes/frame");
+        for (int room : ROOM_SIZES) {
+            InetSocketAddress[] targets = new InetSocketAddress[room - 1];
+            for (int i = 0; i < targets.length; i++) {
+                targets[i] = new InetSocketAddress(InetAddress.getLoopbackAddress(), 20_000 + i);
+            }
+            joinRoom(server, room);
+            seq[0] = 0;
+            for (int pass = 0; pass < 6; pass++) {
+                boolean measure = pass == 1;
+                run(threads, "serialize-per-recipient", room, measure, () -> {
+                    for (InetSocketAddress target : targets) {
+                        byte[] serialized = server.serializeAudioPacket(packet);
+                        transport.send(ByteBuffer.wrap(serialized), target);
+                    }
+                });
+                run(threads, "server-forward", room, measure, () -> forwardFrames(server, received, seq, 1));
+            }
+        }
+        System.out.println("sent bytes (sink): " + transport.bytes);
+        server.stop();
+
+        benchmarkSendPath(threads);
+        benchmarkPlaybackPath(threads);
+        benchmarkTracePath(threads);
+    }
+
+    // Per-frame work of the client's sender thread, minus the socket send
+    private static void benchmarkSendPath(com.sun.management.ThreadMXBean threads) {
+        AudioProfile profile = AudioProfile.DEFAULT;
+        byte[] captured = new byte[profile.pcmBytesPerFrame()];
+        for (int i = 0; i < captured.length / 2; i++) {
+            int s = (int) (8000 * Math.sin(2 * Math.PI * 440 * i / profile.sampleRate()));
+            captured[2 * i] = (byte) s;
+            captured[2 * i + 1] = (byte) (s >> 8);
+        }
+        AudioPacketizer packets = new AudioPacketizer(profile, InetAddress.getLoopbackAddress(), 5555);
+        packets.setHeaderVersion(PacketHeader.VERSION_2);
+        VoiceActivityDetector vad = new VoiceActivityDetector(profile);
+        long tid = Thread.currentThread().getId();
+
+        AudioCodec[] codecs = {AudioCodecs.PCM, AudioCodecs.PCMU, AudioCodecs.PCMA, AudioCodecs.ADPCM};
+        long sink = 0;
+        boolean[] fecModes = {false, true};
+        // warm up with every codec first so JIT compilation settles before anything is measured
+        for (int pass = 0; pass < 2; pass++) {
+            for (boolean fec : fecModes) {
+                packets.setFecEnabled(fec);
+                for (AudioCodec codec : codecs) {
+                    sink += buildPackets(vad, packets, captured, codec, WARMUP_FRAMES);
+                }
+            }
+        }
+
+        System.out.printf("%n%-6s %-22s %12s %14s%n", "", "send path", "ns/frame", "bytes/frame");
+        for (boolean fec : fecModes) {
+            packets.setFecEnabled(fec);
+            for (AudioCodec codec : codecs) {
+                String name = fec ? codec.name() + " + FEC" : codec.name();
+                // read the allocation counter innermost so the CPU time calls are not counted
+                long cpuBefore = threads.getCurrentThreadCpuTime();
+                long bytesBefore = threads.getThreadAllocatedBytes(tid);
+                sink += buildPackets(vad, packets, captured, codec, MEASURED_FRAMES);
+                long bytes = threads.getThreadAllocatedBytes(tid) - bytesBefore;
+                long cpu = threads.getCurrentThreadCpuTime() - cpuBefore;
+                System.out.printf("%-6s %-22s %12.1f %14.1f%n", "", name, (double) cpu / MEASURED_FRAMES, (double) bytes / MEASURED_FRAMES);
+            }
+        }
+        System.out.println("built bytes (sink): " + sink);
+    }
+
+    // Per-frame work of the client's receive and playback threads for a growing number of senders
+    private static void benchmarkPlaybackPath(com.sun.management.ThreadMXBean threads) {
+        AudioProfile profile = AudioProfile.DEFAULT;
+        int frameSamples = profile.samplesPerFrame();
+        short[] received = new short[frameSamples];
+        for (int i = 0; i < frameSamples; i++) {
+            received[i] = (short) (8000 * Math.sin(2 * Math.PI * 440 * i / profile.sampleRate()));
+        }
+        long tid = Thread.currentThread().getId();
+
+        System.out.printf("%n%-6s %-22s %12s %14s%n", "peers", "playback path", "ns/frame", "bytes/frame");
+        for (int peers : new int[] {1, 5, 25}) {
+            ReceiveStream[] streams = new ReceiveStream[peers];
+            PlaybackMixer mixer = new PlaybackMixer(profile);
+            for (int p = 0; p < peers; p++) {
+                streams[p] = new ReceiveStream(p + 1, new JitterBuffer(profile.frameMs(), frameSamples), new LossConcealer(profile.sampleRate()));
+                streams[p].source = mixer.newSource();
+            }
+            short[] frame = new short[frameSamples];
+            byte[] mixed = new byte[profile.pcmBytesPerFrame()];
+            long[] clock = {0};
+            playFrames(streams, mixer, received, frame, mixed, clock, WARMUP_FRAMES, profile.frameMs());
+            long cpuBefore = threads.getCurrentThreadCpuTime();
+            long bytesBefore = threads.getThreadAllocatedBytes(tid);
+            long sink = playFrames(streams, mixer, received, frame, mixed, clock, MEASURED_FRAMES, profile.frameMs());
+            long bytes = threads.getThreadAllocatedBytes(tid) - bytesBefore;
+            long cpu = threads.getCurrentThreadCpuTime() - cpuBefore;
+            long frames = (long) MEASURED_FRAMES * peers;
+            System.out.printf("%-6d %-22s %12.1f %14.1f%n", peers, "offer-poll-mix", (double) cpu / frames, (double) bytes / frames);
+            if (sink == 0) System.out.println("(nothing played)");
+        }
+    }
+
+    // The events the server traces for a frame forwarded without reordering; the drain thread
+    // formats them into a discarding stream, so only the recording threads' cost is measured
+    private static void benchmarkTracePath(com.sun.management.ThreadMXBean threads) throws InterruptedException {
+        java.io.PrintStream discard = new java.io.PrintStream(java.io.OutputStream.nullOutputStream());
+        PacketTracer tracer = new PacketTracer(java.util.logging.Level.OFF, "benchmark-trace", discard, discard);
+        InetAddress source = InetAddress.getLoopbackAddress();
+        long tid = Thread.currentThread().getId();
+
+        java.util.logging.Level[] levels = {java.util.logging.Level.OFF, java.util.logging.Level.FINEST};
+        // the gate is a single branch, so let JIT compilation settle at both levels before measuring
+        for (int pass = 0; pass < 10; pass++) {
+            for (java.util.logging.Level level : levels) {
+                tracer.setLevel(level);
+                traceFrames(tracer, source, WARMUP_FRAMES);
+            }
+        }
+
+        System.out.printf("%n%-6s %-22s %12s %14s%n", "", "trace path", "ns/frame", "bytes/frame");
+        for (java.util.logging.Level level : levels) {
+            tracer.setLevel(level);
+            long cpuBefore = threads.getCurrentThreadCpuTime();
+            long bytesBefore = threads.getThreadAllocatedBytes(tid);
+            traceFrames(tracer, source, MEASURED_FRAMES);
+            long bytes = threads.getThreadAllocatedBytes(tid) - bytesBefore;
+            long cpu = threads.getCurrentThreadCpuTime() - cpuBefore;
+            String name = "trace " + level.getName();
+            System.out.printf("%-6s %-22s %12.1f %14.1f%n", "", name, (double) cpu / MEASURED_FRAMES, (double) bytes / MEASURED_FRAMES);
+        }
+        System.out.println("trace events dropped: " + tracer.getDroppedCount());
+        tracer.shutdown(2_000);
+    }
+
+    // A version 2 PCM packet from TALKER_ID with the audio level extension, as clients send them
+    static byte[] talkerPacket() {
+        AudioProfile profile = AudioProfile.DEFAULT;
+        byte[] captured = new byte[profile.pcmBytesPerFrame()];
+        for (int i = 0; i < captured.length / 2; i++) {
+            int s = (int) (8000 * Math.sin(2 * Math.PI * 440 * i / profile.sampleRate()));
+            captured[2 * i] = (byte) s;
+            captured[2 * i + 1] = (byte) (s >> 8);
+        }
+        AudioPacketizer packets = new AudioPacketizer(profile, TALKER_ADDRESS, TALKER_PORT);
+        packets.setHeaderVersion(PacketHeader.VERSION_2);
+        java.net.DatagramPacket d = packets.audio(TALKER_ID, 0, 0, captured, captured.length, AudioCodecs.PCM);
+        return java.util.Arrays.copyOf(d.getData(), d.getLength());
+    }
+
+    // Replaces the server's clients with one room of the given size, TALKER_ID among them, every
+    // member registered with version 2 headers
+    static void joinRoom(Server server, int room) {
+        server.clientStates.clear();
+        for (int i = 0; i < room; i++) {
+            ClientState cs = new ClientState();
+            cs.clientId = i == 0 ? TALKER_ID : 1000 + i;
+            cs.clientAddress = TALKER_ADDRESS;
+            cs.clientPort = i == 0 ? TALKER_PORT : 20_000 + i;
+            cs.headerVersion = PacketHeader.VERSION_2;
+            cs.lastHeard = System.currentTimeMillis();
+            server.clientStates.put(cs.clientId, cs);
+        }
+        server.rebuildRoutes();
+    }
+
+    // The talker's next frames, each received in order and forwarded to the room by the server;
+    // seq[0] is the next sequence number and is advanced
+    static void forwardFrames(Server server, byte[] packet, int[] seq, int frames) throws Exception {
+        for (int i = 0; i < frames; i++) {
+            int s = seq[0]++;
+            // sequence number of a version 2 header, big-endian at index 8
+            packet[8] = (byte) (s >> 24);
+            packet[9] = (byte) (s >> 16);
+            packet[10] = (byte) (s >> 8);
+            packet[11] = (byte) s;
+            server.processPacket(packet, TALKER_ADDRESS, TALKER_PORT);
+        }
+    }
+
+    static void traceFrames(PacketTracer tracer, InetAddress source, int frames) {
+        for (int i = 0; i < frames; i++) {
+            tracer.trace(PacketTracer.Event.RECEIVED, TALKER_ID, i, PAYLOAD_SIZE, source, null);
+            tracer.trace(PacketTracer.Event.FORWARDED, TALKER_ID, i, 1, null, null);
+        }
+    }
+
+    // every peer sends one frame per tick, one in 50 is lost and concealed
+    static long playFrames(ReceiveStream[] streams, PlaybackMixer mixer, short[] received, short[] frame, byte[] mixed,
+                           long[] clock, int ticks, int frameMs) {
+        long played = 0;
+        for (int t = 0; t < ticks; t++) {
+            long now = clock[0];
+            int seq = (int) (now / (frameMs * 1_000_000L));
+            for (ReceiveStream stream : streams) {
+                if (seq % 50 != 49) stream.buffer.offer(seq, received, received.length, now);
+            }
+            now += frameMs * 1_000_000L;
+            for (ReceiveStream stream : streams) {
+                int samples;
+                while ((samples = stream.buffer.poll(now, frame)) != JitterBuffer.NOTHING_DUE) {
+                    if (samples == JitterBuffer.LOST) {
+                        samples = stream.concealer.conceal(frame);
+                        if (samples == 0) continue;
+                    } else {
+                        stream.concealer.onFrame(frame, samples);
+                    }
+                    mixer.add(stream.source, frame, samples);
+                }
+            }
+            played += mixer.mix(mixed);
+            clock[0] = now;
+        }
+        return played;
+    }
+
+    static long buildPackets(VoiceActivityDetector vad, AudioPacketizer packets, byte[] captured, AudioCodec codec, int frames) {
+        long built = 0;
+        for (int i = 0; i < frames; i++) {
+            if (vad.isSpeech(captured, 0, captured.length)) {
+                built += packets.audio(7, i, i * captured.length / 2, captured, captured.length, codec).getLength();
+            } else {
+                built += packets.comfortNoise(7, i, i * captured.length / 2, vad.getLastLevel(), vad.getNoiseLevel()).getLength();
+            }
+        }
+        return built;
+    }
+
+    private static void run(com.sun.management.ThreadMXBean threads, String name, int room, boolean measure, FanOut fanOut) throws Exception {
+        int frames = measure ? MEASURED_FRAMES : WARMUP_FRAMES;
+        long tid = Thread.currentThread().getId();
+        long bytesBefore = threads.getThreadAllocatedBytes(tid);
+        long cpuBefore = threads.getCurrentThreadCpuTime();
+        for (int i = 0; i < frames; i++) {
+            fanOut.forward();
+        }
+        long cpu = threads.getCurrentThreadCpuTime() - cpuBefore;
+        long bytes = threads.getThreadAllocatedBytes(tid) - bytesBefore;
+        if (measure) {
+            double perFrame = (double) cpu / frames;
+            System.out.printf("%-6d %-22s %12.1f %12.1f %14.1f%n", room, name, perFrame, perFrame / (room - 1), (double) bytes / frames);
+        }
+    }
+
+    private interface FanOut {
+        void forward() throws Exception;
+    }
+
+    // Counts bytes instead of sending them
+    static final class DiscardTransport implements UdpTransport {
+        long bytes;
+
+        @Override public int getLocalPort() { return 0; }
+        @Override public int getReceiverCount() { return 1; }
+        @Override public boolean usesDirectBuffers() { return false; }
+        @Override public boolean receive(int receiver, Frame frame) { return false; }
+        @Override public void send(ByteBuffer data, InetSocketAddress target) { bytes += data.remaining(); }
+        @Override public boolean isClosed() { return false; }
+        @Override public void close() { }
+    }
+}
@@ -0,0 +1,264 @@
+package com.audiostreaming;
+
+import java.util.Arrays;
+
+/**
+ * Adaptive playout buffer for one sender's decoded frames.
+ * <p>
+ * Each talkspurt starts playing a target delay after its first frame arrived; from then on one
+ * frame is due every frame period. The target delay follows the sender's inter-arrival jitter,
+ * estimated as in RFC 3550 (section 6.4.1) from arrival times and sequence numbers, so the buffer
+ * stays as short as the network allows: about one frame on a LAN, more on Wi-Fi or the internet.
+ * </p>
+ * <ul>
+ *   <li>Frames arriving after their slot was played are late and dropped.</li>
+ *   <li>A missing frame at its playout time is reported as {@link #LOST} so the caller can
+ *       conceal it. When the buffer runs dry it keeps its timing for {@value #HOLDOVER_MS} ms,
+ *       reporting those slots as lost too, then goes back to waiting; the next talkspurt starts
+ *       with the current target delay.</li>
+ *   <li>Frames can be {@linkplain #repair repaired} from redundant copies (forward error
+ *       correction) in later packets, as long as they have not been played. Once a sender's
+ *       packets carry redundancy the target grows by one frame so the copy arrives in time.</li>
+ *   <li>When frames wait much longer than the target, one is discarded to catch up; when they
+ *       wait much less, playout is delayed by one concealed frame so the buffer can grow in the
+ *       middle of a talkspurt.</li>
+ * </ul>
+ * <p>
+ * Frames are copied into a ring of preallocated sample slots indexed by sequence number, so
+ * offering and polling allocate nothing. Times are {@link System#nanoTime()} values passed in by
+ * the caller. Sequence numbers use 32-bit
+ * serial-number arithmetic like {@link ReorderWindow}. The receive thread offers and the playback
+ * thread polls, so all methods are synchronized.
+ * </p>
+ */
+final class JitterBuffer {
+    /** Upper bound of the target delay. */
+    static final int MAX_DELAY_MS = 300;
+    /** How long playout continues through an empty buffer before it counts as an underrun. */
+    static final int HOLDOVER_MS = LossConcealer.FADE_OUT_MS;
+    /** Returned by {@link #poll(long, short[])} when no frame is due. */
+    static final int NOTHING_DUE = 0;
+    /** Returned by {@link #poll(long, short[])} for a frame that is due but missing. */
+    static final int LOST = -1;
+    // the target covers this many times the jitter estimate on top of one frame
+    private static final int JITTER_MULTIPLIER = 4;
+    // frames this far behind the last played one mean the sender restarted its sequence
+    private static final int RESYNC_FRAMES = 50;
+    private static final int CAPACITY = 64; // power of two, > MAX_DELAY_MS / shortest frame
+
+    private final long frameNanos;
+    private final int holdoverFrames;
+    private final short[][] slots;
+    private final int[] lengths = new int[CAPACITY]; // samples in each slot, 0 if empty
+    private final long[] arrivals = new long[CAPACITY];
+    private int count;
+    private int nextSeq; // next sequence number to play
+    private int lastPlayed;
+    private boolean hasPlayed;
+    private boolean playing;
+    private int heldOver; // consecutive slots played through an empty buffer
+    private long playoutNanos; // when nextSeq is due
+
+    private int lastArrivalSeq;
+    private long lastTransit;
+    private boolean hasTransit;
+    private double jitterNanos;
+    private double delayNanos; // smoothed time played frames spent in the buffer
+
+    private boolean redundancy; // the sender's packets carry redundant copies
+
+    /**
+     * @param frameMs duration of one frame in milliseconds
+     * @param maxFrameSamples largest frame the buffer has to hold, in samples
+     */
+    JitterBuffer(int frameMs, int maxFrameSamples) {
+        this.frameNanos = frameMs * 1_000_000L;
+        this.slots = new short[CAPACITY][maxFrameSamples];
+        this.holdoverFrames = (HOLDOVER_MS + frameMs - 1) / frameMs;
+    }
+
+    /**
+     * Copies a frame into the buffer.
+     *
+     * @param seq the frame's sequence number
+     * @param samples decoded audio of the frame
+     * @param length number of samples, truncated to the slot size
+     * @param nowNanos arrival time
+     * @return false if the frame was late or a duplicate and was dropped
+     */
+    synchronized boolean offer(int seq, short[] samples, int length, long nowNanos) {
+        if (length <= 0) return false;
+        updateJitter(seq, nowNanos);
+        if (hasPlayed) {
+            int d = seq - lastPlayed;
+            if (d <= -RESYNC_FRAMES) {
+                clear(); // sender restarted its sequence numbers
+            } else if (d <= 0) {
+                return false; // late
+            }
+        }
+        return store(seq, samples, length, nowNanos);
+    }
+
+    /**
+     * Fills in a frame from a redundant copy carried by a later packet. Unlike
+     * {@link #offer}, a copy of a frame that was already received or played is ignored without
+     * counting as late, and the copy does not start a talkspurt or affect the jitter estimate.
+     *
+     * @param seq sequence number of the frame the copy stands for
+     * @param samples decoded audio of the copy
+     * @param length number of samples, truncated to the slot size
+     * @param nowNanos arrival time of the carrying packet
+     * @return true if a missing frame was filled in
+     */
+    synchronized boolean repair(int seq, short[] samples, int length, long nowNanos) {
+        redundancy = true;
+        if (length <= 0 || (count == 0 && !playing)) return false;
+        if (hasPlayed && seq - lastPlayed <= 0) return false;
+        return store(seq, samples, length, nowNanos);
+    }
+
+    /**
+     * Tells whether a missing frame is worth requesting again: the buffer is playing or about
+     * to, the frame is neither buffered nor played, and it is due at least {@code leadNanos} from
+     * now.
+     *
+     * @param seq sequence number of the missing frame
+     * @param nowNanos current time
+     * @param leadNanos how long a retransmission would take to arrive
+     * @return true if a retransmission could still be played
+     */
+    synchronized boolean isRecoverable(int seq, long nowNanos, long leadNanos) {
+        if (count == 0 && !playing) return false;
+        int d = seq - nextSeq;
+        if (d < 0 || d >= CAPACITY || lengths[seq & (CAPACITY - 1)] != 0) return false;
+        return playoutNanos + d * frameNanos - nowNanos > leadNanos;
+    }
+
+    private boolean store(int seq, short[] samples, int length, long nowNanos) {
+        if (count == 0 && !playing) {
+            nextSeq = seq;
+            playoutNanos = nowNanos + getTargetDelayNanos();
+        } else {
+            int d = seq - nextSeq;
+            if (d < 0 && !playing) {
+                // an earlier frame of a talkspurt that has not started playing yet
+                if (newestBufferedDistance() - d >= CAPACITY) return false;
+                nextSeq = seq;
+            } else if (d >= CAPACITY) {
+                // far ahead of anything playable: start over from this frame
+                clear();
+                nextSeq = seq;
+                playoutNanos = nowNanos + getTargetDelayNanos();
+            }
+        }
+        int i = seq & (CAPACITY - 1);
+        if (lengths[i] != 0) return false; // duplicate
+        int n = Math.min(length, slots[i].length);
+        System.arraycopy(samples, 0, slots[i], 0, n);
+        lengths[i] = n;
+        arrivals[i] = nowNanos;
+        count++;
+        return true;
+    }
+
+    /**
+     * Takes the frame due for playout, if any. Call at least once per frame period.
+     *
+     * @param nowNanos current time
+     * @param dst receives the frame's samples; at least as large as the slots
+     * @return the number of samples copied to {@code dst}, {@link #LOST} if the frame due is
+     *         missing, or {@link #NOTHING_DUE}
+     */
+    synchronized int poll(long nowNanos, short[] dst) {
+        if (!playing) {
+            if (count == 0 || nowNanos < playoutNanos) return NOTHING_DUE;
+            playing = true;
+        }
+        while (nowNanos >= playoutNanos) {
+            if (count == 0 && heldOver >= holdoverFrames) {
+                playing = false;
+                heldOver = 0; // underrun
+                return NOTHING_DUE;
+            }
+            if (count > 0 && delayNanos + frameNanos < getTargetDelayNanos()) {
+                // buffering too little for the current jitter: insert a concealed frame
+                delayNanos += frameNanos;
+                playoutNanos += frameNanos;
+                return LOST;
+            }
+            int i = nextSeq & (CAPACITY - 1);
+            int length = lengths[i];
+            lengths[i] = 0;
+            lastPlayed = nextSeq;
+            hasPlayed = true;
+            nextSeq++;
+            playoutNanos += frameNanos;
+            if (length == 0) {
+                if (count == 0) heldOver++;
+                return LOST;
+            }
+            count--;
+            heldOver = 0;
+            delayNanos += ((nowNanos - arrivals[i]) - delayNanos) / 16;
+            if (delayNanos > getTargetDelayNanos() + 2 * frameNanos && lengths[nextSeq & (CAPACITY - 1)] != 0) {
+                // buffered far more than needed: drop this frame and play the next in its slot
+                delayNanos -= frameNanos;
+                playoutNanos -= frameNanos;
+                continue;
+            }
+            System.arraycopy(slots[i], 0, dst, 0, length);
+            return length;
+        }
+        return NOTHING_DUE;
+    }
+
+    // RFC 3550 interarrival jitter, using sequence numbers as the sender's clock
+    private void updateJitter(int seq, long nowNanos) {
+        long transit = nowNanos - seq * frameNanos;
+        int gap = seq - lastArrivalSeq;
+        if (hasTransit && gap > -CAPACITY && gap < CAPACITY) {
+            long d = Math.abs(transit - lastTransit);
+            // a jump this large is a pause in sending (silence suppression), not network jitter
+            if (d < MAX_DELAY_MS * 1_000_000L) jitterNanos += (d - jitterNanos) / 16;
+        }
+        lastTransit = transit;
+        lastArrivalSeq = seq;
+        hasTransit = true;
+    }
+
+    private int newestBufferedDistance() {
+        for (int d = CAPACITY - 1; d > 0; d--) {
+            if (lengths[(nextSeq + d) & (CAPACITY - 1)] != 0) return d;
+        }
+        return 0;
+    }
+
+    private void clear() {
+        Arrays.fill(lengths, 0);
+        count = 0;
+        playing = false;
+        heldOver = 0;
+        hasPlayed = false;
+    }
+
+    private long getTargetDelayNanos() {
+        long target = (redundancy ? 2 : 1) * frameNanos + (long) (JITTER_MULTIPLIER * jitterNanos);
+        return Math.min(target, MAX_DELAY_MS * 1_000_000L);
+    }
+
+    /** @return duration of one frame in milliseconds */
+    int getFrameMs() {
+        return (int) (frameNanos / 1_000_000L);
+    }
+
+    /** @return smoothed time recently played frames spent in the buffer, in milliseconds */
+    synchronized int getDelayMs() {
+        return (int) (delayNanos / 1_000_000L);
+    }
+
+    /** @return the interarrival jitter estimate in milliseconds */
+    synchronized double getJitterMs() {
+        return jitterNanos / 1_000_000.0;
+    }
+}
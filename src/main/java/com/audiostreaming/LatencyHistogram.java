@@ -0,0 +1,100 @@
+package com.audiostreaming;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram of latencies, cheap enough to record every forwarded frame.
+ * <p>
+ * Values are counted in microseconds in log-linear buckets: each power of two is split into
+ * four, so a percentile read back is within 25% of the true value. Counts are {@link LongAdder}s,
+ * which stripe under contention instead of making recording threads retry on a shared word, so
+ * lanes never wait for each other here. Readers sum the buckets without stopping writers; a
+ * snapshot taken while frames are recorded is approximate but never blocks the data plane.
+ * </p>
+ */
+final class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 2;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_EXPONENT = 26; // about 67 s; longer values land in the last bucket
+    private static final int BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+    private final LongAdder[] counts = new LongAdder[BUCKETS];
+    private final LongAdder total = new LongAdder();
+    private final LongAdder sumMicros = new LongAdder();
+    private final LongAccumulator maxMicros = new LongAccumulator(Math::max, 0);
+
+    LatencyHistogram() {
+        for (int i = 0; i < BUCKETS; i++) counts[i] = new LongAdder();
+    }
+
+    /**
+     * Records one latency.
+     *
+     * @param nanos the latency in nanoseconds; negative values count as 0
+     */
+    void record(long nanos) {
+        long micros = Math.max(0, nanos / 1000);
+        counts[bucket(micros)].increment();
+        total.increment();
+        sumMicros.add(micros);
+        maxMicros.accumulate(micros);
+    }
+
+    // values below SUB_BUCKETS get a bucket each; above, every power of two gets SUB_BUCKETS
+    private static int bucket(long micros) {
+        if (micros < SUB_BUCKETS) return (int) micros;
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        if (exponent > MAX_EXPONENT) return BUCKETS - 1;
+        int sub = (int) (micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    // exclusive upper bound of a bucket in microseconds
+    private static long upperBound(int bucket) {
+        if (bucket < SUB_BUCKETS) return bucket + 1;
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        int sub = bucket % SUB_BUCKETS;
+        return (long) (SUB_BUCKETS + sub + 1) << (exponent - SUB_BUCKET_BITS);
+    }
+
+    /** @return number of latencies recorded */
+    long getCount() {
+        return total.sum();
+    }
+
+    /** @return mean latency in milliseconds, 0 if nothing was recorded */
+    double getMeanMs() {
+        long n = total.sum();
+        return n == 0 ? 0 : sumMicros.sum() / 1000.0 / n;
+    }
+
+    /** @return largest latency recorded, in milliseconds */
+    double getMaxMs() {
+        return maxMicros.get() / 1000.0;
+    }
+
+    /**
+     * Returns the latency below which the given share of recorded latencies fall.
+     *
+     * @param percentile percentile between 0 and 100
+     * @return upper bound of the bucket holding the percentile, in milliseconds, capped at the
+     *         largest recorded latency; 0 if nothing was recorded
+     */
+    double getPercentileMs(double percentile) {
+        long[] snapshot = new long[BUCKETS];
+        long n = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts[i].sum();
+            n += snapshot[i];
+        }
+        if (n == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(n * percentile / 100.0));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) return Math.min(upperBound(i), maxMicros.get()) / 1000.0;
+        }
+        return getMaxMs();
+    }
+}
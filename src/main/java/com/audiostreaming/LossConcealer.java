@@ -0,0 +1,143 @@
+package com.audiostreaming;
+
+/**
+ * Packet loss concealment for one sender's playback stream, in the spirit of ITU-T G.711
+ * Appendix I.
+ * <p>
+ * The concealer remembers the most recent audio played. When a frame is missing it estimates
+ * the pitch period of that history by autocorrelation and repeats the last period, which keeps
+ * voiced speech continuous where repeating a whole frame would click. The repetition plays at
+ * full level for the first {@value #FULL_LEVEL_MS} ms of a loss, then fades out linearly to
+ * silence at {@value #FADE_OUT_MS} ms. The first real frame after a loss is cross-faded with the
+ * continued concealment signal so audio resumes without a step.
+ * </p>
+ * <p>
+ * Frames are 16-bit samples at the playback rate. Nothing is allocated per frame. Used only by
+ * the playback thread.
+ * </p>
+ */
+final class LossConcealer {
+    /** Duration of a loss concealed at full level. */
+    static final int FULL_LEVEL_MS = 10;
+    /** Duration of a loss after which concealment is silent. */
+    static final int FADE_OUT_MS = 60;
+    // pitch search range: 66..400 Hz covers most voices
+    private static final double MIN_PITCH_MS = 2.5;
+    private static final double MAX_PITCH_MS = 15;
+    // the cross-fade into a real frame lasts this long at most
+    private static final double MERGE_MS = 2.5;
+
+    private final short[] history; // most recent samples played, oldest first
+    private final short[] period;  // pitch period being repeated
+    private final int minPitch;
+    private final int maxPitch;
+    private final int fullLevelSamples;
+    private final int fadeSamples;
+    private final int mergeSamples;
+
+    private int filled; // valid samples at the end of history
+    private int lastFrameSamples;
+    private int periodLength;
+    private int phase;
+    private int concealed; // samples concealed in the current loss, 0 if none
+
+    /**
+     * @param sampleRate playback sample rate in Hz
+     */
+    LossConcealer(int sampleRate) {
+        this.minPitch = (int) (sampleRate * MIN_PITCH_MS / 1000);
+        this.maxPitch = (int) (sampleRate * MAX_PITCH_MS / 1000);
+        this.history = new short[maxPitch * 3];
+        this.period = new short[maxPitch];
+        this.fullLevelSamples = sampleRate * FULL_LEVEL_MS / 1000;
+        this.fadeSamples = sampleRate * (FADE_OUT_MS - FULL_LEVEL_MS) / 1000;
+        this.mergeSamples = (int) (sampleRate * MERGE_MS / 1000);
+    }
+
+    /**
+     * Records a received frame about to be played. After a loss, the start of the frame is
+     * cross-faded in place with the concealment signal.
+     *
+     * @param pcm the frame's samples
+     * @param n number of samples
+     */
+    void onFrame(short[] pcm, int n) {
+        if (concealed > 0) {
+            int merge = Math.min(mergeSamples, n);
+            for (int i = 0; i < merge; i++) {
+                int synth = nextConcealedSample();
+                pcm[i] = (short) ((synth * (merge - i) + pcm[i] * i) / merge);
+            }
+            concealed = 0;
+        }
+        append(pcm, n);
+        lastFrameSamples = n;
+    }
+
+    /**
+     * Produces one frame standing in for a missing one, as long as the last received frame.
+     *
+     * @param out receives the concealment samples
+     * @return number of samples written, 0 if nothing has been received yet
+     */
+    int conceal(short[] out) {
+        int n = Math.min(lastFrameSamples, out.length);
+        if (n == 0) return 0;
+        if (concealed == 0) startLoss();
+        for (int i = 0; i < n; i++) {
+            out[i] = (short) nextConcealedSample();
+        }
+        // what was played becomes history, so a loss right after recovery continues smoothly
+        append(out, n);
+        return n;
+    }
+
+    // pick the pitch period of the recent history and repeat its last occurrence
+    private void startLoss() {
+        int p = filled >= 2 * maxPitch ? estimatePitch() : Math.min(maxPitch, Math.max(1, filled));
+        System.arraycopy(history, history.length - p, period, 0, p);
+        periodLength = p;
+        phase = 0;
+    }
+
+    private int nextConcealedSample() {
+        int s = period[phase];
+        phase = phase + 1 == periodLength ? 0 : phase + 1;
+        int k = concealed++ - fullLevelSamples;
+        if (k <= 0) return s;
+        if (k >= fadeSamples) return 0;
+        return (int) ((long) s * (fadeSamples - k) / fadeSamples);
+    }
+
+    // lag with the highest normalized autocorrelation between the last maxPitch samples and the
+    // maxPitch samples one lag earlier
+    private int estimatePitch() {
+        int end = history.length;
+        int best = maxPitch;
+        double bestScore = 0;
+        for (int lag = minPitch; lag <= maxPitch; lag++) {
+            long corr = 0;
+            long energy = 0;
+            for (int i = end - maxPitch; i < end; i++) {
+                int a = history[i - lag];
+                corr += (long) history[i] * a;
+                energy += (long) a * a;
+            }
+            if (energy == 0) continue;
+            double score = corr / Math.sqrt((double) energy);
+            if (score > bestScore) {
+                bestScore = score;
+                best = lag;
+            }
+        }
+        return best;
+    }
+
+    private void append(short[] pcm, int n) {
+        int copied = Math.min(n, history.length);
+        int keep = history.length - copied;
+        System.arraycopy(history, history.length - keep, history, 0, keep);
+        System.arraycopy(pcm, n - copied, history, keep, copied);
+        filled = Math.min(history.length, filled + n);
+    }
+}
@@ -0,0 +1,86 @@
+package com.audiostreaming;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded lock-free multi-producer / single-consumer queue.
+ * <p>
+ * Array based (after Vyukov's bounded queue): each slot carries a sequence number that tells
+ * producers when it is free and the consumer when it is published, so neither side takes a lock
+ * and {@link #offer(Object)} / {@link #poll()} never allocate. Only one thread may call
+ * {@link #poll()}.
+ * </p>
+ *
+ * @param <E> element type
+ */
+final class MpscQueue<E> {
+    private final AtomicReferenceArray<E> slots;
+    private final AtomicLongArray sequences;
+    private final int mask;
+    private final AtomicLong tail = new AtomicLong();
+    private volatile long head; // written by the consumer only
+
+    /**
+     * @param capacity requested capacity, rounded up to a power of two
+     */
+    MpscQueue(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        this.slots = new AtomicReferenceArray<>(size);
+        this.sequences = new AtomicLongArray(size);
+        this.mask = size - 1;
+        for (int i = 0; i < size; i++) sequences.set(i, i);
+    }
+
+    /**
+     * Appends an element; safe to call from any thread.
+     *
+     * @param e the element, not null
+     * @return false if the queue is full
+     */
+    boolean offer(E e) {
+        long pos;
+        for (;;) {
+            pos = tail.get();
+            long dif = sequences.get((int) pos & mask) - pos;
+            if (dif == 0) {
+                if (tail.compareAndSet(pos, pos + 1)) break;
+            } else if (dif < 0) {
+                return false; // slot still holds an element from the previous lap
+            }
+            // otherwise another producer claimed this position; retry
+        }
+        int idx = (int) pos & mask;
+        slots.lazySet(idx, e);
+        sequences.set(idx, pos + 1); // publish to the consumer
+        return true;
+    }
+
+    /**
+     * Removes the oldest published element; consumer thread only.
+     *
+     * @return the element, or null if the queue is empty
+     */
+    E poll() {
+        long pos = head;
+        int idx = (int) pos & mask;
+        if (sequences.get(idx) != pos + 1) return null;
+        E e = slots.get(idx);
+        slots.lazySet(idx, null);
+        sequences.set(idx, pos + mask + 1); // hand the slot back to producers for the next lap
+        head = pos + 1;
+        return e;
+    }
+
+    /** @return approximate number of queued elements */
+    int size() {
+        long size = tail.get() - head;
+        return (int) Math.max(0, Math.min(size, mask + 1));
+    }
+
+    /** @return the queue capacity */
+    int capacity() {
+        return mask + 1;
+    }
+}
@@ -0,0 +1,165 @@
+package com.audiostreaming;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Optional extensions carried after the audio payload of a UDP audio packet.
+ * <p>
+ * The 10-byte header and payload are unchanged; any bytes following the payload are a sequence
+ * of type-length-value entries:
+ * </p>
+ * <pre>
+ * | type (1 byte) | length (2 bytes, big-endian) | value (length bytes) | ...
+ * </pre>
+ * <p>
+ * Receivers skip entries whose type they do not know, so new extensions can be added without
+ * breaking existing peers. The server forwards extensions unchanged together with the payload.
+ * </p>
+ */
+final class PacketExtensions {
+    /** Size of an entry's type and length fields. */
+    static final int ENTRY_HEADER_SIZE = 3;
+
+    /**
+     * Audio level of the frame, one byte: 0..127 in -dBov (0 is the loudest possible frame, 127
+     * digital silence), as in RFC 6464.
+     */
+    static final int TYPE_AUDIO_LEVEL = 0x01;
+    /** Value of {@link #TYPE_AUDIO_LEVEL} for a silent frame. */
+    static final int LEVEL_SILENCE = 127;
+    /**
+     * Comfort noise marker, one byte: background noise level in -dBov. Sent with an empty payload
+     * while the sender suppresses silent frames (DTX), so peers know the sender is still present
+     * and how loud its background is.
+     */
+    static final int TYPE_COMFORT_NOISE = 0x02;
+    /** Codec of the payload, one byte: an {@link AudioCodec#id()}. Absent means 16-bit PCM. */
+    static final int TYPE_CODEC = 0x03;
+    /** Sample rate of the payload, one byte: kHz (8, 16 or 24). Absent means 8 kHz. */
+    static final int TYPE_SAMPLE_RATE = 0x04;
+    /**
+     * Redundant copy of an earlier frame for forward error correction, as in RFC 2198: one byte
+     * sequence distance (1 for the previous frame), one byte {@link AudioCodec#id()}, then the
+     * encoded frame at the packet's sample rate. A receiver that lost the earlier packet decodes
+     * the copy in its place.
+     */
+    static final int TYPE_REDUNDANT = 0x05;
+    /** Bytes of a {@link #TYPE_REDUNDANT} value before the encoded frame. */
+    static final int REDUNDANT_HEADER_SIZE = 2;
+
+    private PacketExtensions() {
+    }
+
+    /**
+     * Finds an extension entry using absolute reads.
+     *
+     * @param buf buffer holding the packet
+     * @param from absolute index of the first entry (the end of the payload)
+     * @param end absolute index just past the last byte of the packet
+     * @param type extension type to look for
+     * @return absolute index of the entry's value, or -1 if absent or the entries are malformed
+     */
+    static int find(ByteBuffer buf, int from, int end, int type) {
+        int p = from;
+        while (p + ENTRY_HEADER_SIZE <= end) {
+            int t = buf.get(p) & 0xFF;
+            int len = buf.getShort(p + 1) & 0xFFFF;
+            int value = p + ENTRY_HEADER_SIZE;
+            if (value + len > end) return -1;
+            if (t == type) return value;
+            p = value + len;
+        }
+        return -1;
+    }
+
+    /**
+     * @param buf buffer holding the packet
+     * @param value absolute index of an entry's value, as returned by {@link #find}
+     * @return length of the entry's value in bytes
+     */
+    static int valueLength(ByteBuffer buf, int value) {
+        return buf.getShort(value - 2) & 0xFFFF;
+    }
+
+    /**
+     * Reads the codec extension of a packet.
+     *
+     * @param buf buffer holding the packet
+     * @param from absolute index just past the payload
+     * @param end absolute index just past the last byte of the packet
+     * @return the codec id, 0 (PCM) if the packet carries none
+     */
+    static int codecId(ByteBuffer buf, int from, int end) {
+        int p = find(buf, from, end, TYPE_CODEC);
+        return p < 0 || p >= end ? 0 : buf.get(p) & 0xFF;
+    }
+
+    /**
+     * Reads the sample rate extension of a packet.
+     *
+     * @param buf buffer holding the packet
+     * @param from absolute index just past the payload
+     * @param end absolute index just past the last byte of the packet
+     * @return the payload's sample rate in Hz, 8000 if the packet carries none
+     */
+    static int sampleRate(ByteBuffer buf, int from, int end) {
+        int p = find(buf, from, end, TYPE_SAMPLE_RATE);
+        return p < 0 || p >= end ? 8000 : (buf.get(p) & 0xFF) * 1000;
+    }
+
+    /**
+     * Appends a sample rate entry at the buffer's position.
+     *
+     * @param dst destination buffer
+     * @param sampleRate sample rate in Hz, a multiple of 1000
+     */
+    static void putSampleRate(ByteBuffer dst, int sampleRate) {
+        dst.put((byte) TYPE_SAMPLE_RATE).putShort((short) 1).put((byte) (sampleRate / 1000));
+    }
+
+    /**
+     * Appends a codec entry at the buffer's position.
+     *
+     * @param dst destination buffer
+     * @param codecId the payload's {@link AudioCodec#id()}
+     */
+    static void putCodec(ByteBuffer dst, int codecId) {
+        dst.put((byte) TYPE_CODEC).putShort((short) 1).put((byte) codecId);
+    }
+
+    /**
+     * Appends a redundant frame entry at the buffer's position.
+     *
+     * @param dst destination buffer
+     * @param distance how many sequence numbers before the packet's own the frame was sent
+     * @param codec codec to encode the frame with
+     * @param pcm the frame's samples
+     * @param samples number of samples
+     */
+    static void putRedundant(ByteBuffer dst, int distance, AudioCodec codec, short[] pcm, int samples) {
+        int start = dst.position();
+        dst.put((byte) TYPE_REDUNDANT).putShort((short) 0).put((byte) distance).put((byte) codec.id());
+        int encoded = codec.encode(pcm, samples, dst);
+        dst.putShort(start + 1, (short) (REDUNDANT_HEADER_SIZE + encoded));
+    }
+
+    /**
+     * Appends a comfort noise entry at the buffer's position.
+     *
+     * @param dst destination buffer
+     * @param noiseLevel background noise level in -dBov, clamped to 0..127
+     */
+    static void putComfortNoise(ByteBuffer dst, int noiseLevel) {
+        dst.put((byte) TYPE_COMFORT_NOISE).putShort((short) 1).put((byte) Math.max(0, Math.min(LEVEL_SILENCE, noiseLevel)));
+    }
+
+    /**
+     * Appends an audio level entry at the buffer's position.
+     *
+     * @param dst destination buffer
+     * @param level level in -dBov, clamped to 0..127
+     */
+    static void putAudioLevel(ByteBuffer dst, int level) {
+        dst.put((byte) TYPE_AUDIO_LEVEL).putShort((short) 1).put((byte) Math.max(0, Math.min(LEVEL_SILENCE, level)));
+    }
+}
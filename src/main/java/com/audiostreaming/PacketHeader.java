@@ -0,0 +1,169 @@
+package com.audiostreaming;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Header of a UDP audio packet, parsed in place from a {@link ByteBuffer} with absolute reads.
+ * <p>
+ * Two versions are in use while clients are upgraded. Version 1 is the original 10-byte header;
+ * the payload's {@link PacketExtensions} run to the end of the datagram:
+ * </p>
+ * <pre>
+ * | client id (4) | sequence number (4) | payload length (2) | payload | extensions |
+ * </pre>
+ * <p>
+ * Version 2 starts with a byte whose top two bits are {@code 10} and whose low six bits are the
+ * version, which never starts a version 1 packet because client ids are positive (feedback packets
+ * use {@code 11}, see {@link FeedbackPackets}). It adds flags, the codec id and a media timestamp,
+ * and delimits the extensions so padding or later fields can follow them:
+ * </p>
+ * <pre>
+ * | 0x82 | flags (1) | codec id (1) | reserved (1) | client id (4) | sequence number (4) |
+ * | timestamp (4) | payload length (2) | extensions length (2) | payload | extensions |
+ * </pre>
+ * <p>
+ * The timestamp counts samples at the payload's sample rate since the sender started capturing,
+ * like an RTP timestamp: it keeps advancing while silent frames are suppressed, so receivers can
+ * tell how much time passed between two packets. All fields are big-endian. Instances are
+ * reusable; nothing is copied or allocated by {@link #parse}.
+ * </p>
+ */
+final class PacketHeader {
+    /** Size of a version 1 header. */
+    static final int V1_SIZE = 10;
+    /** Size of a version 2 header. */
+    static final int V2_SIZE = 20;
+    /** Newest header version. */
+    static final int VERSION_2 = 2;
+    /** Value of the {@code HEADERS} register option: the versions a client accepts. */
+    static final String DEFAULT_OFFER = "2,1";
+    /** Flag of the first packet of a talkspurt; the gap before it is silence, not loss. */
+    static final int FLAG_MARKER = 0x01;
+    private static final int VERSION_MARK = 0x80;
+
+    int version;
+    int flags;
+    int codecId; // from the header in version 2; 0 (PCM) in version 1, which uses an extension
+    int clientId;
+    int sequenceNumber;
+    int timestamp; // 0 in version 1
+    int payloadOffset;
+    int payloadLength;
+    int extensionsOffset;
+    int extensionsEnd;
+
+    /**
+     * Parses the header of a datagram.
+     *
+     * @param buf buffer holding the datagram from index 0
+     * @param length length of the datagram
+     * @throws IllegalArgumentException if the datagram is not a well-formed audio packet
+     */
+    void parse(ByteBuffer buf, int length) {
+        int first = length > 0 ? buf.get(0) & 0xFF : 0;
+        if ((first & 0xC0) == VERSION_MARK) {
+            if ((first & 0x3F) != VERSION_2) throw new IllegalArgumentException("Unsupported header version " + (first & 0x3F));
+            if (length < V2_SIZE) throw new IllegalArgumentException("Packet too short for header");
+            version = VERSION_2;
+            flags = buf.get(1) & 0xFF;
+            codecId = buf.get(2) & 0xFF;
+            clientId = buf.getInt(4);
+            sequenceNumber = buf.getInt(8);
+            timestamp = buf.getInt(12);
+            payloadOffset = V2_SIZE;
+            payloadLength = buf.getShort(16) & 0xFFFF;
+            extensionsOffset = V2_SIZE + payloadLength;
+            extensionsEnd = extensionsOffset + (buf.getShort(18) & 0xFFFF);
+            if (extensionsEnd > length) throw new IllegalArgumentException("Audio data length exceeds packet size");
+            return;
+        }
+        if ((first & 0x80) != 0) throw new IllegalArgumentException("Not an audio packet");
+        if (length < V1_SIZE) throw new IllegalArgumentException("Packet too short for header");
+        version = 1;
+        flags = 0;
+        codecId = 0;
+        clientId = buf.getInt(0);
+        sequenceNumber = buf.getInt(4);
+        timestamp = 0;
+        payloadOffset = V1_SIZE;
+        payloadLength = buf.getShort(8) & 0xFFFF;
+        extensionsOffset = V1_SIZE + payloadLength;
+        extensionsEnd = length;
+        if (extensionsOffset > length) throw new IllegalArgumentException("Audio data length exceeds packet size");
+    }
+
+    /**
+     * Picks the header version a client sends and receives from the versions it accepts.
+     *
+     * @param offer comma-separated versions from the client's {@code HEADERS} register option,
+     *              or null for clients that predate version 2
+     * @return {@link #VERSION_2} if offered, otherwise 1
+     */
+    static int negotiate(String offer) {
+        if (offer != null) {
+            for (String v : offer.split(",")) {
+                if (v.trim().equals(String.valueOf(VERSION_2))) return VERSION_2;
+            }
+        }
+        return 1;
+    }
+
+    /**
+     * Writes a version 1 header at the buffer's position, with the payload length left to
+     * {@link #putPayloadLength}.
+     *
+     * @param dst destination buffer, positioned at the start of the datagram
+     * @param clientId sender's client id
+     * @param seq sequence number
+     */
+    static void putV1(ByteBuffer dst, int clientId, int seq) {
+        dst.putInt(clientId).putInt(seq).putShort((short) 0);
+    }
+
+    /**
+     * Writes a version 2 header at the buffer's position, with the payload and extension lengths
+     * left to {@link #putPayloadLength} and {@link #putExtensionsLength}.
+     *
+     * @param dst destination buffer, positioned at the start of the datagram
+     * @param flags header flags
+     * @param codecId {@link AudioCodec#id()} of the payload
+     * @param clientId sender's client id
+     * @param seq sequence number
+     * @param timestamp media timestamp in samples
+     */
+    static void putV2(ByteBuffer dst, int flags, int codecId, int clientId, int seq, int timestamp) {
+        dst.put((byte) (VERSION_MARK | VERSION_2)).put((byte) flags).put((byte) codecId).put((byte) 0)
+                .putInt(clientId).putInt(seq).putInt(timestamp).putShort((short) 0).putShort((short) 0);
+    }
+
+    /**
+     * @param version header version
+     * @return size of the header, where the payload starts
+     */
+    static int size(int version) {
+        return version == VERSION_2 ? V2_SIZE : V1_SIZE;
+    }
+
+    /**
+     * Fills in the payload length of a header written at index 0.
+     *
+     * @param dst the datagram
+     * @param version version of the header
+     * @param length payload length in bytes
+     */
+    static void putPayloadLength(ByteBuffer dst, int version, int length) {
+        dst.putShort(version == VERSION_2 ? 16 : 8, (short) length);
+    }
+
+    /**
+     * Fills in the extensions length of a version 2 header written at index 0; version 1 headers
+     * have no such field.
+     *
+     * @param dst the datagram
+     * @param version version of the header
+     * @param length extensions length in bytes
+     */
+    static void putExtensionsLength(ByteBuffer dst, int version, int length) {
+        if (version == VERSION_2) dst.putShort(18, (short) length);
+    }
+}
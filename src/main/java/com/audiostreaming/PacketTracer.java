@@ -0,0 +1,222 @@
+package com.audiostreaming;
+
+import java.io.PrintStream;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+
+/**
+ * Low-overhead tracing for the server data plane.
+ * <p>
+ * A call site records an {@link Event} with a few primitive and reference arguments; nothing is
+ * formatted or allocated on the calling thread. Events below the current level are rejected
+ * with one volatile read, so disabled tracing costs nothing measurable. Enabled events go to a
+ * bounded lock-free ring buffer with preallocated slots (the sequence protocol of
+ * {@link MpscQueue}, with the event fields in parallel arrays instead of element objects). When the
+ * ring is full, the event is dropped and counted; the data plane never waits for the console.
+ * </p>
+ * <p>
+ * A drain thread owned by the tracer empties the ring every {@value #DRAIN_INTERVAL_MS} ms.
+ * It formats the events and writes each batch with one call: {@link Level#WARNING} and above to
+ * the error stream (the server passes {@link System#err}), everything else to the output stream
+ * ({@link System#out}). Each line is prefixed with the seconds since the tracer started.
+ * </p>
+ */
+final class PacketTracer {
+    /** Number of events the ring holds before new ones are dropped. */
+    static final int CAPACITY = 8192;
+    /** How often the drain thread empties the ring. */
+    static final long DRAIN_INTERVAL_MS = 50;
+
+    /**
+     * Data plane events. Each is formatted on the drain thread with
+     * {@link String#format(Locale, String, Object...)}. The arguments are, in order: two ints
+     * ({@code %1$d}, {@code %2$d}), a long ({@code %3$d}) and two objects ({@code %4$s},
+     * {@code %5$s}). Most events pass the client id and sequence number as the ints.
+     */
+    enum Event {
+        RECEIVED(Level.FINEST, "[UDP] - Received packet clientId=%1$d seq=%2$d size=%3$d from %4$s"),
+        MALFORMED(Level.FINE, "[UDP] - Dropping malformed packet of %3$d bytes from %4$s -> %5$s"),
+        LANE_FULL(Level.FINE, "[UDP] - Lane full, dropping packet clientId=%1$d seq=%2$d"),
+        UNKNOWN_CLIENT(Level.FINE, "[PROCESS] - Dropping packet for unknown clientId=%1$d seq=%2$d from %4$s"),
+        INACTIVE(Level.FINEST, "[PROCESS] - Not forwarding packet seq=%2$d from clientId=%1$d: status=%4$s"),
+        ADDRESS_MISMATCH(Level.FINE, "[PROCESS] - Dropping packet from clientId=%1$d: src address %4$s doesn't match registered %5$s"),
+        PORT_CHANGED(Level.FINE, "[PROCESS] - Updating clientPort for clientId=%1$d from %2$d to %3$d"),
+        BUFFERED(Level.FINEST, "[PROCESS] - Buffering packet seq=%2$d for client=%1$d"),
+        LATE(Level.FINER, "[PROCESS] - Dropping late or duplicate packet seq=%2$d (expected %3$d) for client=%1$d"),
+        EVICTED(Level.FINE, "[PROCESS] - Evicted %3$d buffered packet(s) for client=%1$d"),
+        GAP_SKIPPED(Level.FINER, "[PROCESS] - Reorder deadline passed, skipped %3$d missing packet(s) for client=%1$d"),
+        MIX_DROPPED(Level.FINE, "[MIXER] - Not mixing packet seq=%2$d from client=%1$d: %4$s"),
+        FORWARDED(Level.FINEST, "[PROCESS] - Forwarded packet seq=%2$d from client=%1$d to %3$d listener(s)"),
+        SEND_FAILED(Level.WARNING, "[PROCESS] - Failed to send packet seq=%2$d from client=%1$d to %4$s -> %5$s"),
+        RETRANSMIT_FAILED(Level.WARNING, "[PROCESS] - Failed to retransmit packet seq=%2$d from client=%1$d to %4$s -> %5$s");
+
+        final int level;
+        final String format;
+
+        Event(Level level, String format) {
+            this.level = level.intValue();
+            this.format = format;
+        }
+    }
+
+    private static final Event[] EVENTS = Event.values();
+
+    private final int mask = CAPACITY - 1;
+    private final AtomicLongArray sequences = new AtomicLongArray(CAPACITY);
+    private final int[] events = new int[CAPACITY];
+    private final int[] ints1 = new int[CAPACITY];
+    private final int[] ints2 = new int[CAPACITY];
+    private final long[] longs = new long[CAPACITY];
+    private final Object[] objects1 = new Object[CAPACITY];
+    private final Object[] objects2 = new Object[CAPACITY];
+    private final long[] times = new long[CAPACITY];
+    private final AtomicLong tail = new AtomicLong();
+    private long head; // drain thread only
+    private final LongAdder dropped = new LongAdder();
+    private final long startNanos = System.nanoTime();
+    private volatile int threshold;
+    private volatile Level level;
+    private volatile boolean running = true;
+    private final PrintStream out;
+    private final PrintStream err;
+    private final Thread drainer;
+
+    /**
+     * Creates the tracer and starts its drain thread.
+     *
+     * @param level initial level; events below it are not recorded
+     * @param threadName name of the drain thread
+     * @param out stream for events below {@link Level#WARNING}
+     * @param err stream for warnings
+     */
+    PacketTracer(Level level, String threadName, PrintStream out, PrintStream err) {
+        this.out = out;
+        this.err = err;
+        setLevel(level);
+        for (int i = 0; i < CAPACITY; i++) sequences.set(i, i);
+        drainer = new Thread(this::drainLoop, threadName);
+        drainer.setDaemon(true);
+        drainer.start();
+    }
+
+    /**
+     * Sets the lowest level recorded from now on.
+     *
+     * @param level a {@link Level}, {@link Level#OFF} to record nothing
+     */
+    void setLevel(Level level) {
+        this.level = level;
+        this.threshold = level.intValue();
+    }
+
+    /** @return the lowest level recorded */
+    Level getLevel() {
+        return level;
+    }
+
+    /**
+     * @param event an event
+     * @return whether {@code event} would currently be recorded
+     */
+    boolean isEnabled(Event event) {
+        return event.level >= threshold;
+    }
+
+    /**
+     * Records an event if its level is enabled; safe to call from any thread and never blocks.
+     *
+     * @param event the event
+     * @param i1 first int argument, usually the client id
+     * @param i2 second int argument, usually the sequence number
+     * @param l long argument
+     * @param o1 first object argument, formatted on the drain thread; must be immutable
+     * @param o2 second object argument, formatted on the drain thread; must be immutable
+     */
+    void trace(Event event, int i1, int i2, long l, Object o1, Object o2) {
+        if (!isEnabled(event)) return;
+        long pos;
+        for (;;) {
+            pos = tail.get();
+            long dif = sequences.get((int) pos & mask) - pos;
+            if (dif == 0) {
+                if (tail.compareAndSet(pos, pos + 1)) break;
+            } else if (dif < 0) {
+                dropped.increment(); // the drain thread is behind
+                return;
+            }
+        }
+        int idx = (int) pos & mask;
+        events[idx] = event.ordinal();
+        ints1[idx] = i1;
+        ints2[idx] = i2;
+        longs[idx] = l;
+        objects1[idx] = o1;
+        objects2[idx] = o2;
+        times[idx] = System.nanoTime();
+        sequences.set(idx, pos + 1); // publish to the drain thread
+    }
+
+    /** @return events dropped because the ring was full */
+    long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    /**
+     * Stops the drain thread after it has written the events already recorded.
+     *
+     * @param timeoutMs maximum time to wait for the drain thread
+     * @throws InterruptedException if interrupted while waiting
+     */
+    void shutdown(long timeoutMs) throws InterruptedException {
+        running = false;
+        LockSupport.unpark(drainer);
+        drainer.join(timeoutMs);
+    }
+
+    private void drainLoop() {
+        StringBuilder batch = new StringBuilder();
+        while (running) {
+            if (drain(batch) == 0) LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(DRAIN_INTERVAL_MS));
+        }
+        drain(batch);
+    }
+
+    // write everything published so far; returns the number of events written
+    private int drain(StringBuilder batch) {
+        int n = 0;
+        batch.setLength(0);
+        for (;;) {
+            long pos = head;
+            int idx = (int) pos & mask;
+            if (sequences.get(idx) != pos + 1) break;
+            Event event = EVENTS[events[idx]];
+            String line = String.format(Locale.ROOT, "[%10.6f] ", (times[idx] - startNanos) / 1e9)
+                    + String.format(Locale.ROOT, event.format, ints1[idx], ints2[idx], longs[idx], objects1[idx], objects2[idx]);
+            objects1[idx] = null; // do not keep addresses or exceptions alive
+            objects2[idx] = null;
+            sequences.set(idx, pos + CAPACITY); // hand the slot back to producers for the next lap
+            head = pos + 1;
+            n++;
+            if (event.level >= Level.WARNING.intValue()) {
+                flush(batch);
+                err.println(line);
+            } else {
+                batch.append(line).append(System.lineSeparator());
+            }
+        }
+        flush(batch);
+        return n;
+    }
+
+    private void flush(StringBuilder batch) {
+        if (batch.length() == 0) return;
+        out.print(batch);
+        out.flush();
+        batch.setLength(0);
+    }
+}
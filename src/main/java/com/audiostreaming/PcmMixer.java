@@ -0,0 +1,110 @@
+package com.audiostreaming;
+
+/**
+ * Sample-level helpers for mixing 16-bit signed little-endian mono PCM, the format produced by
+ * {@link AudioHandler}.
+ * <p>
+ * Mixing is done in an {@code int} accumulator so that summing several talkers cannot overflow;
+ * results are saturated back to the 16-bit range. Payloads are converted to and from samples by
+ * an {@link AudioCodec}. None of the methods allocate.
+ * </p>
+ */
+final class PcmMixer {
+
+    private PcmMixer() {
+    }
+
+    /**
+     * Computes the level of a frame of little-endian 16-bit samples in -dBov, the unit of the
+     * {@link PacketExtensions#TYPE_AUDIO_LEVEL} extension: 0 for a full-scale signal, 127 for
+     * silence.
+     *
+     * @param pcm PCM bytes
+     * @param offset index of the first byte
+     * @param length number of bytes
+     * @return the RMS level in -dBov, 0..127
+     */
+    static int levelDbov(byte[] pcm, int offset, int length) {
+        int n = length >> 1;
+        if (n == 0) return PacketExtensions.LEVEL_SILENCE;
+        double sum = 0;
+        for (int i = 0; i < n; i++) {
+            int p = offset + (i << 1);
+            int s = (short) ((pcm[p] & 0xFF) | (pcm[p + 1] << 8));
+            sum += (double) s * s;
+        }
+        double rms = Math.sqrt(sum / n) / 32768.0;
+        if (rms <= 0) return PacketExtensions.LEVEL_SILENCE;
+        int dbov = (int) Math.round(-20.0 * Math.log10(rms));
+        return Math.max(0, Math.min(PacketExtensions.LEVEL_SILENCE, dbov));
+    }
+
+    /**
+     * Converts samples between sample rates by linear interpolation. Good enough for voice
+     * between the supported 8/16/24 kHz rates; no anti-aliasing filter is applied when
+     * downsampling.
+     *
+     * @param src source samples
+     * @param count number of source samples
+     * @param srcRate source sample rate
+     * @param dst destination, large enough for {@code count * dstRate / srcRate} samples
+     * @param dstRate destination sample rate
+     * @return number of samples written
+     */
+    static int resample(short[] src, int count, int srcRate, short[] dst, int dstRate) {
+        if (srcRate == dstRate) {
+            System.arraycopy(src, 0, dst, 0, count);
+            return count;
+        }
+        int out = (int) ((long) count * dstRate / srcRate);
+        for (int i = 0; i < out; i++) {
+            long pos = (long) i * srcRate; // position in source samples, scaled by dstRate
+            int j = (int) (pos / dstRate);
+            int frac = (int) (pos % dstRate);
+            int a = src[j];
+            int b = j + 1 < count ? src[j + 1] : a;
+            dst[i] = (short) (a + (long) (b - a) * frac / dstRate);
+        }
+        return out;
+    }
+
+    /**
+     * Adds {@code count} samples to the accumulator.
+     *
+     * @param acc mix accumulator
+     * @param samples samples to add
+     * @param count number of samples
+     */
+    static void add(int[] acc, short[] samples, int count) {
+        for (int i = 0; i < count; i++) {
+            acc[i] += samples[i];
+        }
+    }
+
+    /**
+     * Clamps a mixed value to the 16-bit sample range.
+     *
+     * @param v mixed value
+     * @return the saturated sample
+     */
+    static short saturate(int v) {
+        if (v > Short.MAX_VALUE) return Short.MAX_VALUE;
+        if (v < Short.MIN_VALUE) return Short.MIN_VALUE;
+        return (short) v;
+    }
+
+    /**
+     * Produces the accumulated mix minus one contributor's own samples ("mix-minus"), saturated
+     * to 16 bits.
+     *
+     * @param acc mix accumulator holding the sum of all contributors
+     * @param own the listener's own contribution to leave out, or null if it did not contribute
+     * @param count number of samples
+     * @param dst destination samples
+     */
+    static void mixMinus(int[] acc, short[] own, int count, short[] dst) {
+        for (int i = 0; i < count; i++) {
+            dst[i] = saturate(own == null ? acc[i] : acc[i] - own[i]);
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package com.audiostreaming;
+
+import java.util.Arrays;
+
+/**
+ * Client-side mixer combining every sender's audio into one playback stream.
+ * <p>
+ * Frames released by the senders' jitter buffers are queued per sender; each
+ * {@link #mix(byte[])} takes one tick's worth of samples from every sender that has audio, sums
+ * them with saturation and produces a single frame for the speakers. However many people talk,
+ * the client plays one tick of audio per tick of wall clock. Senders whose frames are shorter or
+ * longer than a tick (another negotiated frame duration) are spread over ticks by their queue.
+ * </p>
+ * <p>
+ * Samples are 16-bit at the playback rate; the mixed output is little-endian PCM bytes. Nothing
+ * is allocated per frame. Used only by the playback thread.
+ * </p>
+ */
+final class PlaybackMixer {
+    private final int tickSamples;
+    private final int maxQueued;
+    private final int capacity;
+    private final int[] acc;
+    private Source[] sources = new Source[0];
+
+    /**
+     * @param profile playback profile; a tick is one frame of it
+     */
+    PlaybackMixer(AudioProfile profile) {
+        this.tickSamples = profile.samplesPerFrame();
+        // one of the longest frames plus a tick: anything beyond is latency, not jitter
+        int longest = profile.sampleRate() / 1000 * AudioProfile.FRAME_DURATIONS_MS[AudioProfile.FRAME_DURATIONS_MS.length - 1];
+        this.maxQueued = longest + tickSamples;
+        this.capacity = Integer.highestOneBit(maxQueued + longest) << 1;
+        this.acc = new int[tickSamples];
+    }
+
+    /**
+     * Creates the sample queue of a new sender.
+     *
+     * @return the sender's queue, mixed from now on
+     */
+    Source newSource() {
+        Source s = new Source(capacity);
+        sources = Arrays.copyOf(sources, sources.length + 1);
+        sources[sources.length - 1] = s;
+        return s;
+    }
+
+    /**
+     * Stops mixing a sender's queue, dropping whatever it still holds.
+     *
+     * @param source a queue created by {@link #newSource()}
+     */
+    void removeSource(Source source) {
+        for (int i = 0; i < sources.length; i++) {
+            if (sources[i] == source) {
+                Source[] fewer = Arrays.copyOf(sources, sources.length - 1);
+                System.arraycopy(sources, i + 1, fewer, i, fewer.length - i);
+                sources = fewer;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Queues a sender's frame for the next ticks. If the sender has more than about one frame
+     * queued, the oldest samples are dropped.
+     *
+     * @param source the sender's queue
+     * @param pcm the frame's samples
+     * @param n number of samples
+     */
+    void add(Source source, short[] pcm, int n) {
+        source.append(pcm, n);
+        source.trim(maxQueued);
+    }
+
+    /**
+     * Mixes one tick: up to a tick of samples from every sender with queued audio.
+     *
+     * @param out destination for one tick of 16-bit little-endian samples
+     * @return number of bytes written, 0 if no sender had audio
+     */
+    int mix(byte[] out) {
+        int samples = 0;
+        boolean any = false;
+        for (Source s : sources) {
+            if (s.size() == 0) continue;
+            int n = Math.min(s.size(), tickSamples);
+            if (!any) {
+                Arrays.fill(acc, 0);
+                any = true;
+            }
+            s.take(acc, n);
+            samples = Math.max(samples, n);
+        }
+        if (!any) return 0;
+        for (int i = 0; i < samples; i++) {
+            short v = PcmMixer.saturate(acc[i]);
+            out[2 * i] = (byte) v;
+            out[2 * i + 1] = (byte) (v >> 8);
+        }
+        return samples * 2;
+    }
+
+    /** FIFO of one sender's samples. */
+    static final class Source {
+        private final short[] ring;
+        private final int mask;
+        private int head;
+        private int size;
+
+        Source(int capacity) {
+            this.ring = new short[capacity];
+            this.mask = capacity - 1;
+        }
+
+        int size() {
+            return size;
+        }
+
+        void append(short[] pcm, int count) {
+            int n = Math.min(count, ring.length - size);
+            int tail = head + size;
+            for (int i = 0; i < n; i++) {
+                ring[(tail + i) & mask] = pcm[i];
+            }
+            size += n;
+        }
+
+        void trim(int max) {
+            if (size > max) {
+                head = (head + size - max) & mask;
+                size = max;
+            }
+        }
+
+        // adds the oldest n samples to acc and removes them
+        void take(int[] acc, int n) {
+            for (int i = 0; i < n; i++) {
+                acc[i] += ring[(head + i) & mask];
+            }
+            head = (head + n) & mask;
+            size -= n;
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.audiostreaming;
+
+/**
+ * Receive-side state of one sender: its jitter buffer, loss concealer and mixer queue.
+ * <p>
+ * Created by the receive thread when a sender's first frame arrives, and dropped by it when the
+ * sender leaves or stays silent too long. The receive thread offers frames to {@link #buffer}
+ * and tracks the sequence numbers it has seen to request lost frames again and report reception
+ * quality; the playback thread owns {@link #concealer} and {@link #source}.
+ * </p>
+ */
+final class ReceiveStream {
+    final int senderId;
+    volatile JitterBuffer buffer; // replaced by the receive thread if the sender's frame duration changes
+    final LossConcealer concealer;
+    PlaybackMixer.Source source; // playback thread only, created on first use
+    int highestSeq; // receive thread only, valid once hasHighest
+    boolean hasHighest;
+    int baseSeq; // first sequence number received
+    long received; // packets received, including retransmissions and duplicates
+    long skipped; // sequence numbers passed over by pauses, not expected
+    long expectedPrior; // expected and received at the last receiver report
+    long receivedPrior;
+    int nackedSeq; // first frame of the last NACK, receive thread only
+    long nackedNanos; // when that NACK was sent, 0 once answered
+    long lastHeardNanos; // arrival of the sender's last packet, receive thread only
+    volatile boolean removed; // the sender left the call; dropped by the receive thread
+
+    ReceiveStream(int senderId, JitterBuffer buffer, LossConcealer concealer) {
+        this.senderId = senderId;
+        this.buffer = buffer;
+        this.concealer = concealer;
+    }
+}
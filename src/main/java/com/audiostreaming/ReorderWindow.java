@@ -0,0 +1,196 @@
+package com.audiostreaming;
+
+/**
+ * Fixed-size reorder window for one sender's frames, indexed by sequence number modulo the
+ * window size.
+ * <p>
+ * Replaces a sorted map keyed by boxed sequence numbers: insert and in-order drain are O(1)
+ * array operations and nothing is allocated per frame. Sequence numbers are compared with
+ * 32-bit serial-number arithmetic ({@code (int) (a - b)}), so the window keeps working when a
+ * sender's counter wraps past {@link Integer#MAX_VALUE}.
+ * </p>
+ * <p>
+ * Owns the frames it holds: frames dropped by the window (late, duplicate, evicted, reset) are
+ * released back to their pool. Not thread-safe; used only by the sender's lane.
+ * </p>
+ */
+final class ReorderWindow {
+    /** Consecutive frames far behind the window that mean the sender restarted its sequence. */
+    static final int RESTART_FRAMES = 3;
+
+    private final Frame[] slots;
+    private final long[] bufferedAt; // System.nanoTime() when each slot was filled
+    private final int mask;
+    private int expectedSeq;
+    private int count;
+    private int behindRun; // consecutive frames too far behind to be late
+
+    private long evicted;
+
+    /**
+     * @param capacity maximum number of frames held, rounded up to a power of two
+     */
+    ReorderWindow(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        this.slots = new Frame[size];
+        this.bufferedAt = new long[size];
+        this.mask = size - 1;
+    }
+
+    /**
+     * Signed distance from {@code b} to {@code a} in sequence space, correct across wraparound.
+     *
+     * @param a a sequence number
+     * @param b a sequence number
+     * @return positive if {@code a} is after {@code b}, negative if before, 0 if equal
+     */
+    static int distance(int a, int b) {
+        return a - b;
+    }
+
+    /** @return the next sequence number to be emitted */
+    int expectedSeq() {
+        return expectedSeq;
+    }
+
+    /** @return number of frames currently held */
+    int size() {
+        return count;
+    }
+
+    boolean isEmpty() {
+        return count == 0;
+    }
+
+    /** Marks {@link #expectedSeq()} as emitted without a frame (used by the in-order fast path). */
+    void advance() {
+        expectedSeq++;
+    }
+
+    /**
+     * Stores a frame in the window. If the frame is too far ahead, the window slides forward,
+     * evicting (releasing) the oldest frames and giving up on missing ones. A frame too far
+     * behind to be merely late is refused like a late one, unless it is the
+     * {@value #RESTART_FRAMES}th such frame in a row: then the sender has restarted its sequence
+     * and the window resets to follow it.
+     *
+     * @param frame a parsed frame
+     * @return true if the window took ownership, false if the frame is late or a duplicate
+     *         (the caller keeps ownership)
+     */
+    boolean offer(Frame frame) {
+        int seq = frame.sequenceNumber;
+        int d = distance(seq, expectedSeq);
+        if (d < -slots.length) {
+            // far behind anything the window could have seen: a stale or replayed packet, or the
+            // sender restarted its sequence (for example a new audio session). Only a run of such
+            // frames is a restart worth following; a single one must not flush the window.
+            if (++behindRun < RESTART_FRAMES) return false;
+            reset(seq);
+            d = 0;
+        }
+        behindRun = 0;
+        if (d < 0) return false;
+        if (d > mask) {
+            // too far ahead: slide so that seq becomes the newest slot
+            skipTo(seq - mask);
+        }
+        int idx = seq & mask;
+        if (slots[idx] != null) return false; // duplicate
+        slots[idx] = frame;
+        bufferedAt[idx] = System.nanoTime();
+        count++;
+        return true;
+    }
+
+    /**
+     * Removes the frame for {@link #expectedSeq()} if present and advances.
+     *
+     * @return the next in-order frame (now owned by the caller), or null if it has not arrived
+     */
+    Frame poll() {
+        if (count == 0) return null;
+        int idx = expectedSeq & mask;
+        Frame f = slots[idx];
+        if (f == null) return null;
+        slots[idx] = null;
+        count--;
+        expectedSeq++;
+        return f;
+    }
+
+    /**
+     * Moves {@link #expectedSeq()} forward to {@code seq}, releasing buffered frames older than it.
+     * Does nothing if {@code seq} is not ahead of the current position.
+     *
+     * @param seq the new expected sequence number
+     */
+    void skipTo(int seq) {
+        int d = distance(seq, expectedSeq);
+        if (d <= 0) return;
+        if (count > 0) {
+            int steps = Math.min(d, slots.length);
+            for (int i = 0; i < steps && count > 0; i++) {
+                int idx = (expectedSeq + i) & mask;
+                Frame f = slots[idx];
+                if (f != null) {
+                    slots[idx] = null;
+                    count--;
+                    evicted++;
+                    f.release();
+                }
+            }
+        }
+        expectedSeq = seq;
+    }
+
+    /**
+     * Gives up on a missing head-of-line frame once the oldest buffered frame behind it has
+     * waited at least {@code deadlineNanos}, advancing {@link #expectedSeq()} to that frame so it
+     * can be drained with {@link #poll()}. This bounds the latency a single lost packet can add.
+     * <p>
+     * The wait is measured from when the frame entered the window rather than from when it was
+     * received, so time spent queued on a busy lane does not count: the missing frame may be
+     * queued right behind it.
+     * </p>
+     *
+     * @param nowNanos current {@link System#nanoTime()}
+     * @param deadlineNanos maximum time a buffered frame may wait for a missing predecessor
+     * @return the number of missing sequence numbers skipped, 0 if nothing expired
+     */
+    int skipExpiredGap(long nowNanos, long deadlineNanos) {
+        if (count == 0 || slots[expectedSeq & mask] != null) return 0;
+        for (int i = 1; i <= mask; i++) {
+            int idx = (expectedSeq + i) & mask;
+            if (slots[idx] == null) continue;
+            if (nowNanos - bufferedAt[idx] < deadlineNanos) return 0;
+            expectedSeq += i;
+            return i;
+        }
+        return 0;
+    }
+
+    /**
+     * Releases all buffered frames and restarts at {@code seq}.
+     *
+     * @param seq the next expected sequence number
+     */
+    void reset(int seq) {
+        if (count > 0) {
+            for (int i = 0; i < slots.length; i++) {
+                if (slots[i] != null) {
+                    slots[i].release();
+                    slots[i] = null;
+                }
+            }
+            count = 0;
+        }
+        expectedSeq = seq;
+        behindRun = 0;
+    }
+
+    /** @return frames released because the window had to slide past them */
+    long getEvictedCount() {
+        return evicted;
+    }
+}
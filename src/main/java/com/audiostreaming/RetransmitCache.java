@@ -0,0 +1,65 @@
+package com.audiostreaming;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Copies of the packets recently forwarded for one sender, kept so that a listener that lost one
+ * can ask for it again with a NACK (see {@link FeedbackPackets}).
+ * <p>
+ * Packets are copied into a ring of preallocated buffers indexed by sequence number, so the
+ * forwarding frame goes back to the {@link FramePool} right away and nothing is allocated per
+ * packet. A copy is only handed out for {@value #MAX_AGE_MS} ms, after which no jitter buffer
+ * could still play it. Owned by the sender's lane, which both stores packets and answers NACKs.
+ * </p>
+ */
+final class RetransmitCache {
+    /** How long a forwarded packet may be retransmitted. */
+    static final int MAX_AGE_MS = JitterBuffer.MAX_DELAY_MS;
+    private static final long MAX_AGE_NANOS = MAX_AGE_MS * 1_000_000L;
+    /** Packets kept per sender; a power of two, more than {@link #MAX_AGE_MS} / shortest frame. */
+    static final int CAPACITY = 32;
+
+    private final ByteBuffer[] packets = new ByteBuffer[CAPACITY];
+    private final int[] sequences = new int[CAPACITY];
+    private final long[] times = new long[CAPACITY];
+    private final int packetSize;
+
+    /**
+     * @param packetSize largest packet to keep
+     */
+    RetransmitCache(int packetSize) {
+        this.packetSize = packetSize;
+    }
+
+    /**
+     * Keeps a copy of a forwarded frame's datagram, replacing the oldest in its slot.
+     *
+     * @param frame the frame being forwarded
+     */
+    void store(Frame frame) {
+        int i = frame.sequenceNumber & (CAPACITY - 1);
+        ByteBuffer copy = packets[i];
+        if (copy == null) {
+            copy = packets[i] = ByteBuffer.allocate(packetSize); // once per slot, on first use
+        }
+        copy.clear();
+        copy.put(frame.wire()).flip();
+        sequences[i] = frame.sequenceNumber;
+        times[i] = frame.receivedNanos;
+    }
+
+    /**
+     * Looks up a forwarded packet.
+     *
+     * @param seq sequence number of the packet
+     * @param nowNanos current time
+     * @return the packet's datagram, valid until the next {@link #store}, or null if it is not
+     *         cached or too old
+     */
+    ByteBuffer find(int seq, long nowNanos) {
+        int i = seq & (CAPACITY - 1);
+        ByteBuffer copy = packets[i];
+        if (copy == null || sequences[i] != seq || nowNanos - times[i] > MAX_AGE_NANOS) return null;
+        return copy;
+    }
+}
@@ -0,0 +1,62 @@
+package com.audiostreaming;
+
+import java.net.InetSocketAddress;
+
+/**
+ * Immutable snapshot of the clients that should receive forwarded audio.
+ * <p>
+ * The server rebuilds the table whenever membership or a client's endpoint changes and publishes
+ * it through a volatile field, so the fan-out loop is a plain array walk over pre-resolved
+ * targets with no map iteration, per-recipient checks or locking.
+ * </p>
+ */
+final class RoutingTable {
+    static final RoutingTable EMPTY = new RoutingTable(new int[0], new InetSocketAddress[0]);
+
+    private final int[] clientIds;
+    private final InetSocketAddress[] targets;
+    private final ClientState[] members;
+
+    RoutingTable(int[] clientIds, InetSocketAddress[] targets) {
+        this(clientIds, targets, new ClientState[clientIds.length]);
+    }
+
+    RoutingTable(int[] clientIds, InetSocketAddress[] targets, ClientState[] members) {
+        if (clientIds.length != targets.length || clientIds.length != members.length) {
+            throw new IllegalArgumentException("clientIds, targets and members must have the same length");
+        }
+        this.clientIds = clientIds;
+        this.targets = targets;
+        this.members = members;
+    }
+
+    /** @return number of routes */
+    int size() {
+        return clientIds.length;
+    }
+
+    /**
+     * @param i route index
+     * @return the client id of route {@code i}
+     */
+    int clientId(int i) {
+        return clientIds[i];
+    }
+
+    /**
+     * @param i route index
+     * @return the resolved UDP endpoint of route {@code i}
+     */
+    InetSocketAddress target(int i) {
+        return targets[i];
+    }
+
+    /**
+     * @param i route index
+     * @return the state of the client behind route {@code i}, or null if the table was built
+     *         without client states
+     */
+    ClientState member(int i) {
+        return members[i];
+    }
+}
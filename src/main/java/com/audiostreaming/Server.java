@@ -14,11 +14,9 @@ import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CopyOnWriteArrayList;
-import java.util.NavigableMap;
-import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Audio streaming server that forwards UDP audio frames between clients and
@@ -29,6 +27,11 @@ import java.util.concurrent.Executors;
  * <ul>
  *   <li>Accept TCP connections and register clients, assigning incremental IDs</li>
  *   <li>Track client presence and state (ACTIVE, MUTED, LEFT, DISCONNECTED)</li>
+ *   <li>Group clients into named rooms; audio, presence and mute events stay within a room</li>
+ *   <li>Optionally forward only the loudest few talkers of each room
+ *       ({@link #setMaxForwardedSpeakers(int)})</li>
+ *   <li>Optionally mix each room on the server ({@link #setMixingEnabled(boolean)}) so every
+ *       listener receives one mix-minus stream instead of one stream per talker</li>
  *   <li>Receive UDP audio packets from senders and forward in-order frames to other clients</li>
  *   <li>Run periodic heartbeats to detect stale TCP connections and time out inactive clients</li>
  * </ul>
@@ -36,23 +39,70 @@ import java.util.concurrent.Executors;
  * <ul>
  *   <li>One thread accepting TCP control connections</li>
  *   <li>One background scheduler for heartbeats and cleanup</li>
- *   <li>A worker pool for UDP packet processing and forwarding</li>
+ *   <li>One or more UDP receive threads that parse headers and shard frames by sender</li>
+ *   <li>A {@link ShardedExecutor}: one lane per core, each sender pinned to a lane, so a sender's
+ *       sequencing state is single-writer and needs no locks</li>
  * </ul>
+ * UDP frames are received into pooled buffers ({@link FramePool}) and released once they have
+ * been forwarded or dropped, so the ingest path does not allocate per packet in steady state.
+ * The UDP side runs either on a single blocking {@link DatagramSocket} or, when constructed with
+ * {@link #Server(int, int)}, on several NIO channels sharing the port with one receive thread each.
  */
 public class Server{
-    private final DatagramSocket socket; 
+    private final UdpTransport transport; 
     private static final Logger logger = Logger.getLogger(Server.class.getName());
 
     private static final CopyOnWriteArrayList<Socket> tcpClients = new CopyOnWriteArrayList<>();
     private final ConcurrentHashMap<Socket, Integer> tcpSocketToClientId = new ConcurrentHashMap<>();
 
-    private final ExecutorService workerPool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+    private static final int LANE_QUEUE_CAPACITY = 1024;
+    private static final long LANE_TICK_MS = 10; // how often lanes check reorder deadlines
+    private final ShardedExecutor lanes;
+    // per lane, the senders whose reorder window holds frames; only the lane's tick polls it
+    private final MpscQueue<ClientState>[] gapWatch;
     final ConcurrentHashMap<Integer, ClientState> clientStates;
 
+    // room a client is placed in until it asks for another one
+    static final String DEFAULT_ROOM = "General";
+    private static final int MAX_ROOM_NAME_LENGTH = 64;
+    // one table per room, read by the mixer
+    private volatile RoutingTable[] roomRoutes = new RoutingTable[0];
+
+    // MCU mode: lanes feed the mixer instead of forwarding, the mixer sends one stream per listener
+    private volatile boolean mixing;
+    private final ConferenceMixer mixer;
+    private java.util.concurrent.ScheduledExecutorService mixerExecutor;
+
+    // top-N forwarding: at most this many talkers per room are forwarded, 0 forwards everyone
+    private volatile int maxForwardedSpeakers;
+    private static final long SPEAKER_SELECTION_MS = 100;
+    // a current speaker keeps its slot unless a challenger is this much louder
+    static final int SPEAKER_HYSTERESIS_DB = 6;
+    // a sender not heard for this long is no longer a talker
+    private static final long SPEAKER_IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(300);
+
     // server-assigned client id generator
     private final java.util.concurrent.atomic.AtomicInteger nextClientId = new java.util.concurrent.atomic.AtomicInteger(1);
-    private static final int MAX_PACKET_SIZE = 1500;
-    private static final int MAX_BUFFERED_PACKETS = 200; // per-client buffer cap
+    static final int MAX_PACKET_SIZE = 1500;
+    static final int MAX_BUFFERED_PACKETS = 256; // per-client reorder window (power of two)
+    static final int MAX_RETRANSMITS_PER_SECOND = 100; // per listener, over all its senders
+    // what a client registered without options plays per datagram: 20 ms of 8 kHz PCM
+    static final int BARE_FRAME_SAMPLES = AudioProfile.DEFAULT.samplesPerFrame();
+    private static final int BARE_STRIDE = PacketHeader.V1_SIZE + BARE_FRAME_SAMPLES * 2;
+
+    // how long a buffered frame may wait for a missing predecessor before the gap is skipped
+    static final long DEFAULT_REORDER_DEADLINE_MS = 60;
+    private volatile long reorderDeadlineNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_REORDER_DEADLINE_MS);
+    private final ServerMetrics metrics = new ServerMetrics();
+    // data plane tracing; failures by default, per-packet events once lowered with setTraceLevel
+    private final PacketTracer tracer = new PacketTracer(Level.WARNING, "server-trace", System.out, System.err);
+    private javax.management.ObjectName mbeanName; // null if the metrics MBean is not registered
+    private final java.nio.ByteBuffer senderReport = java.nio.ByteBuffer.allocate(FeedbackPackets.HEADER_SIZE + FeedbackPackets.SENDER_REPORT_SIZE); // scheduler only
+
+    // enough frames for queued, in-flight and reordered frames
+    private static final int FRAME_POOL_SIZE = 2048;
+    private final FramePool framePool;
+
 
     private final java.util.concurrent.ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
     private static final long HEARTBEAT_INTERVAL_MS = 2_000; // 2s
@@ -65,26 +115,106 @@ public class Server{
 
     /**
      * Creates a server instance bound to the provided UDP socket.
+     * <p>
+     * All UDP packets are read by a single receive loop ({@link #udpReceive()}).
+     * </p>
      *
      * @param socket the UDP socket used to receive and forward audio packets
      * @throws Exception if initialization fails
      */
     public Server(DatagramSocket socket) throws Exception{
+        this(new DatagramSocketTransport(socket));
+    }
+
+    /**
+     * Creates a server instance using the NIO transport: {@code receiveThreads} datagram channels
+     * bound to {@code udpPort} with {@code SO_REUSEPORT}, each read by its own thread once
+     * {@link #udpReceive()} is called.
+     *
+     * @param udpPort the UDP port to bind, or 0 for an ephemeral port
+     * @param receiveThreads number of receive channels/threads, typically the number of cores
+     * @throws Exception if the channels cannot be opened or bound
+     */
+    public Server(int udpPort, int receiveThreads) throws Exception {
+        this(new DatagramChannelTransport(udpPort, receiveThreads));
+    }
+
+    // package-private so benchmarks can plug in a non-network transport
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    Server(UdpTransport transport) {
         this.clientStates = new ConcurrentHashMap<>();
-        this.socket = socket;
+        this.transport = transport;
+        this.framePool = new FramePool(transport.getReceiverCount(), FRAME_POOL_SIZE, MAX_PACKET_SIZE, transport.usesDirectBuffers());
+        this.mixer = new ConferenceMixer(transport, metrics, tracer);
+        int laneCount = Runtime.getRuntime().availableProcessors();
+        this.gapWatch = new MpscQueue[laneCount];
+        for (int i = 0; i < laneCount; i++) gapWatch[i] = new MpscQueue<>(LANE_QUEUE_CAPACITY);
+        this.lanes = new ShardedExecutor(laneCount, LANE_QUEUE_CAPACITY,
+            this::runFrame, this::expireReorderGaps, TimeUnit.MILLISECONDS.toNanos(LANE_TICK_MS), "server-lane-");
+        registerMetricsBean();
     }
 
-    // Broadcast a one-line message to all connected TCP clients (best-effort)
-    private void sendTcpMessageToAll(String message) {
-        for (Socket s : new ArrayList<>(tcpClients)) {
-            try {
-                BufferedWriter w = new BufferedWriter(new OutputStreamWriter(s.getOutputStream(), java.nio.charset.StandardCharsets.UTF_8));
-                w.write(message + "\n");
-                w.flush();
-            } catch (IOException e) {
-                // ignore individual client failures
+    // Publish the metrics over JMX; a second server on the same port (tests, benchmarks) just goes without
+    private void registerMetricsBean() {
+        try {
+            javax.management.ObjectName name = new javax.management.ObjectName("com.audiostreaming:type=Server,port=" + transport.getLocalPort());
+            java.lang.management.ManagementFactory.getPlatformMBeanServer().registerMBean(new MetricsBean(), name);
+            mbeanName = name;
+        } catch (javax.management.JMException e) {
+            logger.log(Level.FINE, "[SERVER] - Metrics MBean not registered", e);
+        }
+    }
+
+    // Broadcast a one-line message to the registered TCP clients currently in a room (best-effort)
+    private void sendTcpMessageToRoom(String room, String message) {
+        for (Map.Entry<Socket, Integer> e : tcpSocketToClientId.entrySet()) {
+            ClientState cs = clientStates.get(e.getValue());
+            if (cs == null || !room.equals(cs.room)) continue;
+            sendTcpMessage(e.getKey(), message);
+        }
+    }
+
+    // Send a one-line message to the TCP connection of a single client (best-effort)
+    private void sendTcpMessageToClient(int clientId, String message) {
+        for (Map.Entry<Socket, Integer> e : tcpSocketToClientId.entrySet()) {
+            if (e.getValue() == clientId) sendTcpMessage(e.getKey(), message);
+        }
+    }
+
+    private void sendTcpMessage(Socket s, String message) {
+        try {
+            BufferedWriter w = new BufferedWriter(new OutputStreamWriter(s.getOutputStream(), java.nio.charset.StandardCharsets.UTF_8));
+            w.write(message + "\n");
+            w.flush();
+        } catch (IOException e) {
+            // ignore individual client failures
+        }
+    }
+
+    /**
+     * Normalizes a requested room name: surrounding whitespace is trimmed, inner whitespace is
+     * replaced (the control protocol is space-separated) and overly long names are truncated.
+     *
+     * @param requested the room name sent by a client, may be null
+     * @return the room name to use, {@link #DEFAULT_ROOM} if none was given
+     */
+    static String normalizeRoom(String requested) {
+        if (requested == null) return DEFAULT_ROOM;
+        String room = requested.trim().replaceAll("\\s+", "_");
+        if (room.isEmpty()) return DEFAULT_ROOM;
+        return room.length() > MAX_ROOM_NAME_LENGTH ? room.substring(0, MAX_ROOM_NAME_LENGTH) : room;
+    }
+
+    // PRESENCE ADD lines for everyone in the call in the given room, except the client itself
+    private List<String> presenceList(String room, int exceptClientId) {
+        List<String> lines = new ArrayList<>();
+        for (ClientState cs : clientStates.values()) {
+            if (cs.clientId == exceptClientId || !room.equals(cs.room)) continue;
+            if (cs.status == ClientStatus.ACTIVE || cs.status == ClientStatus.MUTED) {
+                lines.add("PRESENCE ADD " + cs.clientId + " " + (cs.username == null ? "" : cs.username));
             }
         }
+        return lines;
     }
 
 
@@ -129,7 +259,7 @@ public class Server{
             System.out.println("==============================================");
             System.out.println("[SERVER] - Server is running on the following IP addresses:");
             System.out.println("[SERVER] - TCP Port: " + tcpServerSocket.getLocalPort());
-            System.out.println("[SERVER] - UDP Port: " + socket.getLocalPort());
+            System.out.println("[SERVER] - UDP Port: " + transport.getLocalPort() + " (" + transport.getReceiverCount() + " receive thread(s))");
             System.out.println("----------------------------------------------");
             while (interfaces.hasMoreElements()) {
                 java.net.NetworkInterface iface = interfaces.nextElement();
@@ -165,6 +295,22 @@ public class Server{
                 logger.log(Level.WARNING, "[HEARTBEAT] - error", e);
             }
         }, HEARTBEAT_INTERVAL_MS, HEARTBEAT_INTERVAL_MS, java.util.concurrent.TimeUnit.MILLISECONDS);
+
+        scheduler.scheduleAtFixedRate(() -> {
+            try {
+                sendSenderReports();
+            } catch (Exception e) {
+                logger.log(Level.WARNING, "[REPORTS] - error", e);
+            }
+        }, FeedbackPackets.REPORT_INTERVAL_MS, FeedbackPackets.REPORT_INTERVAL_MS, java.util.concurrent.TimeUnit.MILLISECONDS);
+
+        scheduler.scheduleAtFixedRate(() -> {
+            try {
+                selectSpeakers();
+            } catch (Exception e) {
+                logger.log(Level.WARNING, "[SPEAKERS] - error", e);
+            }
+        }, SPEAKER_SELECTION_MS, SPEAKER_SELECTION_MS, java.util.concurrent.TimeUnit.MILLISECONDS);
     }
 
     /**
@@ -214,6 +360,7 @@ public class Server{
      */
     public void heartbeat() throws Exception{
     long now = System.currentTimeMillis();
+        boolean membershipChanged = false;
         for (Map.Entry<Integer, ClientState> e : clientStates.entrySet()) {
             Integer id = e.getKey();
             ClientState st = e.getValue();
@@ -223,6 +370,7 @@ public class Server{
                     if (st.status != ClientStatus.DISCONNECTED && st.status != ClientStatus.LEFT) {
                         logger.info("[HEARTBEAT] - Marking clientId=" + st.clientId + " DISCONNECTED due to timeout");
                         st.status = ClientStatus.DISCONNECTED;
+                        membershipChanged = true;
                     }
                 }
 
@@ -230,6 +378,7 @@ public class Server{
                     logger.info("[HEARTBEAT] - Removing stale clientId=" + id + " after grace period");
                     clientStates.remove(id);
                     tcpSocketToClientId.values().removeIf(v -> v.equals(id));
+                    membershipChanged = true;
                 }
             }
         }
@@ -251,55 +400,256 @@ public class Server{
                     ClientState st = clientStates.get(clientId);
                     if (st != null) {
                         st.status = ClientStatus.DISCONNECTED;
+                        membershipChanged = true;
                     }
                 }
                 try { client.close(); } catch (IOException ignored) {}
                 tcpClients.remove(client);
             }
         }
+        if (membershipChanged) rebuildRoutes();
+    }
+
+    /**
+     * Rebuilds one immutable fan-out {@link RoutingTable} per room from the current client states
+     * and hands every client the table of its room.
+     * <p>
+     * Called on every transition that changes who receives audio or where it is sent:
+     * REGISTER, JOIN, LEAVE, MUTE/UNMUTE, disconnects, heartbeat timeouts and UDP port changes.
+     * MUTED clients keep receiving; LEFT/DISCONNECTED clients and clients without a usable UDP
+     * endpoint are excluded. Because each sender only walks its own room's table, forwarding cost
+     * grows with the room size rather than with the number of clients on the server.
+     * </p>
+     */
+    synchronized void rebuildRoutes() {
+        Map<String, List<ClientState>> members = new java.util.HashMap<>();
+        for (ClientState cs : clientStates.values()) {
+            ClientStatus status = cs.status;
+            if (status == ClientStatus.LEFT || status == ClientStatus.DISCONNECTED) continue;
+            if (cs.clientAddress == null || cs.clientPort <= 0) continue;
+            members.computeIfAbsent(cs.room, r -> new ArrayList<>()).add(cs);
+        }
+        Map<String, RoutingTable> tables = new java.util.HashMap<>();
+        for (Map.Entry<String, List<ClientState>> e : members.entrySet()) {
+            List<ClientState> eligible = e.getValue();
+            int[] ids = new int[eligible.size()];
+            InetSocketAddress[] targets = new InetSocketAddress[eligible.size()];
+            ClientState[] states = eligible.toArray(new ClientState[0]);
+            for (int i = 0; i < ids.length; i++) {
+                ClientState cs = states[i];
+                ids[i] = cs.clientId;
+                targets[i] = new InetSocketAddress(cs.clientAddress, cs.clientPort);
+            }
+            tables.put(e.getKey(), new RoutingTable(ids, targets, states));
+        }
+        for (ClientState cs : clientStates.values()) {
+            cs.routes = tables.getOrDefault(cs.room, RoutingTable.EMPTY);
+        }
+        roomRoutes = tables.values().toArray(new RoutingTable[0]);
+        logger.fine("[ROUTES] - Rebuilt routing tables for " + tables.size() + " room(s)");
+    }
+
+    /**
+     * Switches server-side mixing (MCU mode) on or off.
+     * <p>
+     * When enabled, frames are no longer forwarded individually: every 20 ms each room is mixed
+     * and each listener is sent one frame containing all other talkers (mix-minus), with client id
+     * {@link ConferenceMixer#MIX_SOURCE_ID}. Downstream bandwidth and client playback work then stay
+     * constant per listener however many people talk, at the cost of server CPU and one mix
+     * period of extra latency. The mix is 8 kHz: talkers' frames are decoded whatever their codec
+     * and resampled, so clients registered before mixing was enabled keep being heard, while
+     * clients registering with mixing on are given the 8 kHz, 20 ms profile to begin with.
+     * </p>
+     *
+     * @param enabled true to mix on the server, false to forward frames unchanged
+     */
+    public synchronized void setMixingEnabled(boolean enabled) {
+        mixing = enabled;
+        if (enabled && mixerExecutor == null) {
+            mixerExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "server-mixer");
+                t.setDaemon(true);
+                return t;
+            });
+            mixerExecutor.scheduleAtFixedRate(this::mixTick, ConferenceMixer.TICK_MS, ConferenceMixer.TICK_MS, TimeUnit.MILLISECONDS);
+        } else if (!enabled && mixerExecutor != null) {
+            mixerExecutor.shutdownNow();
+            mixerExecutor = null;
+        }
+        logger.info("[SERVER] - Server-side mixing " + (enabled ? "enabled" : "disabled"));
+    }
+
+    /**
+     * Returns whether server-side mixing is enabled.
+     *
+     * @return true in MCU mode
+     */
+    public boolean isMixingEnabled() {
+        return mixing;
+    }
+
+    /**
+     * Returns how many mixed frames have been sent to listeners.
+     *
+     * @return the number of mixed frames sent
+     */
+    public long getMixedFramesSent() {
+        return mixer.getSentFrameCount();
+    }
+
+    private void mixTick() {
+        try {
+            mixer.tick(roomRoutes);
+        } catch (RuntimeException e) {
+            logger.log(Level.WARNING, "[MIXER] - tick failed", e);
+        }
+    }
+
+    /**
+     * Limits forwarding to the {@code max} loudest talkers of each room (dominant-speaker
+     * forwarding), so fan-out cost and downstream bandwidth are bounded by {@code max} instead of
+     * the room size.
+     * <p>
+     * Loudness comes from the audio level extension clients attach to each frame; senders that
+     * do not send one are always forwarded. The set of speakers is re-evaluated every
+     * {@value #SPEAKER_SELECTION_MS} ms, and a current speaker is only replaced by someone at
+     * least {@value #SPEAKER_HYSTERESIS_DB} dB louder, so the selection does not flap between
+     * talkers of similar volume. Also applies to the mix in MCU mode.
+     * </p>
+     * <p>
+     * The first version 2 frame forwarded after a talker was held back carries
+     * {@link PacketHeader#FLAG_MARKER}, so listeners treat the withheld frames as a pause in the
+     * talkspurt rather than losses to conceal and NACK.
+     * </p>
+     *
+     * @param max maximum number of forwarded talkers per room, 0 to forward everyone
+     */
+    public void setMaxForwardedSpeakers(int max) {
+        maxForwardedSpeakers = Math.max(0, max);
+        logger.info("[SERVER] - Forwarding " + (max > 0 ? "the " + max + " loudest talker(s)" : "all talkers") + " per room");
+    }
+
+    /**
+     * Returns the per-room limit on forwarded talkers.
+     *
+     * @return the limit, 0 if everyone is forwarded
+     */
+    public int getMaxForwardedSpeakers() {
+        return maxForwardedSpeakers;
+    }
+
+    // Re-evaluate the loudest talkers of every room; runs on the scheduler
+    void selectSpeakers() {
+        int max = maxForwardedSpeakers;
+        if (max <= 0) return;
+        long now = System.nanoTime();
+        for (RoutingTable room : roomRoutes) {
+            selectSpeakers(room, max, now);
+        }
+    }
+
+    private void selectSpeakers(RoutingTable room, int max, long now) {
+        int n = room.size();
+        ClientState[] talkers = new ClientState[n];
+        int[] score = new int[n];
+        int count = 0;
+        for (int i = 0; i < n; i++) {
+            ClientState cs = room.member(i);
+            if (cs.status != ClientStatus.ACTIVE || now - cs.lastLevelNanos > SPEAKER_IDLE_NANOS) {
+                cs.speaker = false;
+                continue;
+            }
+            // lower is louder; current speakers get a head start so similar levels don't flap
+            talkers[count] = cs;
+            score[count] = cs.smoothedLevel - (cs.speaker ? SPEAKER_HYSTERESIS_DB : 0);
+            count++;
+        }
+        // insertion sort by score: rooms are small and the levels are a stable snapshot
+        for (int i = 1; i < count; i++) {
+            ClientState cs = talkers[i];
+            int sc = score[i];
+            int j = i - 1;
+            while (j >= 0 && score[j] > sc) {
+                talkers[j + 1] = talkers[j];
+                score[j + 1] = score[j];
+                j--;
+            }
+            talkers[j + 1] = cs;
+            score[j + 1] = sc;
+        }
+        for (int i = 0; i < count; i++) {
+            talkers[i].speaker = i < max;
+        }
+    }
+
+    /**
+     * Returns the room a client is currently in.
+     *
+     * @param clientId the client ID
+     * @return the room name, or null if the client is unknown
+     */
+    public String getClientRoom(int clientId) {
+        ClientState st = clientStates.get(clientId);
+        return st == null ? null : st.room;
     }
 
     /**
-     * Receives UDP packets from clients in a loop and dispatches processing to the worker pool.
+     * Receives UDP packets from clients in a loop and dispatches them to the sender's lane.
      * <p>
-     * Exits gracefully when the UDP socket is closed as part of shutdown.
+     * Each datagram is received directly into a pooled {@link Frame} whose header is parsed in
+     * place to find the sender's lane, so nothing is copied or allocated per packet. With the NIO
+     * transport one extra receive thread is started per additional channel and the calling thread
+     * serves the first.
+     * Exits gracefully when the UDP transport is closed as part of shutdown.
      * </p>
      *
      * @throws Exception if UDP receive or task submission fails
      */
     public void udpReceive() throws Exception{ 
+        for (int i = 1; i < transport.getReceiverCount(); i++) {
+            final int receiver = i;
+            Thread t = new Thread(() -> {
+                try {
+                    receiveLoop(receiver);
+                } catch (Exception e) {
+                    logger.log(Level.SEVERE, "[UDP] - receive loop " + receiver + " error", e);
+                }
+            }, "server-udp-thread-" + receiver);
+            t.setDaemon(true);
+            t.start();
+        }
+        receiveLoop(0);
+    }
+
+    private void receiveLoop(int receiver) throws IOException {
         try {
-            while (!Thread.currentThread().isInterrupted() && !socket.isClosed()) {
-                byte[] buf = new byte[MAX_PACKET_SIZE];
-                DatagramPacket packet = new DatagramPacket(buf, buf.length);
+            while (!Thread.currentThread().isInterrupted() && !transport.isClosed()) {
+                Frame frame = framePool.acquire(receiver);
                 try {
-                    socket.receive(packet);
-                } catch (SocketException se) {
-                    // If socket was closed as part of shutdown, exit gracefully
-                    if (socket.isClosed()) {
+                    if (!transport.receive(receiver, frame)) {
+                        frame.release();
+                        continue;
+                    }
+                } catch (IOException e) {
+                    frame.release();
+                    // If the transport was closed as part of shutdown, exit gracefully
+                    if (transport.isClosed()) {
                         logger.info("[UDP] - Socket closed, stopping udpReceive");
                         break;
                     }
-                    throw se;
+                    throw e;
                 }
 
-                // copy only valid bytes
-                byte[] copy = Arrays.copyOf(packet.getData(), packet.getLength());
-                InetAddress srcAddr = packet.getAddress();
-                int srcPort = packet.getPort();
-                logger.fine("[SERVER] - Received packet from " + srcAddr + ":" + srcPort + " with length " + copy.length);
-                logger.fine("[UDP] - Submitting work to workerPool for " + srcAddr + ":" + srcPort);
-                try {
-                    workerPool.submit(() -> {
-                        logger.fine("[UDP] - Worker start for " + srcAddr + ":" + srcPort + " on thread " + Thread.currentThread().getName());
-                        try {
-                            processPacket(copy, srcAddr, srcPort);
-                        } catch (Exception e) {
-                            logger.log(Level.WARNING, "[UDP] - Worker caught exception while processing packet from " + srcAddr + ":" + srcPort, e);
-                        }
-                    });
-                } catch (java.util.concurrent.RejectedExecutionException rex) {
-                    logger.log(Level.WARNING, "[UDP] - Task submission rejected", rex);
+                frame.receivedNanos = System.nanoTime();
+                metrics.packetsReceived.increment();
+                metrics.bytesReceived.add(frame.length);
+                if (!parseFrame(frame)) {
+                    frame.release();
+                    continue;
+                }
+                if (!lanes.dispatch(frame)) {
+                    tracer.trace(PacketTracer.Event.LANE_FULL, frame.clientId, frame.sequenceNumber, 0, null, null);
+                    frame.release();
                 }
             }
         } finally {
@@ -307,6 +657,51 @@ public class Server{
         }
     }
 
+    // Parses a frame header in place; traces and returns false if the frame is malformed
+    private boolean parseFrame(Frame frame) {
+        try {
+            frame.parseHeader();
+            tracer.trace(PacketTracer.Event.RECEIVED, frame.clientId, frame.sequenceNumber, frame.length, frame.srcAddr, null);
+            return true;
+        } catch (IllegalArgumentException e) {
+            metrics.malformed.increment();
+            tracer.trace(PacketTracer.Event.MALFORMED, 0, 0, frame.length, frame.srcAddr, e);
+            return false;
+        }
+    }
+
+    // Lane entry point for a received frame (see ShardedExecutor)
+    private void runFrame(Frame frame) {
+        InetAddress srcAddr = frame.srcAddr;
+        int srcPort = frame.srcPort;
+        try {
+            processFrame(frame);
+        } catch (Exception e) {
+            logger.log(Level.WARNING, "[UDP] - Lane caught exception while processing packet from " + srcAddr + ":" + srcPort, e);
+        }
+    }
+
+    /**
+     * Returns the UDP port the server receives audio on.
+     *
+     * @return the bound UDP port
+     */
+    public int getUdpPort() {
+        return transport.getLocalPort();
+    }
+
+    /**
+     * Returns the number of frame buffers allocated because the pool was exhausted.
+     * <p>
+     * Stays flat in steady state; a growing value means the pool is undersized for the load.
+     * </p>
+     *
+     * @return the number of frames allocated beyond the pre-allocated slab
+     */
+    public long getFrameAllocationCount() {
+        return framePool.getAllocationCount();
+    }
+
     /**
      * Stops the server, closing TCP and UDP sockets, terminating background tasks,
      * and clearing client state/mappings.
@@ -318,22 +713,26 @@ public class Server{
             if (tcpServerSocket != null && !tcpServerSocket.isClosed()) tcpServerSocket.close();
         } catch (Exception ignored) {}
         try {
-            if (socket != null && !socket.isClosed()) socket.close();
+            if (!transport.isClosed()) transport.close();
         } catch (Exception e) {
             // ignore
         }
         try {
             scheduler.shutdownNow();
         } catch (Exception ignored) {}
-
-        try {
-            workerPool.shutdownNow();
-        } catch (Exception ignored) {}
+        if (mixing) setMixingEnabled(false);
+        if (mbeanName != null) {
+            try {
+                java.lang.management.ManagementFactory.getPlatformMBeanServer().unregisterMBean(mbeanName);
+            } catch (javax.management.JMException ignored) {}
+            mbeanName = null;
+        }
 
         try {
             // wait a short time for shutdown
             scheduler.awaitTermination(2, java.util.concurrent.TimeUnit.SECONDS);
-            workerPool.awaitTermination(2, java.util.concurrent.TimeUnit.SECONDS);
+            lanes.shutdown(2, java.util.concurrent.TimeUnit.SECONDS);
+            tracer.shutdown(2_000);
         } catch (InterruptedException ignored) {
             Thread.currentThread().interrupt();
         }
@@ -413,6 +812,18 @@ public class Server{
             this.tcpSocket = tcpSocket;
         }
 
+        // Answer STATS; the report names every client, so only connections from this host get it
+        private void writeStats(BufferedWriter writer) throws IOException {
+            if (!tcpSocket.getInetAddress().isLoopbackAddress()) {
+                writer.write("ERROR STATS is only served to local connections\n");
+            } else {
+                for (String line : statsLines()) {
+                    writer.write(line + "\n");
+                }
+            }
+            writer.flush();
+        }
+
         @Override
         // handle registration and subsequent commands from this client
         public void run() {
@@ -421,6 +832,12 @@ public class Server{
 
                 // read registration line (expected: REGISTER <clientId> <udpPort>)
                 String reg = reader.readLine();
+                if (reg != null && "STATS".equals(reg.trim())) {
+                    // operators can ask for the metrics without registering: echo STATS | nc localhost 4444
+                    writeStats(writer);
+                    try { tcpSocket.close(); } catch (IOException ignored) {}
+                    return;
+                }
                 if (reg == null || !reg.startsWith("REGISTER")) {
                     writer.write("ERROR expected REGISTER\n");
                     writer.flush();
@@ -428,9 +845,11 @@ public class Server{
                     return;
                 }
 
+                // REGISTER <udpPort> [username] [KEY=VALUE ...], e.g. ROOM=<room> CODECS=ADPCM,PCMU PROFILE=16000/20,8000/20 HEADERS=2,1
                 String[] parts = reg.trim().split("\\s+");
                 int udpPort;
                 String username = null;
+                Map<String, String> options = new java.util.HashMap<>();
                 try {
                     if (parts.length < 2) {
                         writer.write("ERROR invalid register\n");
@@ -439,7 +858,15 @@ public class Server{
                         return;
                     }
                     udpPort = Integer.parseInt(parts[1]);
-                    username = parts.length >= 3 ? parts[2] : ("user" + System.currentTimeMillis()%1000);
+                    for (int i = 2; i < parts.length; i++) {
+                        int eq = parts[i].indexOf('=');
+                        if (eq > 0) {
+                            options.put(parts[i].substring(0, eq).toUpperCase(java.util.Locale.ROOT), parts[i].substring(eq + 1));
+                        } else if (username == null) {
+                            username = parts[i];
+                        }
+                    }
+                    if (username == null) username = "user" + System.currentTimeMillis()%1000;
                 } catch (NumberFormatException ex) {
                     writer.write("ERROR invalid register\n");
                     writer.flush();
@@ -495,32 +922,33 @@ public class Server{
                 st.clientAddress = regAddr;
                 st.clientPort = udpPort;
                 st.username = finalUsername;
+                st.room = normalizeRoom(options.get("ROOM"));
+                st.codec = AudioCodecs.negotiate(options.get("CODECS"));
+                // in MCU mode new talkers send the mix's format, which spares the mixer resampling them
+                st.profile = mixing ? ConferenceMixer.PROFILE : AudioProfile.negotiate(options.get("PROFILE"), st.codec);
+                st.headerVersion = PacketHeader.negotiate(options.get("HEADERS"));
+                // clients that predate the options send none and only play bare 8 kHz PCM
+                st.bareAudio = options.isEmpty();
                 // Reset sequencing and buffers on fresh registration so old expectedSeq doesn't block forwarding
                 st.lastHeard = System.currentTimeMillis();
-                st.expectedSeq = 0;
-                st.buffer.clear();
+                st.requestSequenceReset();
                 st.status = ClientStatus.ACTIVE;
+                rebuildRoutes();
 
-                // Reply with the assigned client id so client knows it
-                writer.write("OK " + clientId + "\n");
+                // Reply with the assigned client id so client knows it, and the codec, profile and header version it should send
+                writer.write("OK " + clientId + " CODEC=" + st.codec.name() + " PROFILE=" + st.profile.name() + " HEADER=" + st.headerVersion + "\n");
                 writer.flush();
-                logger.info("[TCP] - Registered clientId=" + clientId + " udpPort=" + udpPort + " from " + tcpSocket.getRemoteSocketAddress());
+                logger.info("[TCP] - Registered clientId=" + clientId + " udpPort=" + udpPort + " room=" + st.room + " from " + tcpSocket.getRemoteSocketAddress());
 
-                // Notify other TCP clients about this new presence
-                sendTcpMessageToAll("PRESENCE ADD " + clientId + " " + st.username);
+                // Notify the room about this new presence
+                sendTcpMessageToRoom(st.room, "PRESENCE ADD " + clientId + " " + st.username);
 
-                // Send existing presence list to the newly registered client
+                // Send the room's existing presence list to the newly registered client
                 // Only include clients that are currently ACTIVE or MUTED (in the call)
-                for (Map.Entry<Integer, ClientState> entry : clientStates.entrySet()) {
-                    if (entry.getKey().equals(clientId)) continue;
-                    ClientState cs = entry.getValue();
-                    if (cs != null && (cs.status == ClientStatus.ACTIVE || cs.status == ClientStatus.MUTED)) {
-                        String msg = "PRESENCE ADD " + cs.clientId + " " + (cs.username == null ? "" : cs.username);
-                        writer.write(msg + "\n");
-                        logger.info("[TCP] - Sent to clientId=" + clientId + ": " + msg);
-                    } else if (cs != null) {
-                        logger.info("[TCP] - Skipped sending PRESENCE ADD for clientId=" + cs.clientId + " (status=" + cs.status + ") to clientId=" + clientId);
-                    }
+                writer.write("ROOM " + st.room + "\n");
+                for (String msg : presenceList(st.room, clientId)) {
+                    writer.write(msg + "\n");
+                    logger.info("[TCP] - Sent to clientId=" + clientId + ": " + msg);
                 }
                 writer.flush();
 
@@ -541,15 +969,13 @@ public class Server{
                         logger.fine("[TCP] - Received command from " + clientId + ": " + cmd);
                         try {
                             if ("SYNC".equals(cmd)) {
-                                // Respond only to this client with current ACTIVE/MUTED presence
-                                for (Map.Entry<Integer, ClientState> entry : clientStates.entrySet()) {
-                                    if (entry.getKey().equals(clientId)) continue; // skip self
-                                    ClientState cs = entry.getValue();
-                                    if (cs != null && (cs.status == ClientStatus.ACTIVE || cs.status == ClientStatus.MUTED)) {
-                                        writer.write("PRESENCE ADD " + cs.clientId + " " + (cs.username == null ? "" : cs.username) + "\n");
-                                    }
+                                // Respond only to this client with current ACTIVE/MUTED presence in its room
+                                for (String msg : presenceList(st.room, clientId)) {
+                                    writer.write(msg + "\n");
                                 }
                                 writer.flush();
+                            } else if ("STATS".equals(cmd)) {
+                                writeStats(writer);
                             } else {
                                 handleCommands(cmd, clientId);
                             }
@@ -575,8 +1001,9 @@ public class Server{
                         // Don't send duplicate PRESENCE REMOVE if already LEFT
                         boolean wasInCall = (st.status == ClientStatus.ACTIVE || st.status == ClientStatus.MUTED);
                         st.status = ClientStatus.DISCONNECTED;
+                        rebuildRoutes();
                         if (wasInCall) {
-                            sendTcpMessageToAll("PRESENCE REMOVE " + removed);
+                            sendTcpMessageToRoom(st.room, "PRESENCE REMOVE " + removed);
                         }
                     }
                 }
@@ -591,7 +1018,7 @@ public class Server{
      * Handles a single control command for the specified client, updating its state
      * and broadcasting presence or state changes as needed.
      *
-     * @param command the command string (e.g., MUTE, UNMUTE, JOIN, LEAVE)
+     * @param command the command string (e.g., MUTE, UNMUTE, JOIN [room], LEAVE)
      * @param clientId the target client ID
      * @throws Exception if command processing encounters an error
      */
@@ -602,47 +1029,71 @@ public class Server{
             return;
         }
 
-        switch (command) {
+        String[] words = command.trim().split("\\s+", 2);
+        switch (words[0]) {
             case "MUTE" -> {
                 synchronized (st) {
                     st.status = ClientStatus.MUTED; 
                 }
+                rebuildRoutes();
                 System.out.println("[TCP] - Client " + clientId + " muted");
                 // Broadcast mute state so UIs can reflect the authoritative server state
-                sendTcpMessageToAll("MUTE " + clientId);
+                sendTcpMessageToRoom(st.room, "MUTE " + clientId);
             }
             case "LEAVE" -> {
                 synchronized (st) {
                     st.status = ClientStatus.LEFT;
                 }
+                rebuildRoutes();
                 // mark client as LEFT but preserve the tcp socket mapping so the client
                 // can leave and later re-join the call without reconnecting to TCP.
                 System.out.println("[TCP] - Client " + clientId + " left the call (state preserved for rejoin)");
-                sendTcpMessageToAll("PRESENCE REMOVE " + clientId);
+                sendTcpMessageToRoom(st.room, "PRESENCE REMOVE " + clientId);
             }
             case "UNMUTE" -> {
                 synchronized (st) {
                     st.status = ClientStatus.ACTIVE;
                 }
+                rebuildRoutes();
                 System.out.println("[TCP] - Client " + clientId + " unmuted");
                 // Broadcast unmute state so UIs can reflect the authoritative server state
-                sendTcpMessageToAll("UNMUTE " + clientId);
+                sendTcpMessageToRoom(st.room, "UNMUTE " + clientId);
             }
             case "JOIN" -> {
-                    boolean wasLeft = false;
+                // JOIN keeps the current room; JOIN <room> moves the client into another one
+                String room = words.length > 1 ? normalizeRoom(words[1]) : st.room;
+                boolean wasLeft;
+                boolean wasInCall;
+                String oldRoom;
                 synchronized (st) {
-                        wasLeft = (st.status == ClientStatus.LEFT);
+                    wasLeft = (st.status == ClientStatus.LEFT);
+                    wasInCall = (st.status == ClientStatus.ACTIVE || st.status == ClientStatus.MUTED);
+                    oldRoom = st.room;
+                    st.room = room;
                     st.status = ClientStatus.ACTIVE;
                 }
-                System.out.println("[TCP] - Client " + clientId + " joined (ACTIVE)");
-                    // Only broadcast PRESENCE ADD if client is rejoining after leaving
-                    // (initial join already broadcasts PRESENCE ADD during REGISTER)
-                    if (wasLeft) {
-                        sendTcpMessageToAll("PRESENCE ADD " + clientId + " " + st.username);
+                boolean moved = !room.equals(oldRoom);
+                rebuildRoutes();
+                System.out.println("[TCP] - Client " + clientId + " joined room " + room + " (ACTIVE)");
+                if (moved && wasInCall) {
+                    sendTcpMessageToRoom(oldRoom, "PRESENCE REMOVE " + clientId);
+                }
+                // Only broadcast PRESENCE ADD if client is rejoining after leaving or changed rooms
+                // (initial join already broadcasts PRESENCE ADD during REGISTER)
+                if (wasLeft || moved) {
+                    sendTcpMessageToRoom(room, "PRESENCE ADD " + clientId + " " + st.username);
+                }
+                if (moved) {
+                    // the client's participant list belonged to the old room: replace it
+                    sendTcpMessageToClient(clientId, "ROOM " + room);
+                    for (String msg : presenceList(room, clientId)) {
+                        sendTcpMessageToClient(clientId, msg);
                     }
+                }
             }
             default -> System.out.println("[SERVER] - Unknown command: " + command);
         }
+
     // handle server commands from clients (mute/leave/join handled above)
 
     }
@@ -652,6 +1103,11 @@ public class Server{
     /**
      * Processes a single UDP audio packet: performs basic validation, updates sequencing,
      * buffers in-order frames, and forwards them to other eligible clients.
+     * <p>
+     * Convenience entry point for callers holding a raw byte array; the bytes are copied into a
+     * pooled frame and processed synchronously on the calling thread, bypassing the lanes.
+     * Callers must not process frames from the same sender concurrently.
+     * </p>
      *
      * @param data the raw UDP packet bytes
      * @param srcAddr the source IP address the packet came from
@@ -659,39 +1115,68 @@ public class Server{
      * @throws Exception if deserialization or forwarding fails
      */
     public void processPacket(byte[] data, InetAddress srcAddr, int srcPort) throws Exception {
-        System.out.println("[PROCESS] - Enter processPacket: src=" + srcAddr + ":" + srcPort + " size=" + (data==null?0:data.length));
-        // Deserialize the audio packet
-        AudioPacket audioPacket;
-        try {
-            audioPacket = deserializeAudioPacket(data);
-            System.out.println("[PROCESS] - Deserialized packet: clientId=" + audioPacket.clientId + " seq=" + audioPacket.sequenceNumber + " audioLen=" + (audioPacket.audioData==null?0:audioPacket.audioData.length));
-        } catch (Exception e) {
-            System.err.println("[PROCESS] - Failed to deserialize packet from " + srcAddr + ":" + srcPort + " -> " + e);
+        Frame frame = framePool.acquire();
+        int len = data == null ? 0 : Math.min(data.length, frame.buf.capacity());
+        frame.buf.clear();
+        if (len > 0) frame.buf.put(data, 0, len);
+        frame.length = len;
+        frame.srcAddr = srcAddr;
+        frame.srcPort = srcPort;
+        frame.receivedNanos = System.nanoTime();
+        metrics.packetsReceived.increment();
+        metrics.bytesReceived.add(len);
+        if (!parseFrame(frame)) {
+            frame.release();
             return;
         }
+        processFrame(frame);
+    }
 
-        // Get existing client state; do not auto-create because REGISTER should create it
-        ClientState state = clientStates.get(audioPacket.clientId);
-        if (state == null) {
-            System.out.println("[PROCESS] - Dropping packet for unknown clientId=" + audioPacket.clientId + " from " + srcAddr + ":" + srcPort + " size=" + (data==null?0:data.length));
-            return;
-        }
+    /**
+     * Processes a parsed UDP frame: updates sequencing, buffers out-of-order frames and forwards
+     * in-order frames to other eligible clients. Feedback frames are answered instead (see
+     * {@link FeedbackPackets}).
+     * <p>
+     * Runs on the sender's lane, which is the only writer of the sender's sequencing state, so no
+     * locks are taken. Takes ownership of {@code frame}: it is released here once forwarded or
+     * dropped, or by the client's reorder buffer when it is later emitted or evicted.
+     * </p>
+     *
+     * @param frame the received frame
+     * @throws Exception if forwarding fails
+     */
+    void processFrame(Frame frame) throws Exception {
+        boolean retained = false;
+        try {
+            if (frame.feedbackType != 0) {
+                handleFeedback(frame);
+                return;
+            }
+            InetAddress srcAddr = frame.srcAddr;
+            int srcPort = frame.srcPort;
+
+            // Get existing client state; do not auto-create because REGISTER should create it
+            ClientState state = clientStates.get(frame.clientId);
+            if (state == null) {
+                metrics.unknownClient.increment();
+                tracer.trace(PacketTracer.Event.UNKNOWN_CLIENT, frame.clientId, frame.sequenceNumber, 0, srcAddr, null);
+                return;
+            }
+
+            state.applySequenceReset();
 
-        synchronized (state) {
             // Verify client status: only forward packets from ACTIVE clients.
             if (state.status != ClientStatus.ACTIVE) {
                 // Do not forward audio while muted/left/disconnected, but update sequencing so future
                 // packets from this client don't get permanently blocked due to a missing expectedSeq.
-                System.out.println("[PROCESS] - Received packet from clientId=" + audioPacket.clientId + " but status=" + state.status + " (not forwarding)");
+                metrics.inactiveClient.increment();
+                tracer.trace(PacketTracer.Event.INACTIVE, frame.clientId, frame.sequenceNumber, 0, state.status, null);
                 // update lastHeard for presence
                 state.lastHeard = System.currentTimeMillis();
 
                 // If the incoming sequence number is at or ahead of expectedSeq, advance expectedSeq
-                // to avoid blocking when the client resumes sending in-order frames.
-                if (audioPacket.sequenceNumber >= state.expectedSeq) {
-                    // set expectedSeq to one past this received packet so later packets can be emitted normally
-                    state.expectedSeq = audioPacket.sequenceNumber + 1;
-                }
+                // (wrap-safe) to avoid blocking when the client resumes sending in-order frames.
+                state.window.skipTo(frame.sequenceNumber + 1);
                 // Do not buffer or forward this packet.
                 return;
             }
@@ -701,87 +1186,577 @@ public class Server{
                 // first time seeing UDP packets from this client: set address/port
                 state.clientAddress = srcAddr;
                 state.clientPort = srcPort;
+                rebuildRoutes();
             } else {
                 if (!addressesMatch(state.clientAddress, srcAddr)) {
-                    System.out.println("[PROCESS] - Dropping packet: src address " + srcAddr + " doesn't match registered " + state.clientAddress);
+                    metrics.addressMismatch.increment();
+                    tracer.trace(PacketTracer.Event.ADDRESS_MISMATCH, frame.clientId, frame.sequenceNumber, 0, srcAddr, state.clientAddress);
                     return;
                 }
                 if (state.clientPort != srcPort) {
-                    System.out.println("[PROCESS] - Updating clientPort for clientId=" + state.clientId + " from " + state.clientPort + " to " + srcPort);
+                    tracer.trace(PacketTracer.Event.PORT_CHANGED, state.clientId, state.clientPort, srcPort, null, null);
                     state.clientPort = srcPort; // allow port change (NAT rebinding)
+                    rebuildRoutes();
                 }
             }
 
             // Update last seen info and id
             state.lastHeard = System.currentTimeMillis();
-            state.clientId = audioPacket.clientId;
-
-            // Add packet to buffer with cap eviction (drop oldest)
-            System.out.println("[PROCESS] - Buffering packet seq=" + audioPacket.sequenceNumber + " for client=" + audioPacket.clientId);
-            state.buffer.put(audioPacket.sequenceNumber, audioPacket);
-            while (state.buffer.size() > MAX_BUFFERED_PACKETS) {
-                Integer firstKey = state.buffer.firstKey();
-                state.buffer.remove(firstKey);
-                System.out.println("[PROCESS] - Evicted oldest buffered packet seq=" + firstKey + " for client=" + state.clientId);
-            }
-
-            // Process in-order packets starting from expectedSeq
-            List<AudioPacket> toSend = new ArrayList<>();
-                while (state.buffer.containsKey(state.expectedSeq)) {
-                AudioPacket next = state.buffer.remove(state.expectedSeq);
-                System.out.println("[PROCESS] - Emitting in-order packet seq=" + next.sequenceNumber + " for client=" + next.clientId);
-                toSend.add(next);
-                state.expectedSeq++;
-            }
-
-            // Forward collected packets to other clients
-            if (!toSend.isEmpty()) {
-                System.out.println("[PROCESS] - Forwarding " + toSend.size() + " packets from client=" + audioPacket.clientId);
-                for (ClientState clientState : clientStates.values()) { // iterate over clients
-                    if (clientState.clientId == audioPacket.clientId) continue; // skip sender
-                    synchronized (clientState) {
-                        // Allow MUTED clients to continue receiving audio from others. Only skip clients
-                        // that have left or are disconnected.
-                        if (clientState.status == ClientStatus.LEFT || clientState.status == ClientStatus.DISCONNECTED) {
-                            System.out.println("[PROCESS] - Skipping clientId=" + clientState.clientId + " because status=" + clientState.status);
-                            continue;
-                        }
-                        if (clientState.clientAddress == null) {
-                            System.out.println("[PROCESS] - Skipping clientId=" + clientState.clientId + " because address is null");
-                            continue;
-                        }
-                        if (clientState.clientPort <= 0) {
-                            System.out.println("[PROCESS] - Skipping clientId=" + clientState.clientId + " because port is invalid: " + clientState.clientPort);
-                            continue;
-                        }
+            state.clientId = frame.clientId;
+            if (frame.audioLevel >= 0) {
+                // smooth so a single loud or quiet frame does not decide the speaker selection
+                state.smoothedLevel = (3 * state.smoothedLevel + frame.audioLevel + 2) >> 2;
+                state.lastLevelNanos = frame.receivedNanos;
+            }
 
-                        for (AudioPacket pkt : toSend) {
-                            try {
-                                byte[] serialized = serializeAudioPacket(pkt);
-                                DatagramPacket outPacket = new DatagramPacket(
-                                    serialized,
-                                    serialized.length,
-                                    clientState.clientAddress,
-                                    clientState.clientPort
-                                );
-                                socket.send(outPacket);
-                                System.out.println("[PROCESS] - Sent packet seq=" + pkt.sequenceNumber + " to " + clientState.clientAddress + ":" + clientState.clientPort);
-                            } catch (IOException e) {
-                                System.err.println("[PROCESS] - Failed to send packet seq=" + pkt.sequenceNumber + " to clientId=" + clientState.clientId + " -> " + e);
-                            }
-                        }
-                    }
+            ReorderWindow window = state.window;
+
+            // Fast path: the expected frame with nothing buffered is forwarded straight away
+            if (frame.sequenceNumber == window.expectedSeq() && window.isEmpty()) {
+                window.advance();
+                forwardFrame(state, frame);
+                return;
+            }
+
+            // Add packet to the reorder window; a frame too far ahead slides the window and evicts the oldest
+            tracer.trace(PacketTracer.Event.BUFFERED, frame.clientId, frame.sequenceNumber, 0, null, null);
+            long evictedBefore = window.getEvictedCount();
+            if (!window.offer(frame)) {
+                metrics.lateOrDuplicate.increment();
+                tracer.trace(PacketTracer.Event.LATE, frame.clientId, frame.sequenceNumber, window.expectedSeq(), null, null);
+                return;
+            }
+            retained = true;
+            long evicted = window.getEvictedCount() - evictedBefore;
+            if (evicted > 0) {
+                metrics.reorderEvicted.add(evicted);
+                tracer.trace(PacketTracer.Event.EVICTED, state.clientId, 0, evicted, null, null);
+            }
+
+            // Process in-order packets starting from expectedSeq; frames still waiting behind a
+            // gap are flushed by the lane tick if the sender goes quiet
+            drainReorderWindow(state, System.nanoTime());
+            if (!window.isEmpty()) watchGap(state);
+        } finally {
+            if (!retained) frame.release();
+        }
+    }
+
+    // Forward every in-order frame in the client's window, skipping a missing frame once the
+    // frames queued behind it have waited past the reorder deadline; runs on the client's lane
+    private void drainReorderWindow(ClientState state, long nowNanos) {
+        ReorderWindow window = state.window;
+        long deadline = reorderDeadlineNanos;
+        while (true) {
+            Frame next;
+            while ((next = window.poll()) != null) {
+                try {
+                    forwardFrame(state, next);
+                } finally {
+                    next.release();
                 }
             }
+            int skipped = window.skipExpiredGap(nowNanos, deadline);
+            if (skipped == 0) return;
+            metrics.skippedGaps.increment();
+            metrics.skippedSequences.add(skipped);
+            tracer.trace(PacketTracer.Event.GAP_SKIPPED, state.clientId, window.expectedSeq(), skipped, null, null);
+        }
+    }
+
+    // Puts a sender whose reorder window holds frames on its lane's watch list, once; if the list
+    // is full the sender's next buffered frame tries again
+    private void watchGap(ClientState state) {
+        if (state.gapWatched) return;
+        state.gapWatched = true;
+        if (!gapWatch[lanes.laneIndex(state.clientId)].offer(state)) state.gapWatched = false;
+    }
+
+    // Lane tick: flush reorder windows whose head-of-line gap expired while the sender was quiet.
+    // Only the senders on the lane's watch list are visited, so the cost follows the number of
+    // windows holding frames rather than the number of clients; the ones still holding frames
+    // afterwards go back on the list.
+    private void expireReorderGaps(int lane) {
+        MpscQueue<ClientState> watched = gapWatch[lane];
+        long now = System.nanoTime();
+        for (int n = watched.size(); n > 0; n--) {
+            ClientState state = watched.poll();
+            if (state == null) return;
+            state.applySequenceReset();
+            drainReorderWindow(state, now);
+            if (state.window.isEmpty() || !watched.offer(state)) state.gapWatched = false;
+        }
+    }
+
+    /**
+     * Sets how long frames may wait in a sender's reorder buffer for a missing predecessor.
+     * <p>
+     * Once the oldest frame queued behind a gap has waited this long, the missing sequence numbers
+     * are skipped and the buffered frames are forwarded, so a lost packet never adds more than
+     * this much latency. Defaults to {@value #DEFAULT_REORDER_DEADLINE_MS} ms.
+     * </p>
+     *
+     * @param deadlineMs the playout deadline in milliseconds, at least 1
+     */
+    public void setReorderDeadlineMs(long deadlineMs) {
+        if (deadlineMs < 1) throw new IllegalArgumentException("deadlineMs must be >= 1");
+        this.reorderDeadlineNanos = TimeUnit.MILLISECONDS.toNanos(deadlineMs);
+    }
+
+    /**
+     * @return the reorder playout deadline in milliseconds
+     */
+    public long getReorderDeadlineMs() {
+        return TimeUnit.NANOSECONDS.toMillis(reorderDeadlineNanos);
+    }
+
+    /**
+     * Returns how many head-of-line gaps were skipped because the reorder deadline passed.
+     *
+     * @return the number of skipped gaps
+     */
+    public long getSkippedGapCount() {
+        return metrics.skippedGaps.sum();
+    }
+
+    /**
+     * Returns how many missing sequence numbers were given up on by deadline skipping.
+     *
+     * @return the number of skipped sequence numbers
+     */
+    public long getSkippedSequenceCount() {
+        return metrics.skippedSequences.sum();
+    }
+
+    // Version 1 form of a version 2 datagram: the same payload and extensions behind the old
+    // header, plus the codec extension that version 1 uses instead of the header field. Extensions
+    // are copied whole; one that would not fit beside the codec extension is dropped, never cut.
+    // Written into out, the sender's lane-owned buffer.
+    static java.nio.ByteBuffer legacyWire(java.nio.ByteBuffer out, java.nio.ByteBuffer src, PacketHeader header) {
+        out.clear();
+        PacketHeader.putV1(out, header.clientId, header.sequenceNumber);
+        PacketHeader.putPayloadLength(out, 1, header.payloadLength);
+        out.put(out.position(), src, header.payloadOffset, header.payloadLength);
+        out.position(out.position() + header.payloadLength);
+        boolean pcm = header.codecId == AudioCodecs.PCM.id();
+        int reserved = pcm ? 0 : PacketExtensions.ENTRY_HEADER_SIZE + 1;
+        int p = header.extensionsOffset;
+        while (p + PacketExtensions.ENTRY_HEADER_SIZE <= header.extensionsEnd) {
+            int size = PacketExtensions.ENTRY_HEADER_SIZE + (src.getShort(p + 1) & 0xFFFF);
+            if (p + size > header.extensionsEnd) break; // malformed entry, as in Frame
+            // the header's codec is the one that counts; it is appended below
+            if ((src.get(p) & 0xFF) != PacketExtensions.TYPE_CODEC && size <= out.remaining() - reserved) {
+                out.put(out.position(), src, p, size);
+                out.position(out.position() + size);
+            }
+            p += size;
+        }
+        if (!pcm) PacketExtensions.putCodec(out, header.codecId);
+        return out.flip();
+    }
+
+    // Form of a frame for listeners registered without options, which only accept a bare version 1
+    // header followed by at most 20 ms of 8 kHz PCM: the payload is decoded, resampled to 8 kHz and
+    // cut into pieces of BARE_FRAME_SAMPLES, each with its own header and no extensions. A frame of
+    // n pieces numbers them seq * n .. seq * n + n - 1, so pieces of consecutive frames stay in
+    // order. The pieces start every BARE_STRIDE bytes of the sender's lane-owned buffer; returns
+    // their number, 0 if the frame has nothing such a listener could play.
+    private int bareWire(ClientState state, Frame frame) {
+        AudioCodec codec = AudioCodecs.byId(frame.codecId);
+        if (frame.audioLength == 0 || codec == null || !AudioProfile.isSampleRate(frame.sampleRate)) return 0;
+        int n = codec.decode(frame.buf, frame.audioOffset, frame.audioLength, state.bareSamples);
+        n = PcmMixer.resample(state.bareSamples, n, frame.sampleRate, state.bareResampled, AudioProfile.DEFAULT.sampleRate());
+        int pieces = (n + BARE_FRAME_SAMPLES - 1) / BARE_FRAME_SAMPLES;
+        java.nio.ByteBuffer out = state.bareWire;
+        out.clear();
+        for (int k = 0; k < pieces; k++) {
+            int count = Math.min(BARE_FRAME_SAMPLES, n - k * BARE_FRAME_SAMPLES);
+            System.arraycopy(state.bareResampled, k * BARE_FRAME_SAMPLES, state.bareSamples, 0, count);
+            out.position(k * BARE_STRIDE);
+            PacketHeader.putV1(out, frame.clientId, frame.sequenceNumber * pieces + k);
+            out.putShort(k * BARE_STRIDE + PacketHeader.V1_SIZE - 2, (short) AudioCodecs.PCM.encode(state.bareSamples, count, out));
+        }
+        return pieces;
+    }
+
+    // Whether a frame is already in the form bareWire would build, as frames from clients that
+    // predate the options are; then it is forwarded as received
+    private static boolean isBare(Frame frame) {
+        return frame.version == 1 && frame.codecId == AudioCodecs.PCM.id() && frame.sampleRate == AudioProfile.DEFAULT.sampleRate()
+                && frame.audioOffset + frame.audioLength == frame.length && frame.audioLength <= BARE_FRAME_SAMPLES * 2;
+    }
+
+    // Sends the pieces built by bareWire to one listener; false if a send failed
+    private boolean sendBare(ClientState state, int pieces, Frame frame, InetSocketAddress target) {
+        java.nio.ByteBuffer out = state.bareWire;
+        for (int k = 0; k < pieces; k++) {
+            int start = k * BARE_STRIDE;
+            out.clear();
+            out.limit(start + PacketHeader.V1_SIZE + (out.getShort(start + PacketHeader.V1_SIZE - 2) & 0xFFFF)).position(start);
+            try {
+                transport.send(out, target);
+                metrics.sent(out.remaining());
+            } catch (IOException e) {
+                metrics.sendErrors.increment();
+                tracer.trace(PacketTracer.Event.SEND_FAILED, frame.clientId, frame.sequenceNumber, 0, target, e);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Handle feedback from a client whose registered endpoint sent it. A NACK is answered from the
+    // sender's retransmit cache; it runs on the sender's lane (the frame's clientId is the sender),
+    // which owns the cache. Only the listener that asked gets the copies, and only if it still
+    // routes audio from this sender. A receiver report updates the reporter's quality figures.
+    private void handleFeedback(Frame frame) {
+        ClientState reporter = clientStates.get(frame.reporterId);
+        if (reporter == null || !addressesMatch(reporter.clientAddress, frame.srcAddr) || reporter.clientPort != frame.srcPort) return;
+        switch (frame.feedbackType) {
+            case FeedbackPackets.TYPE_NACK -> handleNack(reporter, frame);
+            case FeedbackPackets.TYPE_RECEIVER_REPORT -> handleReceiverReport(reporter, frame);
+            default -> { } // unknown feedback is ignored
+        }
+    }
+
+    private void handleNack(ClientState listener, Frame frame) {
+        ClientState sender = clientStates.get(frame.clientId);
+        if (sender == null || sender == listener) return;
+        RoutingTable table = sender.routes;
+        InetSocketAddress target = null;
+        for (int i = 0; i < table.size(); i++) {
+            if (table.clientId(i) == listener.clientId) target = table.target(i);
+        }
+        if (target == null) return;
+        long now = System.nanoTime();
+        // at most a cache's worth of distinct sequence numbers per request, and no more than the
+        // listener's retransmit rate over all its senders, so NACKs cannot amplify traffic
+        int[] seqs = sender.nackedSequences;
+        int n = FeedbackPackets.nackedSequences(frame.buf, frame.audioOffset, frame.length, seqs);
+        for (int i = 0; i < n; i++) {
+            if (!listener.tryRetransmit(now)) {
+                metrics.retransmitsThrottled.add(n - i);
+                return;
+            }
+            retransmit(sender, seqs[i], listener, target, now);
+        }
+    }
+
+    // Round trip from the echoed sender report time, and the worst loss and jitter over the
+    // reporter's senders
+    private void handleReceiverReport(ClientState reporter, Frame frame) {
+        int p = frame.audioOffset;
+        if (p + FeedbackPackets.RECEIVER_REPORT_SIZE > frame.length) return;
+        int lastSenderReport = frame.buf.getInt(p);
+        int delay = frame.buf.getInt(p + 4);
+        if (lastSenderReport != 0) {
+            int rtt = FeedbackPackets.micros(frame.receivedNanos) - lastSenderReport - delay;
+            if (rtt >= 0) reporter.roundTripMicros = rtt;
+        }
+        reporter.lastHeard = System.currentTimeMillis();
+        int worstFraction = 0;
+        int worstJitter = 0;
+        long lost = 0;
+        for (p += FeedbackPackets.RECEIVER_REPORT_SIZE; p + FeedbackPackets.REPORT_BLOCK_SIZE <= frame.length; p += FeedbackPackets.REPORT_BLOCK_SIZE) {
+            int word = frame.buf.getInt(p + 4);
+            worstFraction = Math.max(worstFraction, word >>> 24);
+            lost += (word << 8) >> 8; // sign-extend 24 bits
+            worstJitter = Math.max(worstJitter, frame.buf.getInt(p + 12));
+        }
+        reporter.lossFraction = worstFraction;
+        reporter.jitterMicros = worstJitter;
+        reporter.cumulativeLost = lost;
+    }
+
+    // Scheduler: a sender report to every client that understands feedback (version 2 headers),
+    // carrying the server time to echo and the round trip measured from its last receiver report
+    private void sendSenderReports() {
+        java.nio.ByteBuffer out = senderReport;
+        int now = FeedbackPackets.micros(System.nanoTime());
+        for (ClientState st : clientStates.values()) {
+            InetAddress addr = st.clientAddress;
+            if (addr == null || st.headerVersion < PacketHeader.VERSION_2 || (st.status != ClientStatus.ACTIVE && st.status != ClientStatus.MUTED)) continue;
+            FeedbackPackets.putHeader(out, FeedbackPackets.TYPE_SENDER_REPORT, 0, st.clientId);
+            FeedbackPackets.putSenderReport(out, now, Math.max(0, st.roundTripMicros));
+            out.flip();
+            try {
+                transport.send(out, new InetSocketAddress(addr, st.clientPort));
+                metrics.sent(out.remaining());
+            } catch (IOException e) {
+                metrics.sendErrors.increment();
+                logger.fine("[REPORTS] - Failed to send sender report to clientId=" + st.clientId + " -> " + e);
+            }
+        }
+    }
+
+    /**
+     * Returns the round trip time to a client, measured from its receiver reports.
+     *
+     * @param clientId the client id
+     * @return round trip in milliseconds, or -1 if unknown
+     */
+    public double getClientRoundTripMs(int clientId) {
+        ClientState st = clientStates.get(clientId);
+        return st == null || st.roundTripMicros < 0 ? -1 : st.roundTripMicros / 1000.0;
+    }
+
+    /**
+     * Returns the share of frames a client lost in its last report interval, from the sender it
+     * receives worst.
+     *
+     * @param clientId the client id
+     * @return percentage of frames lost, or -1 if the client has not reported
+     */
+    public double getClientLossPercent(int clientId) {
+        ClientState st = clientStates.get(clientId);
+        return st == null || st.lossFraction < 0 ? -1 : st.lossFraction * 100.0 / 256;
+    }
+
+    /**
+     * Returns the interarrival jitter a client sees, from the sender it receives worst.
+     *
+     * @param clientId the client id
+     * @return jitter in milliseconds, or -1 if the client has not reported
+     */
+    public double getClientJitterMs(int clientId) {
+        ClientState st = clientStates.get(clientId);
+        return st == null || st.jitterMicros < 0 ? -1 : st.jitterMicros / 1000.0;
+    }
+
+    // Resends a cached packet, in the version 1 form if the listener did not negotiate version 2
+    // headers, as forwardFrame would have sent it
+    private void retransmit(ClientState sender, int seq, ClientState listener, InetSocketAddress target, long now) {
+        java.nio.ByteBuffer copy = sender.retransmits.find(seq, now);
+        if (copy == null) {
+            metrics.retransmitMisses.increment();
+            return;
+        }
+        java.nio.ByteBuffer out = copy;
+        if (listener.headerVersion < PacketHeader.VERSION_2) {
+            PacketHeader header = sender.retransmitHeader;
+            header.parse(copy, copy.remaining()); // parsed once when it was received
+            if (header.version == PacketHeader.VERSION_2) out = legacyWire(sender.legacyWire, copy, header);
+        }
+        try {
+            transport.send(out, target);
+            metrics.retransmitted.increment();
+            metrics.sent(out.remaining());
+        } catch (IOException e) {
+            metrics.sendErrors.increment();
+            tracer.trace(PacketTracer.Event.RETRANSMIT_FAILED, sender.clientId, seq, 0, target, e);
+        }
+    }
+
+    /**
+     * Returns how many packets were sent again to listeners that reported them lost.
+     *
+     * @return the number of retransmitted packets
+     */
+    public long getRetransmitCount() {
+        return metrics.retransmitted.sum();
+    }
+
+    /**
+     * Returns how many requested retransmissions could not be served because the packet was no
+     * longer cached (older than {@value RetransmitCache#MAX_AGE_MS} ms) or never forwarded.
+     *
+     * @return the number of unanswered retransmission requests
+     */
+    public long getRetransmitMissCount() {
+        return metrics.retransmitMisses.sum();
+    }
+
+    /**
+     * Returns the server's metrics: traffic and drop counters, queue depths and ingest-to-send
+     * latency. The same view is registered over JMX and served by the {@code STATS} control
+     * command.
+     *
+     * @return a live view of the metrics
+     */
+    public ServerMetricsMXBean getMetrics() {
+        return new MetricsBean();
+    }
+
+    /**
+     * Sets how much of the data plane is traced to the console.
+     * <p>
+     * Tracing never blocks packet processing: events are recorded into an in-memory ring buffer
+     * and formatted and printed by a background thread (see {@link PacketTracer}). At
+     * {@link Level#WARNING}, the default, only send failures are traced; {@link Level#FINE} adds
+     * drops, {@link Level#FINER} late frames and skipped gaps, {@link Level#FINEST} every packet.
+     * </p>
+     *
+     * @param level the lowest level traced, {@link Level#OFF} for none
+     */
+    public void setTraceLevel(Level level) {
+        tracer.setLevel(level);
+        logger.info("[SERVER] - Data plane tracing at " + level);
+    }
+
+    /**
+     * @return the lowest level of data plane events traced
+     */
+    public Level getTraceLevel() {
+        return tracer.getLevel();
+    }
+
+    /**
+     * Formats the metrics as the reply to the {@code STATS} control command: one {@code STATS}
+     * line of counters, one {@code LATENCY} line, a {@code LANE} line per lane, a {@code CLIENT}
+     * line per registered client and a closing {@code END}.
+     *
+     * @return the reply lines
+     */
+    List<String> statsLines() {
+        MetricsBean m = new MetricsBean();
+        List<String> lines = new ArrayList<>();
+        lines.add("STATS packetsIn=" + m.getPacketsReceived() + " bytesIn=" + m.getBytesReceived()
+                + " packetsOut=" + m.getPacketsSent() + " bytesOut=" + m.getBytesSent() + " sendErrors=" + m.getSendErrors()
+                + " mixedOut=" + m.getMixedFramesSent() + " mixInputDrops=" + m.getMixInputDrops() + " malformed=" + m.getMalformedPackets()
+                + " unknownClient=" + m.getUnknownClientDrops() + " inactiveClient=" + m.getInactiveClientDrops()
+                + " addressMismatch=" + m.getAddressMismatchDrops() + " lateOrDuplicate=" + m.getLateOrDuplicateDrops()
+                + " reorderEvicted=" + m.getReorderEvictions() + " skippedGaps=" + m.getSkippedGaps()
+                + " skippedSequences=" + m.getSkippedSequences() + " rejected=" + m.getRejectedSubmissions()
+                + " retransmits=" + m.getRetransmits() + " retransmitMisses=" + m.getRetransmitMisses()
+                + " retransmitsThrottled=" + m.getRetransmitsThrottled()
+                + " frameAllocations=" + m.getFrameAllocations() + " freeFrames=" + m.getFreeFrames() + " traceDropped=" + m.getTraceEventsDropped()
+                + " clients=" + m.getClientCount());
+        LatencyHistogram h = metrics.ingestToSend;
+        lines.add(String.format(java.util.Locale.ROOT, "LATENCY ingestToSend count=%d meanMs=%.3f p50Ms=%.3f p90Ms=%.3f p99Ms=%.3f maxMs=%.3f",
+                h.getCount(), h.getMeanMs(), h.getPercentileMs(50), h.getPercentileMs(90), h.getPercentileMs(99), h.getMaxMs()));
+        for (int i = 0; i < lanes.getLaneCount(); i++) {
+            lines.add("LANE " + i + " depth=" + lanes.getQueueDepth(i));
+        }
+        for (ClientState cs : clientStates.values()) {
+            lines.add(String.format(java.util.Locale.ROOT, "CLIENT %d status=%s room=%s queue=%d rttMs=%.1f lossPct=%.1f jitterMs=%.1f lost=%d",
+                    cs.clientId, cs.status, cs.room, cs.window.size(), getClientRoundTripMs(cs.clientId),
+                    getClientLossPercent(cs.clientId), getClientJitterMs(cs.clientId), cs.cumulativeLost));
+        }
+        lines.add("END");
+        return lines;
+    }
+
+    // JMX view of the metrics; reads the counters on demand. Reorder window sizes belong to the
+    // lanes and are read without synchronization, which is good enough for a gauge.
+    private final class MetricsBean implements ServerMetricsMXBean {
+        @Override public long getPacketsReceived() { return metrics.packetsReceived.sum(); }
+        @Override public long getBytesReceived() { return metrics.bytesReceived.sum(); }
+        @Override public long getPacketsSent() { return metrics.packetsSent.sum(); }
+        @Override public long getBytesSent() { return metrics.bytesSent.sum(); }
+        @Override public long getSendErrors() { return metrics.sendErrors.sum(); }
+        @Override public long getMixedFramesSent() { return mixer.getSentFrameCount(); }
+        @Override public long getMixInputDrops() { return metrics.mixInputDrops.sum(); }
+        @Override public long getMalformedPackets() { return metrics.malformed.sum(); }
+        @Override public long getUnknownClientDrops() { return metrics.unknownClient.sum(); }
+        @Override public long getInactiveClientDrops() { return metrics.inactiveClient.sum(); }
+        @Override public long getAddressMismatchDrops() { return metrics.addressMismatch.sum(); }
+        @Override public long getLateOrDuplicateDrops() { return metrics.lateOrDuplicate.sum(); }
+        @Override public long getReorderEvictions() { return metrics.reorderEvicted.sum(); }
+        @Override public long getSkippedGaps() { return metrics.skippedGaps.sum(); }
+        @Override public long getSkippedSequences() { return metrics.skippedSequences.sum(); }
+        @Override public long getRejectedSubmissions() { return lanes.getRejectedCount(); }
+        @Override public long getRetransmits() { return metrics.retransmitted.sum(); }
+        @Override public long getRetransmitMisses() { return metrics.retransmitMisses.sum(); }
+        @Override public long getRetransmitsThrottled() { return metrics.retransmitsThrottled.sum(); }
+        @Override public long getFrameAllocations() { return framePool.getAllocationCount(); }
+        @Override public int getFreeFrames() { return framePool.getFreeCount(); }
+        @Override public int getClientCount() { return clientStates.size(); }
+        @Override public long getTraceEventsDropped() { return tracer.getDroppedCount(); }
+        @Override public String getTraceLevel() { return tracer.getLevel().getName(); }
+        @Override public void setTraceLevel(String level) { Server.this.setTraceLevel(Level.parse(level.trim().toUpperCase(java.util.Locale.ROOT))); }
+        @Override public long getIngestToSendCount() { return metrics.ingestToSend.getCount(); }
+        @Override public double getIngestToSendMeanMs() { return metrics.ingestToSend.getMeanMs(); }
+        @Override public double getIngestToSendP50Ms() { return metrics.ingestToSend.getPercentileMs(50); }
+        @Override public double getIngestToSendP90Ms() { return metrics.ingestToSend.getPercentileMs(90); }
+        @Override public double getIngestToSendP99Ms() { return metrics.ingestToSend.getPercentileMs(99); }
+        @Override public double getIngestToSendMaxMs() { return metrics.ingestToSend.getMaxMs(); }
+
+        @Override
+        public int[] getLaneQueueDepths() {
+            int[] depths = new int[lanes.getLaneCount()];
+            for (int i = 0; i < depths.length; i++) depths[i] = lanes.getQueueDepth(i);
+            return depths;
+        }
+
+        @Override
+        public Map<Integer, Integer> getClientQueueDepths() {
+            Map<Integer, Integer> depths = new java.util.TreeMap<>();
+            for (ClientState cs : clientStates.values()) depths.put(cs.clientId, cs.window.size());
+            return depths;
         }
     }
 
+    // Forward one in-order frame to every other eligible client in the sender's room; runs on the
+    // sender's lane.
+    // The wire bytes are identical for every recipient, so the received datagram is sent as-is
+    // instead of being re-serialized per recipient. Only listeners without version 2 header
+    // support get a version 1 copy, and listeners registered without options the bare PCM form of
+    // bareWire; each is built at most once per frame. Eligibility was resolved when the routing
+    // table was built, so this is a lock-free walk over pre-resolved targets.
+    private void forwardFrame(ClientState state, Frame frame) {
+        if (maxForwardedSpeakers > 0 && frame.audioLevel >= 0 && !state.speaker) {
+            state.gated = true;
+            return; // not among the room's loudest talkers
+        }
+        if (mixing) {
+            // MCU mode: the mixer sends this talker's audio as part of each listener's mix;
+            // empty frames (keepalives, comfort noise markers) add nothing to it
+            if (frame.audioLength == 0) return;
+            AudioCodec codec = AudioCodecs.byId(frame.codecId);
+            if (codec == null || !AudioProfile.isSampleRate(frame.sampleRate)) {
+                metrics.mixInputDrops.increment();
+                tracer.trace(PacketTracer.Event.MIX_DROPPED, frame.clientId, frame.sequenceNumber, 0, "unknown codec or sample rate", null);
+            } else if (!state.mixInput.offer(codec, frame.buf, frame.audioOffset, frame.audioLength, frame.sampleRate)) {
+                metrics.mixInputDrops.increment();
+                tracer.trace(PacketTracer.Event.MIX_DROPPED, frame.clientId, frame.sequenceNumber, 0, "mixer fell behind", null);
+            }
+            return;
+        }
+        if (state.gated) {
+            // frames were held back: mark this one as starting a talkspurt so the gap is not a
+            // loss; version 1 headers have no flags, so their listeners still see one
+            state.gated = false;
+            if (frame.version == PacketHeader.VERSION_2) {
+                frame.flags |= PacketHeader.FLAG_MARKER;
+                frame.buf.put(1, (byte) frame.flags);
+            }
+        }
+        state.retransmits.store(frame); // kept for listeners that lose it
+        java.nio.ByteBuffer wire = frame.wire();
+        java.nio.ByteBuffer legacy = null;
+        boolean bare = isBare(frame);
+        int pieces = -1; // of the bare form, once built
+        RoutingTable table = state.routes;
+        int sent = 0;
+        for (int i = 0; i < table.size(); i++) {
+            if (table.clientId(i) == frame.clientId) continue; // skip sender
+            InetSocketAddress target = table.target(i);
+            ClientState member = table.member(i);
+            if (member != null && member.bareAudio && !bare) {
+                if (pieces < 0) pieces = bareWire(state, frame);
+                if (pieces > 0 && sendBare(state, pieces, frame, target)) sent++;
+                continue;
+            }
+            boolean v1 = frame.version == PacketHeader.VERSION_2 && member != null && member.headerVersion < PacketHeader.VERSION_2;
+            if (v1 && legacy == null) legacy = legacyWire(state.legacyWire, frame.buf, frame.header());
+            java.nio.ByteBuffer out = v1 ? legacy : wire;
+            try {
+                transport.send(out, target);
+                metrics.sent(out.remaining());
+                sent++;
+            } catch (IOException e) {
+                metrics.sendErrors.increment();
+                tracer.trace(PacketTracer.Event.SEND_FAILED, frame.clientId, frame.sequenceNumber, 0, target, e);
+            }
+        }
+        if (sent > 0) metrics.ingestToSend.record(System.nanoTime() - frame.receivedNanos);
+        tracer.trace(PacketTracer.Event.FORWARDED, frame.clientId, frame.sequenceNumber, sent, null, null);
+    }
 
-    // 4 byte client ID, 4 bytes sequence number, 2 bytes audio data length, then audio bytes
     /**
-     * Deserializes an audio packet from the custom 10-byte header plus payload.
+     * Deserializes an audio packet from either version of the {@link PacketHeader} plus payload.
      * <p>
-     * Header layout (big-endian):
+     * Version 1 header layout (big-endian):
      * <pre>
      * 4 bytes clientId, 4 bytes sequenceNumber, 2 bytes audioDataLength, followed by audioData
      * </pre>
@@ -792,29 +1767,13 @@ public class Server{
      * @throws IllegalArgumentException if the packet is malformed
      */
     AudioPacket deserializeAudioPacket(byte[] data) {
-        final int HEADER_SIZE = 10; // 4 (clientId) + 4 (seq) + 2 (len)
-        if (data == null || data.length < HEADER_SIZE) {
+        if (data == null) {
             throw new IllegalArgumentException("Packet too short for header");
         }
-
-        int clientId = ((data[0] & 0xFF) << 24)
-                     | ((data[1] & 0xFF) << 16)
-                     | ((data[2] & 0xFF) << 8)
-                     | (data[3] & 0xFF);
-
-        int sequenceNumber = ((data[4] & 0xFF) << 24)
-                        |    ((data[5] & 0xFF) << 16)
-                        |    ((data[6] & 0xFF) << 8)
-                        |    (data[7] & 0xFF);
-
-        int audioDataLength = ((data[8] & 0xFF) << 8) | (data[9] & 0xFF);
-
-        if (audioDataLength < 0 || audioDataLength > data.length - HEADER_SIZE) {
-            throw new IllegalArgumentException("Audio data length exceeds packet size");
-        }
-
-        byte[] audioData = Arrays.copyOfRange(data, HEADER_SIZE, HEADER_SIZE + audioDataLength);
-        return new AudioPacket(clientId, sequenceNumber, audioData);
+        PacketHeader header = new PacketHeader();
+        header.parse(java.nio.ByteBuffer.wrap(data), data.length);
+        byte[] audioData = Arrays.copyOfRange(data, header.payloadOffset, header.payloadOffset + header.payloadLength);
+        return new AudioPacket(header.clientId, header.sequenceNumber, audioData);
     }
 
     /**
@@ -854,6 +1813,7 @@ public class Server{
      */
     private boolean addressesMatch(InetAddress a, InetAddress b) {
         if (a == null || b == null) return false;
+        if (a.equals(b)) return true; // every packet of a registered client; formats nothing
         // Treat IPv4 loopback 127.0.0.1 and IPv6 loopback ::1 as equivalent
         if (a.isLoopbackAddress() && b.isLoopbackAddress()) {
             String ha = a.getHostAddress();
@@ -862,30 +1822,14 @@ public class Server{
             if (("::1".equals(ha) && hb.startsWith("127.")) || ("::1".equals(hb) && ha.startsWith("127."))) {
                 return true;
             }
-            // otherwise fall through to exact match (so 127.0.0.1 != 127.0.0.2)
+            // otherwise no match (so 127.0.0.1 != 127.0.0.2)
         }
-        return a.equals(b);
+        return false;
     }
 
 }
 
 
-/**
- * Per-client state tracked by the server for presence and forwarding decisions.
- */
-class ClientState {
-    int clientId; 
-    int clientPort; 
-    InetAddress clientAddress; 
-    String username;
-    int expectedSeq = 0; 
-    ClientStatus status = ClientStatus.ACTIVE; // could be ACTIVE, MUTED, LEFT, DISCONNECTED
-    NavigableMap<Integer, AudioPacket> buffer = new TreeMap<>(); 
-        // holds packets keyed by sequence number
-    long lastHeard; // timestamp of last packet from this client
-}
-
-
 /**
  * Simple audio packet model used internally by the server for buffering/forwarding.
  */
@@ -909,13 +1853,3 @@ class AudioPacket {
         this.timestamp = System.currentTimeMillis();
     }
 }
-
-/**
- * Enumerates possible client states used by the server.
- */
-enum ClientStatus {
-    ACTIVE,
-    MUTED,
-    LEFT,
-    DISCONNECTED
-}
@@ -0,0 +1,65 @@
+package com.audiostreaming;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and latency histogram of the server's data plane.
+ * <p>
+ * Written from the receive threads, the lanes and the scheduler at packet rate, so every counter
+ * is a {@link LongAdder}: an increment is a single uncontended CAS on a per-thread stripe, and
+ * nothing is allocated once the stripes exist. Counters only grow; readers take
+ * {@link LongAdder#sum()} at any time. Exposed through {@link ServerMetricsMXBean} and the
+ * {@code STATS} control command.
+ * </p>
+ */
+final class ServerMetrics {
+    /** Datagrams read from the UDP transport. */
+    final LongAdder packetsReceived = new LongAdder();
+    /** Bytes of the datagrams read from the UDP transport. */
+    final LongAdder bytesReceived = new LongAdder();
+    /** Datagrams that could not be parsed. */
+    final LongAdder malformed = new LongAdder();
+    /** Audio frames from client ids without a registration. */
+    final LongAdder unknownClient = new LongAdder();
+    /** Audio frames from clients that are muted, left or disconnected. */
+    final LongAdder inactiveClient = new LongAdder();
+    /** Audio frames from an address other than the client's registered one. */
+    final LongAdder addressMismatch = new LongAdder();
+    /** Audio frames refused by a reorder window as late or duplicate. */
+    final LongAdder lateOrDuplicate = new LongAdder();
+    /** Buffered frames a reorder window released to make room for newer ones. */
+    final LongAdder reorderEvicted = new LongAdder();
+    /** Head-of-line gaps skipped because the reorder deadline passed. */
+    final LongAdder skippedGaps = new LongAdder();
+    /** Missing sequence numbers given up on by deadline skipping. */
+    final LongAdder skippedSequences = new LongAdder();
+    /** Datagrams handed to the UDP transport: forwarded and mixed frames, retransmissions and reports. */
+    final LongAdder packetsSent = new LongAdder();
+    /** Bytes of the datagrams handed to the UDP transport. */
+    final LongAdder bytesSent = new LongAdder();
+    /** Talker frames not mixed because the mixer fell behind or cannot decode them (MCU mode). */
+    final LongAdder mixInputDrops = new LongAdder();
+    /** Sends the UDP transport failed. */
+    final LongAdder sendErrors = new LongAdder();
+    /** Packets sent again to listeners that reported them lost. */
+    final LongAdder retransmitted = new LongAdder();
+    /** Retransmission requests for packets no longer cached. */
+    final LongAdder retransmitMisses = new LongAdder();
+    /** Retransmission requests refused because the listener exceeded its retransmit rate. */
+    final LongAdder retransmitsThrottled = new LongAdder();
+    /**
+     * Time from a frame's arrival to the send to its last listener, including the time it
+     * waited in the lane queue and the reorder window.
+     */
+    final LatencyHistogram ingestToSend = new LatencyHistogram();
+
+    /**
+     * Counts one datagram handed to the transport.
+     *
+     * @param bytes size of the datagram
+     */
+    void sent(int bytes) {
+        packetsSent.increment();
+        bytesSent.add(bytes);
+    }
+}
@@ -0,0 +1,117 @@
+package com.audiostreaming;
+
+import java.util.Map;
+
+/**
+ * Management interface of a running {@link Server}, registered with the platform MBean server as
+ * {@code com.audiostreaming:type=Server,port=<udp port>}.
+ * <p>
+ * Counters are cumulative since the server started; latencies are in milliseconds. Attributes
+ * are read on demand from the server's lock-free counters, so polling them from JConsole or a
+ * JMX exporter does not slow down the data plane.
+ * </p>
+ */
+public interface ServerMetricsMXBean {
+    /** @return datagrams received on the UDP port */
+    long getPacketsReceived();
+
+    /** @return bytes received on the UDP port */
+    long getBytesReceived();
+
+    /** @return datagrams sent: forwarded and mixed frames, retransmissions and reports */
+    long getPacketsSent();
+
+    /** @return bytes sent on the UDP port */
+    long getBytesSent();
+
+    /** @return sends that failed */
+    long getSendErrors();
+
+    /** @return mixed frames sent in MCU mode */
+    long getMixedFramesSent();
+
+    /** @return talker frames not mixed in MCU mode because the mixer fell behind or cannot decode them */
+    long getMixInputDrops();
+
+    /** @return datagrams dropped because they could not be parsed */
+    long getMalformedPackets();
+
+    /** @return frames dropped because their client id is not registered */
+    long getUnknownClientDrops();
+
+    /** @return frames dropped because their sender is muted, left or disconnected */
+    long getInactiveClientDrops();
+
+    /** @return frames dropped because they came from an unregistered address */
+    long getAddressMismatchDrops();
+
+    /** @return frames dropped as late or duplicate by a reorder window */
+    long getLateOrDuplicateDrops();
+
+    /** @return buffered frames evicted from reorder windows to make room */
+    long getReorderEvictions();
+
+    /** @return head-of-line gaps skipped at the reorder deadline */
+    long getSkippedGaps();
+
+    /** @return missing sequence numbers given up on at the reorder deadline */
+    long getSkippedSequences();
+
+    /** @return frames dropped because their lane queue was full */
+    long getRejectedSubmissions();
+
+    /** @return packets retransmitted in answer to NACKs */
+    long getRetransmits();
+
+    /** @return NACKed packets that were no longer cached */
+    long getRetransmitMisses();
+
+    /** @return NACKed packets not resent because the listener asked for too many */
+    long getRetransmitsThrottled();
+
+    /** @return frame buffers allocated because the pool was exhausted */
+    long getFrameAllocations();
+
+    /** @return frame buffers idle in the pool; a value that keeps falling means frames leak */
+    int getFreeFrames();
+
+    /** @return registered clients, in a call or not */
+    int getClientCount();
+
+    /** @return data plane trace events dropped because the trace buffer was full */
+    long getTraceEventsDropped();
+
+    /** @return the lowest level of data plane events traced, a {@link java.util.logging.Level} name */
+    String getTraceLevel();
+
+    /**
+     * Changes how much of the data plane is traced, see {@link Server#setTraceLevel}.
+     *
+     * @param level a {@link java.util.logging.Level} name such as {@code FINE} or {@code OFF}
+     */
+    void setTraceLevel(String level);
+
+    /** @return frames waiting in each lane's queue, by lane index */
+    int[] getLaneQueueDepths();
+
+    /** @return frames each client has waiting in its reorder window, by client id */
+    Map<Integer, Integer> getClientQueueDepths();
+
+    /** @return frames whose ingest-to-send latency was recorded */
+    long getIngestToSendCount();
+
+    /** @return mean ingest-to-send latency */
+    double getIngestToSendMeanMs();
+
+    /** @return median ingest-to-send latency */
+    double getIngestToSendP50Ms();
+
+    /** @return 90th percentile ingest-to-send latency */
+    double getIngestToSendP90Ms();
+
+    /** @return 99th percentile ingest-to-send latency */
+    double getIngestToSendP99Ms();
+
+    /** @return largest ingest-to-send latency */
+    double getIngestToSendMaxMs();
+}
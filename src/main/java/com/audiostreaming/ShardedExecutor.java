@@ -0,0 +1,156 @@
+package com.audiostreaming;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Single-writer executor for the server data plane.
+ * <p>
+ * Frames are sharded by sender {@code clientId}: every frame from a given client lands on the same
+ * lane, and each lane is drained by exactly one thread. Per-sender ordering is therefore
+ * preserved end to end, and the sender's sequencing state is only ever touched by its own lane,
+ * so it needs no locking. Hand-off uses a lock-free {@link MpscQueue} per lane; an idle lane
+ * parks until a producer wakes it. Each lane also runs a periodic tick task on its own thread,
+ * busy or idle, for time-driven work on lane-owned state.
+ * </p>
+ */
+final class ShardedExecutor {
+    private static final Logger logger = Logger.getLogger(ShardedExecutor.class.getName());
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final Lane[] lanes;
+    private final Consumer<Frame> handler;
+    private final IntConsumer tickTask;
+    private final long tickNanos;
+    private final AtomicLong rejected = new AtomicLong();
+    private volatile boolean running = true;
+
+    /**
+     * Creates and starts the lanes.
+     *
+     * @param laneCount number of lanes (threads)
+     * @param queueCapacity capacity of each lane's hand-off queue
+     * @param handler invoked on the lane thread for each frame; takes ownership of the frame
+     * @param tickTask invoked on each lane thread with the lane index every {@code tickNanos}
+     * @param tickNanos tick period in nanoseconds
+     * @param namePrefix prefix for lane thread names
+     */
+    ShardedExecutor(int laneCount, int queueCapacity, Consumer<Frame> handler, IntConsumer tickTask, long tickNanos, String namePrefix) {
+        this.handler = handler;
+        this.tickTask = tickTask;
+        this.tickNanos = tickNanos;
+        this.lanes = new Lane[Math.max(1, laneCount)];
+        for (int i = 0; i < lanes.length; i++) {
+            lanes[i] = new Lane(i, queueCapacity);
+            Thread t = new Thread(lanes[i], namePrefix + i);
+            t.setDaemon(true);
+            lanes[i].thread = t;
+        }
+        for (Lane lane : lanes) lane.thread.start();
+    }
+
+    /**
+     * Queues a frame on the lane owning {@code frame.clientId}.
+     *
+     * @param frame a frame whose header has been parsed
+     * @return false if the lane is full or the executor is shut down; the caller keeps ownership
+     */
+    boolean dispatch(Frame frame) {
+        if (!running) return false;
+        Lane lane = lanes[laneIndex(frame.clientId)];
+        if (!lane.queue.offer(frame)) {
+            rejected.incrementAndGet();
+            return false;
+        }
+        if (lane.waiting) LockSupport.unpark(lane.thread);
+        return true;
+    }
+
+    int laneIndex(int clientId) {
+        return Math.floorMod(clientId, lanes.length);
+    }
+
+    /** @return number of lanes */
+    int getLaneCount() {
+        return lanes.length;
+    }
+
+    /**
+     * @param lane lane index
+     * @return approximate number of frames queued on that lane
+     */
+    int getQueueDepth(int lane) {
+        return lanes[lane].queue.size();
+    }
+
+    /** @return number of frames refused because a lane queue was full */
+    long getRejectedCount() {
+        return rejected.get();
+    }
+
+    /**
+     * Stops all lanes, releasing any frames still queued.
+     *
+     * @param timeout maximum time to wait for each lane thread
+     * @param unit unit of {@code timeout}
+     * @throws InterruptedException if interrupted while waiting
+     */
+    void shutdown(long timeout, TimeUnit unit) throws InterruptedException {
+        running = false;
+        for (Lane lane : lanes) LockSupport.unpark(lane.thread);
+        for (Lane lane : lanes) lane.thread.join(unit.toMillis(timeout));
+    }
+
+    private final class Lane implements Runnable {
+        final int index;
+        final MpscQueue<Frame> queue;
+        Thread thread;
+        volatile boolean waiting;
+
+        Lane(int index, int capacity) {
+            this.index = index;
+            this.queue = new MpscQueue<>(capacity);
+        }
+
+        @Override
+        public void run() {
+            long nextTick = System.nanoTime() + tickNanos;
+            while (running) {
+                Frame frame = queue.poll();
+                if (frame == null) {
+                    waiting = true;
+                    // re-check after publishing the flag so a concurrent offer is never missed
+                    frame = queue.poll();
+                    if (frame == null) {
+                        long untilTick = nextTick - System.nanoTime();
+                        if (untilTick > 0) LockSupport.parkNanos(this, Math.min(IDLE_PARK_NANOS, untilTick));
+                    }
+                    waiting = false;
+                }
+                if (frame != null) {
+                    try {
+                        handler.accept(frame);
+                    } catch (RuntimeException e) {
+                        logger.log(Level.WARNING, "[LANE] - Uncaught error on " + Thread.currentThread().getName(), e);
+                    }
+                }
+                long now = System.nanoTime();
+                if (now - nextTick >= 0) {
+                    nextTick = now + tickNanos;
+                    try {
+                        tickTask.accept(index);
+                    } catch (RuntimeException e) {
+                        logger.log(Level.WARNING, "[LANE] - Tick error on " + Thread.currentThread().getName(), e);
+                    }
+                }
+            }
+            Frame leftover;
+            while ((leftover = queue.poll()) != null) leftover.release();
+        }
+    }
+}
@@ -11,7 +11,9 @@ import java.util.concurrent.atomic.AtomicBoolean;
  * Manages the TCP control channel for communication with the server.
  * <p>
  * Handles registration, sending commands (MUTE, UNMUTE, JOIN, LEAVE),
- * and receiving server messages (OK, PRESENCE, etc.).
+ * and receiving server messages (OK, PRESENCE, ROOM, etc.).
+ * Registration options set with {@link #setRegisterOption(String, String)} (such as the room)
+ * are appended to every REGISTER, including re-registrations after a reconnect.
  * </p>
  */
 public class TcpControlChannel {
@@ -25,6 +27,9 @@ public class TcpControlChannel {
     private final AtomicBoolean isConnected = new AtomicBoolean(false);
     private final BlockingQueue<Integer> registerQueue = new ArrayBlockingQueue<>(1);
     private final CopyOnWriteArrayList<Consumer<String>> serverListeners = new CopyOnWriteArrayList<>();
+    private final java.util.Map<String, String> registerOptions = java.util.Collections.synchronizedMap(new java.util.LinkedHashMap<>());
+    // KEY=VALUE fields of the last OK reply, e.g. the negotiated CODEC
+    private final java.util.Map<String, String> registerReply = new java.util.concurrent.ConcurrentHashMap<>();
 
     /**
      * Constructs a TcpControlChannel with the specified server connection details.
@@ -96,6 +101,10 @@ public class TcpControlChannel {
                 if (line.startsWith("OK")) {
                     // Update clientId from server if available
                     String[] parts = line.split(" ");
+                    for (int i = 2; i < parts.length; i++) {
+                        int eq = parts[i].indexOf('=');
+                        if (eq > 0) registerReply.put(parts[i].substring(0, eq), parts[i].substring(eq + 1));
+                    }
                     if (parts.length > 1) {
                         try {
                             int id = Integer.parseInt(parts[1]);
@@ -160,6 +169,30 @@ public class TcpControlChannel {
         return false;
     }
 
+    /**
+     * Sets a KEY=VALUE option sent with every subsequent REGISTER (for example {@code ROOM}).
+     *
+     * @param key the option name
+     * @param value the option value, or null to stop sending the option
+     */
+    public void setRegisterOption(String key, String value) {
+        if (value == null) {
+            registerOptions.remove(key);
+        } else {
+            registerOptions.put(key, value.replaceAll("\\s+", "_"));
+        }
+    }
+
+    /**
+     * Returns a KEY=VALUE field of the server's last OK reply to REGISTER.
+     *
+     * @param key the field name, e.g. {@code CODEC}
+     * @return the value, or null if the server did not send it
+     */
+    public String getRegisterReplyOption(String key) {
+        return registerReply.get(key);
+    }
+
     /**
      * Send REGISTER and block until the server replies with OK &lt;id&gt; or timeout.
      * Returns assigned id or -1 on timeout/failure.
@@ -175,8 +208,13 @@ public class TcpControlChannel {
         if (out == null || !isConnected.get()) return -1;
         // clear any stale queued ids before sending a new REGISTER
         registerQueue.clear();
+        registerReply.clear();
         String uname = (username == null) ? "" : username.replaceAll("\\s+", "_");
-        String cmd = "REGISTER " + udpPort + (uname.isEmpty() ? "" : " " + uname);
+        StringBuilder cmd = new StringBuilder("REGISTER ").append(udpPort);
+        if (!uname.isEmpty()) cmd.append(' ').append(uname);
+        synchronized (registerOptions) {
+            registerOptions.forEach((k, v) -> cmd.append(' ').append(k).append('=').append(v));
+        }
         out.println(cmd);
         System.out.println("Sent TCP command: " + cmd + " (waiting for OK)");
         try {
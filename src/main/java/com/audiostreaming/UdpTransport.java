@@ -0,0 +1,56 @@
+package com.audiostreaming;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+
+/**
+ * UDP endpoint used by the {@link Server} data plane.
+ * <p>
+ * A transport exposes one or more independent receivers, each meant to be driven by its own
+ * thread, and a thread-safe send operation. Implementations:
+ * <ul>
+ *   <li>{@link DatagramSocketTransport}: a single blocking {@link java.net.DatagramSocket}</li>
+ *   <li>{@link DatagramChannelTransport}: several NIO channels sharing one port via SO_REUSEPORT</li>
+ * </ul>
+ */
+interface UdpTransport {
+
+    /** @return the local UDP port the transport is bound to */
+    int getLocalPort();
+
+    /** @return the number of receivers; valid receiver indexes are {@code 0..count-1} */
+    int getReceiverCount();
+
+    /**
+     * @return whether frames for this transport must be backed by direct buffers
+     */
+    boolean usesDirectBuffers();
+
+    /**
+     * Blocks until a datagram arrives on the given receiver and stores it in {@code frame},
+     * filling its buffer, length and source endpoint.
+     *
+     * @param receiver receiver index
+     * @param frame destination frame
+     * @return true if a datagram was received, false if nothing was read
+     * @throws IOException on I/O errors, including the transport being closed
+     */
+    boolean receive(int receiver, Frame frame) throws IOException;
+
+    /**
+     * Sends the remaining bytes of {@code data} to {@code target}. The buffer's position and
+     * limit are left unchanged so the same buffer can be sent to several targets.
+     *
+     * @param data the datagram bytes between position and limit
+     * @param target destination endpoint
+     * @throws IOException if the send fails
+     */
+    void send(ByteBuffer data, InetSocketAddress target) throws IOException;
+
+    /** @return whether the transport has been closed */
+    boolean isClosed();
+
+    /** Closes the transport, unblocking any receivers. */
+    void close();
+}
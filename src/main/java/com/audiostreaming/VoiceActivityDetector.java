@@ -0,0 +1,104 @@
+package com.audiostreaming;
+
+/**
+ * Energy and zero-crossing based voice activity detector for 16-bit little-endian mono PCM.
+ * <p>
+ * A frame counts as speech when its level is clearly above a slowly adapting estimate of the
+ * background noise, or somewhat above it with a high zero-crossing rate (unvoiced consonants
+ * such as "s" or "f" carry little energy but cross zero often). After speech ends the detector
+ * keeps reporting speech for a short hangover so word endings are not clipped.
+ * </p>
+ * <p>
+ * Used by {@link AudioHandler} for discontinuous transmission (DTX): frames judged silent are
+ * not sent. Not thread-safe; one instance per capture thread.
+ * </p>
+ */
+final class VoiceActivityDetector {
+    /** Time still reported as speech after the last speech frame. */
+    static final int HANGOVER_MS = 160;
+    // how far above the noise floor a frame must be to count as speech
+    private static final int SPEECH_MARGIN_DB = 9;
+    // a weaker frame still counts if it crosses zero this often (fraction of sample pairs at 8 kHz)
+    private static final double UNVOICED_ZCR_8K = 0.25;
+    // frames quieter than this are never speech, whatever the noise floor
+    private static final int ABSOLUTE_SILENCE_DBOV = 75;
+    // starting noise floor, a quiet room with a typical microphone
+    private static final double INITIAL_NOISE_FLOOR_DBOV = 60;
+
+    private final int hangoverFrames;
+    private final double unvoicedZcr;
+    private double noiseFloor = INITIAL_NOISE_FLOOR_DBOV; // -dBov, larger is quieter
+    private int hangover;
+    private int lastLevel = PacketExtensions.LEVEL_SILENCE;
+
+    /**
+     * @param profile sample rate and frame duration of the analysed frames
+     */
+    VoiceActivityDetector(AudioProfile profile) {
+        this.hangoverFrames = Math.max(1, HANGOVER_MS / profile.frameMs());
+        // the same sound crosses zero less often per sample at higher sample rates
+        this.unvoicedZcr = UNVOICED_ZCR_8K * 8000 / profile.sampleRate();
+    }
+
+    /**
+     * Classifies one captured frame and updates the noise estimate.
+     *
+     * @param pcm PCM bytes
+     * @param offset index of the first byte
+     * @param length number of bytes
+     * @return true if the frame should be transmitted as speech
+     */
+    boolean isSpeech(byte[] pcm, int offset, int length) {
+        int level = PcmMixer.levelDbov(pcm, offset, length);
+        lastLevel = level;
+        boolean active = false;
+        if (level < ABSOLUTE_SILENCE_DBOV) {
+            double aboveFloor = noiseFloor - level;
+            active = aboveFloor >= SPEECH_MARGIN_DB
+                || (aboveFloor >= SPEECH_MARGIN_DB / 2.0 && zeroCrossingRate(pcm, offset, length) >= unvoicedZcr);
+        }
+        if (active) {
+            // creep towards the level even during speech so a lasting louder background
+            // (a fan switching on) is eventually learned as noise instead of speech
+            noiseFloor += (level - noiseFloor) * 0.002;
+            hangover = hangoverFrames;
+            return true;
+        }
+        // track the background: drop to quieter levels at once, rise slowly so speech does not
+        // pull the floor up
+        if (level > noiseFloor) {
+            noiseFloor = level;
+        } else {
+            noiseFloor += (level - noiseFloor) * 0.05;
+        }
+        if (hangover > 0) {
+            hangover--;
+            return true;
+        }
+        return false;
+    }
+
+    /** @return level of the last classified frame in -dBov */
+    int getLastLevel() {
+        return lastLevel;
+    }
+
+    /** @return current background noise estimate in -dBov, rounded */
+    int getNoiseLevel() {
+        return (int) Math.round(Math.min(PacketExtensions.LEVEL_SILENCE, Math.max(0, noiseFloor)));
+    }
+
+    static double zeroCrossingRate(byte[] pcm, int offset, int length) {
+        int n = length >> 1;
+        if (n < 2) return 0;
+        int crossings = 0;
+        int prev = (short) ((pcm[offset] & 0xFF) | (pcm[offset + 1] << 8));
+        for (int i = 1; i < n; i++) {
+            int p = offset + (i << 1);
+            int s = (short) ((pcm[p] & 0xFF) | (pcm[p + 1] << 8));
+            if ((s >= 0) != (prev >= 0)) crossings++;
+            prev = s;
+        }
+        return (double) crossings / (n - 1);
+    }
+}
@@ -30,6 +30,7 @@ public class VoiceChatClient {
 
     private final AtomicBoolean isMute = new AtomicBoolean(false);
     private String username = "Guest";
+    private volatile String room = "General";
 
     private java.util.function.Consumer<String> serverMessageListener;
 
@@ -76,6 +77,10 @@ public class VoiceChatClient {
         this.serverUdpPort = serverUdpPort;
         try {
             tcpChannel = new TcpControlChannel(this.serverIp, this.tcpPort, -1);
+            tcpChannel.setRegisterOption("CODECS", AudioCodecs.DEFAULT_OFFER);
+            tcpChannel.setRegisterOption("PROFILE", AudioProfile.DEFAULT_OFFER);
+            tcpChannel.setRegisterOption("HEADERS", PacketHeader.DEFAULT_OFFER);
+            tcpChannel.addServerListener(this::onServerLine);
             serverAddr = InetAddress.getByName(this.serverIp);
         } catch (UnknownHostException e) {
             logger.log(Level.SEVERE, "Initialization Error: " + e.getMessage(), e);
@@ -119,7 +124,7 @@ public class VoiceChatClient {
 
             // 3. Create AudioHandler with the pre-bound socket and assigned id
             try {
-                audioHandler = new AudioHandler(serverAddr, serverUdpPort, udpSocket, assignedId, isMute);
+                audioHandler = new AudioHandler(serverAddr, serverUdpPort, udpSocket, assignedId, isMute, negotiatedProfile());
             } catch (LineUnavailableException lue) {
                 logger.log(Level.SEVERE, "Audio device unavailable: " + lue.getMessage(), lue);
                 udpSocket.close();
@@ -127,12 +132,15 @@ public class VoiceChatClient {
                 return;
             }
 
+            audioHandler.setCodec(negotiatedCodec());
+            audioHandler.setHeaderVersion(negotiatedHeaderVersion());
+
             // 4. Start streaming/receiving
             audioHandler.startStreaming();
             audioHandler.startReceiving();
 
-            // 5. Send JOIN
-            tcpChannel.sendCommand("JOIN");
+            // 5. Send JOIN for our room
+            tcpChannel.sendCommand("JOIN " + room);
 
             // hook up server listener if UI registered one
             if (serverMessageListener != null) {
@@ -180,9 +188,15 @@ public class VoiceChatClient {
                                 if (tcpChannel.connect()) {
                                     int newId = tcpChannel.registerAndWait(localUdpPort, 3000);
                                     if (newId > 0) {
-                                        tcpChannel.sendCommand("JOIN");
+                                        tcpChannel.sendCommand("JOIN " + room);
                                         if (audioHandler != null) {
                                             audioHandler.setAssignedClientId(newId);
+                                            audioHandler.setCodec(negotiatedCodec());
+                                            audioHandler.setHeaderVersion(negotiatedHeaderVersion());
+                                            if (!negotiatedProfile().equals(audioHandler.getProfile())) {
+                                                // the audio lines stay open in the old format; peers resample it
+                                                logger.warning("Server chose another audio profile after reconnect; keeping " + audioHandler.getProfile());
+                                            }
                                             audioHandler.startStreaming();
                                             audioHandler.startReceiving();
                                         }
@@ -304,6 +318,61 @@ public class VoiceChatClient {
 
     public void setUsername(String username) { this.username = username == null ? "Guest" : username; }
 
+    /**
+     * Selects the room (voice channel) to talk in. Before joining this only sets the room sent
+     * with REGISTER; while in a call the client is moved to the new room immediately.
+     *
+     * @param room the room name; blank selects the default room
+     */
+    public void setRoom(String room) {
+        String r = room == null ? "" : room.trim().replaceAll("\\s+", "_");
+        this.room = r.isEmpty() ? "General" : r;
+        if (tcpChannel == null) return;
+        tcpChannel.setRegisterOption("ROOM", this.room);
+        if (audioHandler != null && tcpChannel.isConnected()) {
+            tcpChannel.sendCommand("JOIN " + this.room);
+        }
+    }
+
+    // codec the server chose from our CODECS offer; servers that do not negotiate get PCM
+    private AudioCodec negotiatedCodec() {
+        AudioCodec c = AudioCodecs.byName(tcpChannel.getRegisterReplyOption("CODEC"));
+        if (c == null) c = AudioCodecs.PCM;
+        logger.log(Level.INFO, "Sending audio as {0}", c.name());
+        return c;
+    }
+
+    // header version the server chose from our HEADERS offer; servers that do not negotiate get version 1
+    private int negotiatedHeaderVersion() {
+        String v = tcpChannel.getRegisterReplyOption("HEADER");
+        return String.valueOf(PacketHeader.VERSION_2).equals(v) ? PacketHeader.VERSION_2 : 1;
+    }
+
+    // profile the server chose from our PROFILE offer; servers that do not negotiate get 8 kHz/20 ms
+    private AudioProfile negotiatedProfile() {
+        AudioProfile p = AudioProfile.parse(tcpChannel.getRegisterReplyOption("PROFILE"));
+        if (p == null) p = AudioProfile.DEFAULT;
+        logger.log(Level.INFO, "Using audio profile {0}", p);
+        return p;
+    }
+
+    /**
+     * Returns the room (voice channel) this client joins.
+     *
+     * @return the room name
+     */
+    public String getRoom() { return room; }
+
+    // A sender that left stops being played and reported right away rather than after a timeout
+    private void onServerLine(String line) {
+        if (!line.startsWith("PRESENCE REMOVE ")) return;
+        AudioHandler handler = audioHandler;
+        if (handler == null) return;
+        try {
+            handler.removeSender(Integer.parseInt(line.substring("PRESENCE REMOVE ".length()).trim()));
+        } catch (NumberFormatException ignored) { /* Ignore malformed presence lines */ }
+    }
+
     public void addServerMessageListener(java.util.function.Consumer<String> listener) {
         this.serverMessageListener = listener;
         // If the control channel is already connected, register immediately so listeners
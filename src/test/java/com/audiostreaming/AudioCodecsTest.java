@@ -0,0 +1,63 @@
+package com.audiostreaming;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+import org.junit.jupiter.api.Test;
+
+class AudioCodecsTest {
+    private static final AudioCodec[] CODECS = {AudioCodecs.PCM, AudioCodecs.PCMU, AudioCodecs.PCMA, AudioCodecs.ADPCM};
+
+    private static short[] tone(int samples) {
+        short[] pcm = new short[samples];
+        for (int i = 0; i < samples; i++) pcm[i] = (short) (8000 * Math.sin(2 * Math.PI * 440 * i / 8000.0));
+        return pcm;
+    }
+
+    @Test
+    void roundTripKeepsTheSampleCount() {
+        for (AudioCodec codec : CODECS) {
+            for (int samples : new int[] {1, 2, 159, 160, 161, 320, 480}) {
+                short[] pcm = tone(samples);
+                ByteBuffer buf = ByteBuffer.allocate(codec.encodedSize(samples) + 16);
+                int encoded = codec.encode(pcm, samples, buf);
+                assertEquals(codec.encodedSize(samples), encoded, codec.name() + " encoded size of " + samples);
+                short[] decoded = new short[samples + 16];
+                assertEquals(samples, codec.decode(buf, 0, encoded, decoded), codec.name() + " decoded samples of " + samples);
+            }
+        }
+    }
+
+    @Test
+    void roundTripStaysCloseToTheInput() {
+        short[] pcm = tone(160);
+        for (AudioCodec codec : CODECS) {
+            ByteBuffer buf = ByteBuffer.allocate(codec.encodedSize(pcm.length));
+            int encoded = codec.encode(pcm, pcm.length, buf);
+            short[] decoded = new short[pcm.length];
+            codec.decode(buf, 0, encoded, decoded);
+            long error = 0;
+            for (int i = 0; i < pcm.length; i++) error += Math.abs(pcm[i] - decoded[i]);
+            assertTrue(error / pcm.length < 400, codec.name() + " mean error " + error / pcm.length);
+        }
+    }
+
+    @Test
+    void decodeStopsWhenTheDestinationIsFull() {
+        short[] pcm = tone(160);
+        for (AudioCodec codec : CODECS) {
+            ByteBuffer buf = ByteBuffer.allocate(codec.encodedSize(pcm.length));
+            int encoded = codec.encode(pcm, pcm.length, buf);
+            assertEquals(80, codec.decode(buf, 0, encoded, new short[80]), codec.name());
+        }
+    }
+
+    @Test
+    void negotiationPicksTheFirstSupportedCodec() {
+        assertEquals(AudioCodecs.PCMA, AudioCodecs.negotiate("OPUS, pcma,PCMU"));
+        assertEquals(AudioCodecs.PCM, AudioCodecs.negotiate("OPUS"));
+        assertEquals(AudioCodecs.PCM, AudioCodecs.negotiate(null));
+        assertEquals(AudioCodecs.ADPCM, AudioCodecs.byId(AudioCodecs.ADPCM.id()));
+    }
+}
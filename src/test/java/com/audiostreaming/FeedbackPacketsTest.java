@@ -0,0 +1,58 @@
+package com.audiostreaming;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import org.junit.jupiter.api.Test;
+
+class FeedbackPacketsTest {
+    private static int[] nacked(ByteBuffer nack, int limit) {
+        int[] seqs = new int[limit];
+        int n = FeedbackPackets.nackedSequences(nack, 0, nack.position(), seqs);
+        return Arrays.copyOf(seqs, n);
+    }
+
+    @Test
+    void expandsTheBitmaskAfterTheFirstLostSequence() {
+        ByteBuffer nack = ByteBuffer.allocate(64);
+        FeedbackPackets.putNack(nack, 10, 0b101);
+        FeedbackPackets.putNack(nack, 100, 0x8000);
+        assertArrayEquals(new int[] {10, 11, 13, 100, 116}, nacked(nack, 32));
+    }
+
+    @Test
+    void expandsAcrossTheSequenceWrap() {
+        ByteBuffer nack = ByteBuffer.allocate(64);
+        FeedbackPackets.putNack(nack, Integer.MAX_VALUE, 0b1);
+        assertArrayEquals(new int[] {Integer.MAX_VALUE, Integer.MIN_VALUE}, nacked(nack, 32));
+    }
+
+    @Test
+    void namesEachSequenceOnce() {
+        ByteBuffer nack = ByteBuffer.allocate(64);
+        FeedbackPackets.putNack(nack, 5, 0b11);
+        FeedbackPackets.putNack(nack, 6, 0b1);
+        FeedbackPackets.putNack(nack, 5, 0);
+        assertArrayEquals(new int[] {5, 6, 7}, nacked(nack, 32));
+    }
+
+    @Test
+    void stopsAtTheLimit() {
+        ByteBuffer nack = ByteBuffer.allocate(1500);
+        for (int i = 0; i < 200; i++) FeedbackPackets.putNack(nack, i * FeedbackPackets.NACK_ENTRY_SPAN, 0xFFFF);
+        assertEquals(RetransmitCache.CAPACITY, nacked(nack, RetransmitCache.CAPACITY).length);
+        ByteBuffer repeated = ByteBuffer.allocate(1500);
+        for (int i = 0; i < 200; i++) FeedbackPackets.putNack(repeated, 7, 0);
+        assertArrayEquals(new int[] {7}, nacked(repeated, 4), "entries read are capped too");
+    }
+
+    @Test
+    void ignoresATrailingPartialEntry() {
+        ByteBuffer nack = ByteBuffer.allocate(64);
+        FeedbackPackets.putNack(nack, 3, 0);
+        nack.putInt(9);
+        assertArrayEquals(new int[] {3}, nacked(nack, 32));
+    }
+}
@@ -0,0 +1,65 @@
+package com.audiostreaming;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class FramePoolTest {
+
+    @Test
+    void framesGoBackToTheListTheyWereTakenFrom() {
+        FramePool pool = new FramePool(2, 6, 64, false); // two frames per list
+        Frame a = pool.acquire(0);
+        Frame b = pool.acquire(0);
+        Frame burst = pool.acquire(0);
+        assertEquals(1, pool.getAllocationCount(), "the third frame of a two-frame list");
+        a.release();
+        b.release();
+        burst.release();
+        assertEquals(7, pool.getFreeCount(), "the burst frame is kept");
+        for (int i = 0; i < 3; i++) {
+            assertEquals(0, pool.acquire(0).list);
+        }
+        assertEquals(1, pool.getAllocationCount());
+        assertEquals(1, pool.acquire(1).list);
+        assertEquals(2, pool.acquire().list);
+    }
+
+    @Test
+    void reusesReleasedFrames() {
+        FramePool pool = new FramePool(1, 2, 64, false); // one frame per list
+        Frame frame = pool.acquire(0);
+        frame.length = 10;
+        frame.release();
+        Frame again = pool.acquire(0);
+        assertSame(frame, again);
+        assertEquals(0, again.length, "reset on acquire");
+        assertEquals(0, pool.getAllocationCount());
+    }
+
+    @Test
+    void lanesReleasingConcurrentlyLoseNoFrames() throws InterruptedException {
+        int lanes = 4;
+        int perLane = 64;
+        FramePool pool = new FramePool(1, 2 * lanes * perLane, 64, false);
+        int free = pool.getFreeCount();
+        for (int round = 0; round < 200; round++) {
+            List<Thread> threads = new ArrayList<>();
+            for (int l = 0; l < lanes; l++) {
+                Frame[] frames = new Frame[perLane];
+                for (int i = 0; i < perLane; i++) frames[i] = pool.acquire(0);
+                Thread t = new Thread(() -> {
+                    for (Frame f : frames) f.release();
+                });
+                threads.add(t);
+                t.start();
+            }
+            for (Thread t : threads) t.join();
+        }
+        assertEquals(0, pool.getAllocationCount());
+        assertEquals(free, pool.getFreeCount());
+    }
+}
@@ -0,0 +1,117 @@
+package com.audiostreaming;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.util.logging.Level;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks that the per-frame paths measured by {@link HotPathBenchmark} allocate nothing once
+ * warmed up, using the same workloads.
+ */
+class HotPathAllocationTest {
+    private static final int RUNS = 10;
+    private static final int FRAMES = 20_000;
+
+    private final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    // Fewest bytes the calling thread allocated in a run of the workload. Class loading and JIT
+    // compilation allocate now and then while the code warms up; a path that allocates per frame
+    // does so in every run.
+    private long allocatedBytes(Workload workload) throws Exception {
+        long tid = Thread.currentThread().getId();
+        long fewest = Long.MAX_VALUE;
+        for (int i = 0; i < RUNS; i++) {
+            long before = threads.getThreadAllocatedBytes(tid);
+            workload.run();
+            fewest = Math.min(fewest, threads.getThreadAllocatedBytes(tid) - before);
+        }
+        return fewest;
+    }
+
+    private interface Workload {
+        void run() throws Exception;
+    }
+
+    @Test
+    void serverForwardingAllocatesNothing() throws Exception {
+        Server server = new Server(new HotPathBenchmark.DiscardTransport());
+        try {
+            byte[] packet = HotPathBenchmark.talkerPacket();
+            int[] seq = {0};
+            for (int room : new int[] {2, 10}) {
+                HotPathBenchmark.joinRoom(server, room);
+                seq[0] = 0;
+                long bytes = allocatedBytes(() -> HotPathBenchmark.forwardFrames(server, packet, seq, FRAMES));
+                assertEquals(0, bytes, "bytes allocated forwarding " + FRAMES + " frames to a room of " + room);
+            }
+            assertEquals(0, server.getFrameAllocationCount(), "frames allocated beyond the pool");
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    void sendPathAllocatesNothing() throws Exception {
+        AudioProfile profile = AudioProfile.DEFAULT;
+        byte[] captured = new byte[profile.pcmBytesPerFrame()];
+        for (int i = 0; i < captured.length / 2; i++) {
+            int s = (int) (8000 * Math.sin(2 * Math.PI * 440 * i / profile.sampleRate()));
+            captured[2 * i] = (byte) s;
+            captured[2 * i + 1] = (byte) (s >> 8);
+        }
+        AudioPacketizer packets = new AudioPacketizer(profile, InetAddress.getLoopbackAddress(), 5555);
+        packets.setHeaderVersion(PacketHeader.VERSION_2);
+        VoiceActivityDetector vad = new VoiceActivityDetector(profile);
+        for (boolean fec : new boolean[] {false, true}) {
+            packets.setFecEnabled(fec);
+            for (AudioCodec codec : new AudioCodec[] {AudioCodecs.PCM, AudioCodecs.PCMU, AudioCodecs.PCMA, AudioCodecs.ADPCM}) {
+                long bytes = allocatedBytes(() -> HotPathBenchmark.buildPackets(vad, packets, captured, codec, FRAMES));
+                assertEquals(0, bytes, codec.name() + (fec ? " + FEC" : "") + " bytes allocated over " + FRAMES + " frames");
+            }
+        }
+    }
+
+    @Test
+    void playbackPathAllocatesNothing() throws Exception {
+        AudioProfile profile = AudioProfile.DEFAULT;
+        int frameSamples = profile.samplesPerFrame();
+        short[] received = new short[frameSamples];
+        for (int i = 0; i < frameSamples; i++) {
+            received[i] = (short) (8000 * Math.sin(2 * Math.PI * 440 * i / profile.sampleRate()));
+        }
+        for (int peers : new int[] {1, 5}) {
+            ReceiveStream[] streams = new ReceiveStream[peers];
+            PlaybackMixer mixer = new PlaybackMixer(profile);
+            for (int p = 0; p < peers; p++) {
+                streams[p] = new ReceiveStream(p + 1, new JitterBuffer(profile.frameMs(), frameSamples), new LossConcealer(profile.sampleRate()));
+                streams[p].source = mixer.newSource();
+            }
+            short[] frame = new short[frameSamples];
+            byte[] mixed = new byte[profile.pcmBytesPerFrame()];
+            long[] clock = {0};
+            long bytes = allocatedBytes(() -> HotPathBenchmark.playFrames(streams, mixer, received, frame, mixed, clock, FRAMES, profile.frameMs()));
+            assertEquals(0, bytes, "bytes allocated over " + FRAMES + " ticks with " + peers + " peers");
+        }
+    }
+
+    @Test
+    void tracingAllocatesNothing() throws Exception {
+        PrintStream discard = new PrintStream(OutputStream.nullOutputStream());
+        PacketTracer tracer = new PacketTracer(Level.OFF, "test-trace", discard, discard);
+        InetAddress source = InetAddress.getLoopbackAddress();
+        try {
+            for (Level level : new Level[] {Level.OFF, Level.FINEST}) {
+                tracer.setLevel(level);
+                long bytes = allocatedBytes(() -> HotPathBenchmark.traceFrames(tracer, source, FRAMES));
+                assertEquals(0, bytes, "bytes allocated over " + FRAMES + " frames traced at " + level);
+            }
+        } finally {
+            tracer.shutdown(2_000);
+        }
+    }
+}
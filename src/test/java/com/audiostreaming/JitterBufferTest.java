@@ -0,0 +1,157 @@
+package com.audiostreaming;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class JitterBufferTest {
+    private static final int FRAME_MS = 20;
+    private static final long F = FRAME_MS * 1_000_000L; // one frame period in nanoseconds
+    private static final int SAMPLES = 160;
+
+    private final JitterBuffer buffer = new JitterBuffer(FRAME_MS, SAMPLES);
+    private final short[] out = new short[SAMPLES];
+
+    // a frame whose first sample tells which sequence number it was sent as
+    private static short[] frame(int seq) {
+        short[] samples = new short[SAMPLES];
+        samples[0] = (short) seq;
+        return samples;
+    }
+
+    private boolean offer(int seq, long nowNanos) {
+        return buffer.offer(seq, frame(seq), SAMPLES, nowNanos);
+    }
+
+    // polls once per frame period from nowNanos, as the playback thread does: the frames played
+    // by their sequence number, "L" for a lost one, "." when nothing was due
+    private String play(long nowNanos, int periods) {
+        StringBuilder played = new StringBuilder();
+        for (int k = 0; k < periods; k++) {
+            int n = buffer.poll(nowNanos + k * F, out);
+            played.append(n == JitterBuffer.LOST ? "L" : n == JitterBuffer.NOTHING_DUE ? "." : String.valueOf(out[0])).append(' ');
+        }
+        return played.toString().trim();
+    }
+
+    // the frames of what play() returned, without the lost and empty slots
+    private static String framesOf(String played) {
+        return played.replaceAll("[L.] ?", "").trim();
+    }
+
+    @Test
+    void startsATalkspurtOneTargetDelayAfterItsFirstFrame() {
+        assertTrue(offer(0, 0));
+        assertEquals(JitterBuffer.NOTHING_DUE, buffer.poll(F - 1, out));
+        assertTrue(offer(1, F));
+        assertTrue(offer(2, 2 * F));
+        assertEquals("0 1 2", play(F, 3));
+        assertFalse(offer(1, 3 * F), "late");
+        assertTrue(offer(3, 3 * F));
+        assertFalse(offer(3, 3 * F), "duplicate");
+    }
+
+    @Test
+    void reportsAFrameMissingAtItsPlayoutTimeAsLost() {
+        offer(0, 0);
+        offer(2, 2 * F);
+        assertEquals("0 L 2", play(F, 3));
+        assertFalse(offer(1, 4 * F), "its slot was concealed already");
+    }
+
+    @Test
+    void holdsTimingOverAShortGapThenUnderruns() {
+        offer(0, 0);
+        assertEquals("0 L L L .", play(F, 5), "holdover of " + JitterBuffer.HOLDOVER_MS + " ms");
+        assertEquals(".", play(10 * F, 1), "stays stopped while empty");
+
+        // a frame within the holdover keeps its slot
+        JitterBuffer held = new JitterBuffer(FRAME_MS, SAMPLES);
+        held.offer(0, frame(0), SAMPLES, 0);
+        assertEquals(SAMPLES, held.poll(F, out));
+        assertEquals(JitterBuffer.LOST, held.poll(2 * F, out));
+        held.offer(2, frame(2), SAMPLES, 2 * F);
+        assertEquals(SAMPLES, held.poll(3 * F, out));
+        assertEquals(2, out[0]);
+    }
+
+    @Test
+    void startsTheNextTalkspurtAfterAnUnderrun() {
+        offer(0, 0);
+        play(F, 5);
+        // the sender skipped ahead over a pause; its first frame waits a target delay again
+        long resume = 40 * F;
+        assertTrue(offer(40, resume));
+        assertEquals(".", play(resume, 1));
+        assertEquals("40", play(resume + F, 1));
+    }
+
+    @Test
+    void insertsAConcealedFrameWhenTheTargetDelayGrows() {
+        offer(0, 0);
+        assertEquals("0", play(F, 1));
+        offer(1, F);
+        // redundancy adds a frame to the target, more than the frames have been waiting
+        assertFalse(buffer.repair(0, frame(0), SAMPLES, F), "already played");
+        assertEquals("L . 1", play(2 * F, 1) + " " + play(2 * F + F / 2, 1) + " " + play(3 * F, 1));
+    }
+
+    @Test
+    void discardsAFrameToCatchUpWhenFramesWaitTooLong() {
+        // a burst of frames that then play one per period: they wait longer and longer
+        for (int seq = 0; seq < 48; seq++) assertTrue(offer(seq, 0));
+        String played = play(F, 60);
+        int expected = 0;
+        int discarded = 0;
+        for (String p : played.split(" ")) {
+            if (p.equals("L") || p.equals(".")) continue;
+            int seq = Integer.parseInt(p);
+            assertTrue(seq >= expected, "played in order: " + played);
+            discarded += seq - expected;
+            expected = seq + 1;
+        }
+        assertTrue(discarded > 0, "no frame discarded: " + played);
+        assertEquals(48, expected, "the burst is played through: " + played);
+    }
+
+    @Test
+    void followsASenderThatRestartedItsSequence() {
+        for (int seq = 1000; seq < 1003; seq++) offer(seq, (seq - 1000) * F);
+        assertEquals("1000 1001 1002", play(F, 3));
+        assertFalse(offer(990, 3 * F), "a little behind is late");
+        assertTrue(offer(0, 3 * F), "far behind is a restart");
+        assertTrue(offer(1, 4 * F));
+        assertEquals("0 1", framesOf(play(4 * F, 10)));
+    }
+
+    @Test
+    void repairsAMissingFrameFromARedundantCopy() {
+        assertFalse(buffer.repair(0, frame(0), SAMPLES, 0), "nothing to repair before a talkspurt");
+        offer(0, 0);
+        offer(2, 2 * F);
+        assertTrue(buffer.repair(1, frame(1), SAMPLES, 2 * F));
+        assertFalse(buffer.repair(2, frame(2), SAMPLES, 2 * F), "already received");
+        // the first repair made the target a frame longer
+        assertEquals(". L 0 1 2", play(F, 5));
+        assertFalse(buffer.repair(1, frame(1), SAMPLES, 5 * F), "already played");
+    }
+
+    @Test
+    void tellsWhetherARetransmissionWouldArriveInTime() {
+        assertFalse(buffer.isRecoverable(0, 0, 0), "nothing buffered");
+        offer(0, 0); // due at F
+        offer(3, 3 * F);
+        assertTrue(buffer.isRecoverable(1, 0, F), "due at 2F");
+        assertFalse(buffer.isRecoverable(1, 0, 2 * F));
+        assertTrue(buffer.isRecoverable(2, 0, 2 * F));
+        assertFalse(buffer.isRecoverable(0, 0, 0), "buffered");
+        assertFalse(buffer.isRecoverable(3, 0, 0), "buffered");
+        assertFalse(buffer.isRecoverable(-1, 0, 0), "before the playout point");
+        assertFalse(buffer.isRecoverable(64, 0, 0), "beyond the buffer");
+        play(F, 2);
+        assertFalse(buffer.isRecoverable(1, 2 * F, 0), "concealed");
+        assertTrue(buffer.isRecoverable(2, 2 * F, 0));
+    }
+}
@@ -0,0 +1,113 @@
+package com.audiostreaming;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.ByteBuffer;
+import org.junit.jupiter.api.Test;
+
+class LegacyWireTest {
+    private static final byte[] PAYLOAD = {1, 2, 3, 4, 5, 6};
+
+    private final PacketHeader header = new PacketHeader();
+    private final PacketHeader legacy = new PacketHeader();
+
+    // a version 2 datagram carrying PAYLOAD, with the extensions written by the caller after it
+    private static ByteBuffer v2(int codecId) {
+        ByteBuffer buf = ByteBuffer.allocate(Server.MAX_PACKET_SIZE);
+        PacketHeader.putV2(buf, PacketHeader.FLAG_MARKER, codecId, 7, 42, 960);
+        PacketHeader.putPayloadLength(buf, PacketHeader.VERSION_2, PAYLOAD.length);
+        buf.put(PAYLOAD);
+        return buf;
+    }
+
+    // fills in the extensions length, adds padding and parses the header
+    private void finish(ByteBuffer buf) {
+        PacketHeader.putExtensionsLength(buf, PacketHeader.VERSION_2, buf.position() - PacketHeader.V2_SIZE - PAYLOAD.length);
+        buf.put((byte) 0).put((byte) 0);
+        header.parse(buf, buf.position());
+    }
+
+    private ByteBuffer convert(ByteBuffer src, int capacity) {
+        ByteBuffer out = Server.legacyWire(ByteBuffer.allocate(capacity), src, header);
+        legacy.parse(out, out.limit());
+        assertEquals(1, legacy.version);
+        assertEquals(7, legacy.clientId);
+        assertEquals(42, legacy.sequenceNumber);
+        assertEquals(PAYLOAD.length, legacy.payloadLength);
+        for (int i = 0; i < PAYLOAD.length; i++) assertEquals(PAYLOAD[i], out.get(legacy.payloadOffset + i));
+        return out;
+    }
+
+    // types of the entries between from and end, which must tile it exactly
+    private static String types(ByteBuffer buf, int from, int end) {
+        StringBuilder types = new StringBuilder();
+        int p = from;
+        while (p < end) {
+            types.append(buf.get(p) & 0xFF).append(' ');
+            p += PacketExtensions.ENTRY_HEADER_SIZE + (buf.getShort(p + 1) & 0xFFFF);
+        }
+        assertEquals(end, p, "entries cut short");
+        return types.toString().trim();
+    }
+
+    @Test
+    void copiesTheExtensionsAndLeavesOutThePadding() {
+        ByteBuffer src = v2(AudioCodecs.PCM.id());
+        PacketExtensions.putAudioLevel(src, 30);
+        PacketExtensions.putSampleRate(src, 16000);
+        finish(src);
+        ByteBuffer out = convert(src, Server.MAX_PACKET_SIZE);
+        assertEquals("1 4", types(out, legacy.extensionsOffset, legacy.extensionsEnd), "PCM needs no codec entry");
+        assertEquals(16000, PacketExtensions.sampleRate(out, legacy.extensionsOffset, legacy.extensionsEnd));
+    }
+
+    @Test
+    void carriesTheHeaderCodecInAnExtension() {
+        ByteBuffer src = v2(AudioCodecs.ADPCM.id());
+        PacketExtensions.putAudioLevel(src, 30);
+        finish(src);
+        ByteBuffer out = convert(src, Server.MAX_PACKET_SIZE);
+        assertEquals("1 3", types(out, legacy.extensionsOffset, legacy.extensionsEnd));
+        assertEquals(AudioCodecs.ADPCM.id(), PacketExtensions.codecId(out, legacy.extensionsOffset, legacy.extensionsEnd));
+    }
+
+    @Test
+    void replacesACodecExtensionWithTheHeaderCodec() {
+        ByteBuffer src = v2(AudioCodecs.ADPCM.id());
+        PacketExtensions.putCodec(src, AudioCodecs.PCM.id());
+        PacketExtensions.putAudioLevel(src, 30);
+        finish(src);
+        ByteBuffer out = convert(src, Server.MAX_PACKET_SIZE);
+        assertEquals("1 3", types(out, legacy.extensionsOffset, legacy.extensionsEnd));
+        assertEquals(AudioCodecs.ADPCM.id(), PacketExtensions.codecId(out, legacy.extensionsOffset, legacy.extensionsEnd));
+
+        ByteBuffer pcm = v2(AudioCodecs.PCM.id());
+        PacketExtensions.putCodec(pcm, AudioCodecs.ADPCM.id());
+        finish(pcm);
+        out = convert(pcm, Server.MAX_PACKET_SIZE);
+        assertEquals(legacy.extensionsOffset, legacy.extensionsEnd, "a stale codec entry is not copied");
+    }
+
+    @Test
+    void dropsAnEntryThatDoesNotFitWholeBesideTheCodec() {
+        ByteBuffer src = v2(AudioCodecs.ADPCM.id());
+        PacketExtensions.putAudioLevel(src, 30);
+        src.put((byte) 0x7E).putShort((short) 8).put(new byte[8]);
+        PacketExtensions.putSampleRate(src, 16000);
+        finish(src);
+        // room for the level and sample rate entries and the codec entry, not the 11-byte one
+        int capacity = PacketHeader.V1_SIZE + PAYLOAD.length + 3 * (PacketExtensions.ENTRY_HEADER_SIZE + 1) + 6;
+        ByteBuffer out = convert(src, capacity);
+        assertEquals("1 4 3", types(out, legacy.extensionsOffset, legacy.extensionsEnd));
+    }
+
+    @Test
+    void stopsCopyingAtAMalformedEntry() {
+        ByteBuffer src = v2(AudioCodecs.PCM.id());
+        PacketExtensions.putAudioLevel(src, 30);
+        src.put((byte) 0x7E).putShort((short) 40).put(new byte[2]); // runs past the extensions
+        finish(src);
+        ByteBuffer out = convert(src, Server.MAX_PACKET_SIZE);
+        assertEquals("1", types(out, legacy.extensionsOffset, legacy.extensionsEnd));
+    }
+}
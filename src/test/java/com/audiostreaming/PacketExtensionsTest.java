@@ -0,0 +1,71 @@
+package com.audiostreaming;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.ByteBuffer;
+import org.junit.jupiter.api.Test;
+
+class PacketExtensionsTest {
+    @Test
+    void findsAnEntryPastUnknownOnes() {
+        ByteBuffer buf = ByteBuffer.allocate(64);
+        buf.position(5); // extensions follow the payload
+        buf.put((byte) 0x7E).putShort((short) 3).put(new byte[3]);
+        PacketExtensions.putSampleRate(buf, 16000);
+        PacketExtensions.putAudioLevel(buf, 20);
+        int end = buf.position();
+
+        int rate = PacketExtensions.find(buf, 5, end, PacketExtensions.TYPE_SAMPLE_RATE);
+        assertEquals(5 + 6 + PacketExtensions.ENTRY_HEADER_SIZE, rate);
+        assertEquals(1, PacketExtensions.valueLength(buf, rate));
+        assertEquals(16000, PacketExtensions.sampleRate(buf, 5, end));
+        int level = PacketExtensions.find(buf, 5, end, PacketExtensions.TYPE_AUDIO_LEVEL);
+        assertEquals(20, buf.get(level));
+        assertEquals(-1, PacketExtensions.find(buf, 5, end, PacketExtensions.TYPE_CODEC));
+    }
+
+    @Test
+    void defaultsWhenAnEntryIsAbsent() {
+        ByteBuffer buf = ByteBuffer.allocate(16);
+        PacketExtensions.putAudioLevel(buf, 40);
+        assertEquals(AudioCodecs.PCM.id(), PacketExtensions.codecId(buf, 0, buf.position()));
+        assertEquals(8000, PacketExtensions.sampleRate(buf, 0, buf.position()));
+        assertEquals(8000, PacketExtensions.sampleRate(buf, 0, 0), "no extensions at all");
+    }
+
+    @Test
+    void stopsAtAnEntryRunningPastTheEnd() {
+        ByteBuffer buf = ByteBuffer.allocate(16);
+        buf.put((byte) 0x7E).putShort((short) 9).put(new byte[4]);
+        PacketExtensions.putCodec(buf, AudioCodecs.ADPCM.id());
+        // the first entry claims the codec entry's bytes and more
+        assertEquals(-1, PacketExtensions.find(buf, 0, buf.position(), PacketExtensions.TYPE_CODEC));
+        assertEquals(AudioCodecs.PCM.id(), PacketExtensions.codecId(buf, 0, buf.position()));
+        // a partial entry header ends the scan too
+        assertEquals(-1, PacketExtensions.find(buf, 0, 2, 0x7E));
+    }
+
+    @Test
+    void writesOneByteValues() {
+        ByteBuffer buf = ByteBuffer.allocate(32);
+        PacketExtensions.putCodec(buf, AudioCodecs.ADPCM.id());
+        PacketExtensions.putAudioLevel(buf, 300);
+        PacketExtensions.putComfortNoise(buf, -4);
+        assertEquals(3 * (PacketExtensions.ENTRY_HEADER_SIZE + 1), buf.position());
+        assertEquals(AudioCodecs.ADPCM.id(), PacketExtensions.codecId(buf, 0, buf.position()));
+        assertEquals(PacketExtensions.LEVEL_SILENCE, buf.get(PacketExtensions.find(buf, 0, buf.position(), PacketExtensions.TYPE_AUDIO_LEVEL)));
+        assertEquals(0, buf.get(PacketExtensions.find(buf, 0, buf.position(), PacketExtensions.TYPE_COMFORT_NOISE)));
+    }
+
+    @Test
+    void writesARedundantFrameWithItsLength() {
+        ByteBuffer buf = ByteBuffer.allocate(512);
+        short[] pcm = new short[160];
+        PacketExtensions.putRedundant(buf, 2, AudioCodecs.ADPCM, pcm, pcm.length);
+        int value = PacketExtensions.find(buf, 0, buf.position(), PacketExtensions.TYPE_REDUNDANT);
+        assertEquals(PacketExtensions.ENTRY_HEADER_SIZE, value);
+        assertEquals(buf.position() - value, PacketExtensions.valueLength(buf, value));
+        assertEquals(2, buf.get(value));
+        assertEquals(AudioCodecs.ADPCM.id(), buf.get(value + 1));
+    }
+}
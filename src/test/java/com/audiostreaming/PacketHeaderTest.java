@@ -0,0 +1,109 @@
+package com.audiostreaming;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.nio.ByteBuffer;
+import org.junit.jupiter.api.Test;
+
+class PacketHeaderTest {
+    private final PacketHeader header = new PacketHeader();
+
+    // a version 1 datagram: header, payload, then the extension bytes
+    private static ByteBuffer v1(int clientId, int seq, int payload, byte... extensions) {
+        ByteBuffer buf = ByteBuffer.allocate(PacketHeader.V1_SIZE + payload + extensions.length);
+        PacketHeader.putV1(buf, clientId, seq);
+        PacketHeader.putPayloadLength(buf, 1, payload);
+        buf.position(buf.position() + payload);
+        buf.put(extensions);
+        return buf;
+    }
+
+    @Test
+    void parsesVersion1() {
+        ByteBuffer buf = v1(7, 42, 4, (byte) PacketExtensions.TYPE_AUDIO_LEVEL, (byte) 0, (byte) 1, (byte) 30);
+        header.parse(buf, buf.position());
+        assertEquals(1, header.version);
+        assertEquals(0, header.flags);
+        assertEquals(0, header.codecId);
+        assertEquals(7, header.clientId);
+        assertEquals(42, header.sequenceNumber);
+        assertEquals(0, header.timestamp);
+        assertEquals(PacketHeader.V1_SIZE, header.payloadOffset);
+        assertEquals(4, header.payloadLength);
+        assertEquals(14, header.extensionsOffset);
+        assertEquals(18, header.extensionsEnd, "extensions run to the end of the datagram");
+    }
+
+    @Test
+    void parsesVersion2() {
+        ByteBuffer buf = ByteBuffer.allocate(64);
+        PacketHeader.putV2(buf, PacketHeader.FLAG_MARKER, AudioCodecs.ADPCM.id(), 7, -5, 960);
+        PacketHeader.putPayloadLength(buf, PacketHeader.VERSION_2, 6);
+        PacketHeader.putExtensionsLength(buf, PacketHeader.VERSION_2, 4);
+        int length = PacketHeader.V2_SIZE + 6 + 4 + 3; // padding after the extensions
+        header.parse(buf, length);
+        assertEquals(PacketHeader.VERSION_2, header.version);
+        assertEquals(PacketHeader.FLAG_MARKER, header.flags);
+        assertEquals(AudioCodecs.ADPCM.id(), header.codecId);
+        assertEquals(7, header.clientId);
+        assertEquals(-5, header.sequenceNumber);
+        assertEquals(960, header.timestamp);
+        assertEquals(PacketHeader.V2_SIZE, header.payloadOffset);
+        assertEquals(6, header.payloadLength);
+        assertEquals(26, header.extensionsOffset);
+        assertEquals(30, header.extensionsEnd, "padding is not part of the extensions");
+    }
+
+    @Test
+    void tellsVersionsAndFeedbackApartByTheFirstByte() {
+        ByteBuffer buf = ByteBuffer.allocate(32);
+        buf.put(0, (byte) 0x82);
+        header.parse(buf, 32);
+        assertEquals(PacketHeader.VERSION_2, header.version);
+        buf.put(0, (byte) 0x7F);
+        header.parse(buf, 32);
+        assertEquals(1, header.version, "a positive client id starts a version 1 packet");
+
+        buf.put(0, (byte) 0xC0);
+        assertThrows(IllegalArgumentException.class, () -> header.parse(buf, 32)); // feedback
+        buf.put(0, (byte) (0xC0 | PacketHeader.VERSION_2));
+        assertThrows(IllegalArgumentException.class, () -> header.parse(buf, 32));
+        buf.put(0, (byte) 0x81);
+        assertThrows(IllegalArgumentException.class, () -> header.parse(buf, 32)); // unknown version
+        buf.put(0, (byte) 0x83);
+        assertThrows(IllegalArgumentException.class, () -> header.parse(buf, 32));
+    }
+
+    @Test
+    void refusesDatagramsShorterThanTheirHeader() {
+        ByteBuffer buf = ByteBuffer.allocate(32);
+        assertThrows(IllegalArgumentException.class, () -> header.parse(buf, 0));
+        assertThrows(IllegalArgumentException.class, () -> header.parse(buf, PacketHeader.V1_SIZE - 1));
+        buf.put(0, (byte) 0x82);
+        assertThrows(IllegalArgumentException.class, () -> header.parse(buf, PacketHeader.V2_SIZE - 1));
+    }
+
+    @Test
+    void refusesLengthsPastTheEndOfTheDatagram() {
+        ByteBuffer v1 = v1(7, 1, 4);
+        assertThrows(IllegalArgumentException.class, () -> header.parse(v1, v1.position() - 1));
+
+        ByteBuffer v2 = ByteBuffer.allocate(64);
+        PacketHeader.putV2(v2, 0, 0, 7, 1, 0);
+        PacketHeader.putPayloadLength(v2, PacketHeader.VERSION_2, 8);
+        assertThrows(IllegalArgumentException.class, () -> header.parse(v2, PacketHeader.V2_SIZE + 7));
+        PacketHeader.putExtensionsLength(v2, PacketHeader.VERSION_2, 4);
+        assertThrows(IllegalArgumentException.class, () -> header.parse(v2, PacketHeader.V2_SIZE + 8 + 3));
+        header.parse(v2, PacketHeader.V2_SIZE + 8 + 4);
+        assertEquals(PacketHeader.V2_SIZE + 12, header.extensionsEnd);
+    }
+
+    @Test
+    void negotiatesVersion2OnlyWhenOffered() {
+        assertEquals(PacketHeader.VERSION_2, PacketHeader.negotiate(PacketHeader.DEFAULT_OFFER));
+        assertEquals(PacketHeader.VERSION_2, PacketHeader.negotiate("1, 2"));
+        assertEquals(1, PacketHeader.negotiate("1"));
+        assertEquals(1, PacketHeader.negotiate(null));
+    }
+}
@@ -0,0 +1,85 @@
+package com.audiostreaming;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class ReorderWindowTest {
+    private final FramePool pool = new FramePool(64, 64, false);
+
+    private Frame frame(int seq) {
+        Frame frame = pool.acquire();
+        frame.sequenceNumber = seq;
+        return frame;
+    }
+
+    @Test
+    void drainsInOrderAcrossTheSequenceWrap() {
+        ReorderWindow window = new ReorderWindow(16);
+        window.reset(Integer.MAX_VALUE - 1);
+        assertTrue(window.offer(frame(Integer.MIN_VALUE)));
+        assertTrue(window.offer(frame(Integer.MAX_VALUE)));
+        assertTrue(window.offer(frame(Integer.MAX_VALUE - 1)));
+        assertEquals(Integer.MAX_VALUE - 1, window.poll().sequenceNumber);
+        assertEquals(Integer.MAX_VALUE, window.poll().sequenceNumber);
+        assertEquals(Integer.MIN_VALUE, window.poll().sequenceNumber);
+        assertNull(window.poll());
+        assertFalse(window.offer(frame(Integer.MAX_VALUE)), "late after the wrap");
+    }
+
+    @Test
+    void refusesDuplicates() {
+        ReorderWindow window = new ReorderWindow(16);
+        assertTrue(window.offer(frame(2)));
+        assertFalse(window.offer(frame(2)));
+        assertEquals(1, window.size());
+    }
+
+    @Test
+    void slidesPastFramesTooFarAhead() {
+        ReorderWindow window = new ReorderWindow(16);
+        assertTrue(window.offer(frame(1)));
+        assertTrue(window.offer(frame(40)));
+        assertEquals(1, window.getEvictedCount());
+        assertEquals(40 - 15, window.expectedSeq());
+    }
+
+    @Test
+    void skipsAGapOnlyOnceTheDeadlinePassed() {
+        ReorderWindow window = new ReorderWindow(16);
+        assertTrue(window.offer(frame(3)));
+        long now = System.nanoTime();
+        assertEquals(0, window.skipExpiredGap(now, 60_000_000_000L));
+        assertNull(window.poll());
+        assertEquals(3, window.skipExpiredGap(now + 60_000_000_000L, 60_000_000_000L));
+        assertEquals(3, window.poll().sequenceNumber);
+        assertEquals(0, window.skipExpiredGap(now + 60_000_000_000L, 0), "nothing left to skip to");
+    }
+
+    @Test
+    void aSingleStaleFrameKeepsTheBufferedFrames() {
+        ReorderWindow window = new ReorderWindow(16);
+        window.reset(1000);
+        assertTrue(window.offer(frame(1001)));
+        assertFalse(window.offer(frame(5)));
+        assertEquals(1000, window.expectedSeq());
+        assertEquals(1, window.size());
+        assertTrue(window.offer(frame(1000)));
+        assertFalse(window.offer(frame(6)), "an accepted frame ends the run of stale ones");
+        assertEquals(2, window.size());
+    }
+
+    @Test
+    void followsASenderThatRestartedItsSequence() {
+        ReorderWindow window = new ReorderWindow(16);
+        window.reset(1000);
+        assertTrue(window.offer(frame(1001)));
+        for (int seq = 0; seq < ReorderWindow.RESTART_FRAMES - 1; seq++) assertFalse(window.offer(frame(seq)));
+        assertTrue(window.offer(frame(ReorderWindow.RESTART_FRAMES - 1)));
+        assertEquals(1, window.size());
+        assertEquals(ReorderWindow.RESTART_FRAMES - 1, window.poll().sequenceNumber);
+    }
+}